@@ -0,0 +1,226 @@
+package com.example.adi.guardianlgbtnews;
+
+import android.app.Instrumentation;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Bundle;
+import android.preference.PreferenceManager;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Drives the app's request path against a {@link GuardianStandInServer} running in the test
+ * process, and reports the throughput and the latency distribution of the requests. It is a
+ * harness rather than a test: it only fails if most requests do.
+ * <p>
+ * The load and the network are set with instrumentation arguments, e.g.
+ * <pre>
+ * adb shell am instrument -w -e class com.example.adi.guardianlgbtnews.FetchLoadHarnessTest \
+ *     -e requests 500 -e threads 8 -e latency 120 -e jitter 80 -e bandwidth 50000 \
+ *     -e errorRate 0.05 com.example.adi.guardianlgbtnews.test/android.support.test.runner.AndroidJUnitRunner
+ * </pre>
+ * The summary is printed in the instrumentation output and the log, and the JSON snapshot of
+ * {@link FetchMetrics} is saved as harness-&lt;name&gt;.json in the app's external files directory.
+ */
+@RunWith(AndroidJUnit4.class)
+public class FetchLoadHarnessTest {
+
+    private static final String LOG_TAG = FetchLoadHarnessTest.class.getSimpleName();
+
+    // States
+    private Context mContext;
+    private GuardianStandInServer mServer;
+    private String mPreviousBaseUrl;
+    private int mRequests;
+    private int mThreads;
+    private int mPageSize;
+    private int mDistinctPages;
+
+    @Before
+    public void setUp() throws IOException {
+        mContext = InstrumentationRegistry.getTargetContext();
+        Bundle arguments = InstrumentationRegistry.getArguments();
+        mRequests = intArgument(arguments, "requests", 200);
+        mThreads = intArgument(arguments, "threads", 4);
+        mPageSize = intArgument(arguments, "pageSize", 50);
+        // The requests cycle through this many pages, so most of them are revalidations
+        mDistinctPages = intArgument(arguments, "distinctPages", 20);
+
+        StandInResponses responses = new StandInResponses(null);
+        responses.setTotal(mPageSize * mDistinctPages);
+        mServer = new GuardianStandInServer(responses);
+        mServer.setLatency(intArgument(arguments, "latency", 80), intArgument(arguments, "jitter", 40));
+        mServer.setBandwidth(intArgument(arguments, "bandwidth", 0));
+        mServer.setErrorRate(Double.parseDouble(argument(arguments, "errorRate", "0")), 503);
+        mServer.start();
+
+        // Point the app's requests at the stand-in
+        SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        String baseUrlKey = mContext.getString(R.string.settings_base_url_key);
+        mPreviousBaseUrl = sharedPrefs.getString(baseUrlKey, "");
+        sharedPrefs.edit().putString(baseUrlKey, mServer.getSearchUrl()).commit();
+
+        // Requests go through the response cache as in the app
+        NewsResponseCache.install(new File(mContext.getCacheDir(), "responses"),
+                MainActivity.RESPONSE_CACHE_SIZE);
+        FetchMetrics.reset();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        PreferenceManager.getDefaultSharedPreferences(mContext).edit()
+                .putString(mContext.getString(R.string.settings_base_url_key), mPreviousBaseUrl)
+                .commit();
+        mServer.close();
+    }
+
+    /**
+     * Call {@link QueryUtils#fetchNewsItems(String)} from several threads at once.
+     */
+    @Test
+    public void fetchNewsItems() throws InterruptedException, IOException {
+        final List<String> urls = new ArrayList<>(mDistinctPages);
+        GuardianQuery query = new GuardianQuery(MainActivity.getRequestUrl(mContext))
+                .with("q", "pride")
+                .with("show-fields", "byline,thumbnail")
+                .with("order-by", "newest")
+                .with("page-size", mPageSize);
+        for (int page = 1; page <= mDistinctPages; page++) {
+            urls.add(query.with("page", page).toUrl());
+        }
+
+        final LatencyHistogram latencies = new LatencyHistogram(mRequests);
+        final AtomicInteger nextRequest = new AtomicInteger();
+        final AtomicInteger failures = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>(mThreads);
+        long start = System.nanoTime();
+        for (int i = 0; i < mThreads; i++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    int request;
+                    while ((request = nextRequest.getAndIncrement()) < mRequests) {
+                        long requestStart = System.nanoTime();
+                        List<NewsItem> newsItems =
+                                QueryUtils.fetchNewsItems(urls.get(request % urls.size()));
+                        latencies.record(System.nanoTime() - requestStart);
+                        if (newsItems == null) {
+                            failures.incrementAndGet();
+                        }
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        report("fetch", latencies, System.nanoTime() - start, failures.get());
+        assertTrue(failures.get() < mRequests / 2);
+    }
+
+    /**
+     * Run the NewsItemsLoader's background work, one load after the other as the app does,
+     * for the followed topics.
+     */
+    @Test
+    public void newsItemsLoader() throws IOException {
+        List<GuardianQuery> queries = MainActivity.buildRequestQueries(
+                mContext, "newest", String.valueOf(mPageSize));
+        LatencyHistogram latencies = new LatencyHistogram(mRequests);
+        int failures = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < mRequests; i++) {
+            List<GuardianQuery> pageQueries = new ArrayList<>(queries.size());
+            for (GuardianQuery query : queries) {
+                pageQueries.add(query.with("page", 1 + i % mDistinctPages));
+            }
+            MainActivity.NewsItemsLoader loader =
+                    new MainActivity.NewsItemsLoader(mContext, pageQueries, "newest", false, 0);
+            long loadStart = System.nanoTime();
+            List<NewsItem> newsItems = loader.loadInBackground();
+            latencies.record(System.nanoTime() - loadStart);
+            if (newsItems == null) {
+                failures++;
+            }
+        }
+
+        report("loader", latencies, System.nanoTime() - start, failures);
+        assertTrue(failures < mRequests / 2);
+    }
+
+    // Print the summary of a run and save the metrics it recorded
+    private void report(String name, LatencyHistogram latencies, long elapsedNanos, int failures)
+            throws IOException {
+        LatencyHistogram.Snapshot snapshot = latencies.snapshot();
+        double seconds = elapsedNanos / 1e9;
+        String summary = String.format(Locale.US,
+                "%s: %d calls on %d threads in %.2f s = %.1f calls/s, %d failed%n"
+                        + "  latency ms: p50 %.1f  p90 %.1f  p99 %.1f  max %.1f  mean %.1f%n"
+                        + "  server: %d requests, %d errors, %d not modified, %d bytes",
+                name, snapshot.getCount(), name.equals("fetch") ? mThreads : 1, seconds,
+                snapshot.getCount() / seconds, failures,
+                snapshot.getPercentile(50) / 1e6, snapshot.getPercentile(90) / 1e6,
+                snapshot.getPercentile(99) / 1e6, snapshot.getMaxNanos() / 1e6,
+                snapshot.getMeanNanos() / 1e6,
+                mServer.getRequestCount(), mServer.getErrorCount(),
+                mServer.getNotModifiedCount(), mServer.getBytesSent());
+        Log.i(LOG_TAG, summary);
+        Bundle results = new Bundle();
+        results.putString(Instrumentation.REPORT_KEY_STREAMRESULT, summary + "\n");
+        InstrumentationRegistry.getInstrumentation().sendStatus(0, results);
+
+        // Save the per-stage metrics with the run's summary
+        Map<String, String> info = new HashMap<>();
+        info.put("harness", name);
+        info.put("calls", String.valueOf(snapshot.getCount()));
+        info.put("failures", String.valueOf(failures));
+        info.put("elapsed_ms", String.valueOf(TimeUnit.NANOSECONDS.toMillis(elapsedNanos)));
+        info.put("throughput_per_s", String.format(Locale.US, "%.2f", snapshot.getCount() / seconds));
+        info.put("p50_ms", String.format(Locale.US, "%.2f", snapshot.getPercentile(50) / 1e6));
+        info.put("p99_ms", String.format(Locale.US, "%.2f", snapshot.getPercentile(99) / 1e6));
+        info.put("server_requests", String.valueOf(mServer.getRequestCount()));
+        info.put("server_not_modified", String.valueOf(mServer.getNotModifiedCount()));
+        File directory = mContext.getExternalFilesDir(null);
+        if (directory != null) {
+            OutputStream output = new FileOutputStream(new File(directory, "harness-" + name + ".json"));
+            try {
+                output.write(FetchMetrics.toJson(info).getBytes(Charset.forName("UTF-8")));
+            } finally {
+                output.close();
+            }
+        }
+    }
+
+    private static String argument(Bundle arguments, String name, String defaultValue) {
+        String value = arguments.getString(name);
+        return value == null ? defaultValue : value;
+    }
+
+    private static int intArgument(Bundle arguments, String name, int defaultValue) {
+        return Integer.parseInt(argument(arguments, name, String.valueOf(defaultValue)));
+    }
+}
@@ -0,0 +1,225 @@
+package com.example.adi.guardianlgbtnews;
+
+import android.app.Activity;
+import android.app.Instrumentation;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.preference.PreferenceManager;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Scrolls the news list of the {@link MainActivity} with a fixed script of flings, down and
+ * back up, and reports the frame timing recorded by its {@link FrameMonitor}, so changes to the
+ * adapter or the row layout can be compared. The list comes from a {@link GuardianStandInServer}
+ * running in the test process, so every run shows the same rows. It is a benchmark rather than
+ * a test: it only fails if the list doesn't show.
+ * <p>
+ * The script is set with instrumentation arguments, e.g.
+ * <pre>
+ * adb shell am instrument -w -e class com.example.adi.guardianlgbtnews.ScrollBenchmarkTest \
+ *     -e flings 30 -e velocity 6000 -e pageSize 50 \
+ *     com.example.adi.guardianlgbtnews.test/android.support.test.runner.AndroidJUnitRunner
+ * </pre>
+ * The summary is printed in the instrumentation output and the log, and the JSON snapshot of
+ * {@link FetchMetrics} is saved as benchmark-scroll.json in the app's external files directory.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ScrollBenchmarkTest {
+
+    private static final String LOG_TAG = ScrollBenchmarkTest.class.getSimpleName();
+
+    // How long to wait for the list to show, and for a fling to come to rest
+    private static final long LIST_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    private static final long FLING_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(10);
+    private static final long POLL_MILLIS = 50;
+
+    // States
+    private Instrumentation mInstrumentation;
+    private Context mContext;
+    private GuardianStandInServer mServer;
+    private String mPreviousBaseUrl;
+    private String mPreviousNumArticles;
+    private int mFlings;
+    private int mVelocity;
+    private int mPageSize;
+
+    @Before
+    public void setUp() throws IOException {
+        mInstrumentation = InstrumentationRegistry.getInstrumentation();
+        mContext = InstrumentationRegistry.getTargetContext();
+        Bundle arguments = InstrumentationRegistry.getArguments();
+        mFlings = intArgument(arguments, "flings", 20);
+        // In dp per second
+        mVelocity = intArgument(arguments, "velocity", 4000);
+        mPageSize = intArgument(arguments, "pageSize", 50);
+
+        // A fast server, so the list shows right away
+        StandInResponses responses = new StandInResponses(null);
+        responses.setTotal(mPageSize);
+        mServer = new GuardianStandInServer(responses);
+        mServer.start();
+
+        // Point the app's requests at the stand-in, for a full page of rows
+        SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        String baseUrlKey = mContext.getString(R.string.settings_base_url_key);
+        String numArticlesKey = mContext.getString(R.string.settings_num_articles_key);
+        mPreviousBaseUrl = sharedPrefs.getString(baseUrlKey, "");
+        mPreviousNumArticles = sharedPrefs.getString(numArticlesKey,
+                mContext.getString(R.string.settings_num_articles_default));
+        sharedPrefs.edit()
+                .putString(baseUrlKey, mServer.getSearchUrl())
+                .putString(numArticlesKey, String.valueOf(mPageSize))
+                .commit();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        PreferenceManager.getDefaultSharedPreferences(mContext).edit()
+                .putString(mContext.getString(R.string.settings_base_url_key), mPreviousBaseUrl)
+                .putString(mContext.getString(R.string.settings_num_articles_key), mPreviousNumArticles)
+                .commit();
+        mServer.close();
+    }
+
+    /**
+     * Fling the list down and up, one fling after the other came to rest.
+     */
+    @Test
+    public void flingNewsList() throws IOException {
+        Intent intent = new Intent(mContext, MainActivity.class);
+        intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
+        Activity activity = mInstrumentation.startActivitySync(intent);
+        try {
+            final RecyclerView recyclerView = (RecyclerView) activity.findViewById(R.id.list);
+            assertTrue("The list didn't show", waitForRows(recyclerView));
+
+            // Only the scrolls are measured
+            FetchMetrics.reset();
+            final int velocity = (int) (mVelocity * mContext.getResources().getDisplayMetrics().density);
+            long start = System.nanoTime();
+            for (int i = 0; i < mFlings; i++) {
+                // Down to the end, then back to the top
+                final int direction = (i / 2) % 2 == 0 ? 1 : -1;
+                mInstrumentation.runOnMainSync(new Runnable() {
+                    @Override
+                    public void run() {
+                        recyclerView.fling(0, direction * velocity);
+                    }
+                });
+                waitForRest(recyclerView);
+            }
+            report(System.nanoTime() - start);
+        } finally {
+            activity.finish();
+        }
+    }
+
+    // Wait until the list shows rows, and return whether it does
+    private boolean waitForRows(final RecyclerView recyclerView) {
+        final AtomicInteger rows = new AtomicInteger();
+        long deadline = SystemClock.uptimeMillis() + LIST_TIMEOUT_MILLIS;
+        while (SystemClock.uptimeMillis() < deadline) {
+            mInstrumentation.runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    rows.set(recyclerView.getChildCount());
+                }
+            });
+            if (rows.get() > 0) {
+                mInstrumentation.waitForIdleSync();
+                return true;
+            }
+            SystemClock.sleep(POLL_MILLIS);
+        }
+        return false;
+    }
+
+    // Wait until the list stops scrolling
+    private void waitForRest(final RecyclerView recyclerView) {
+        final AtomicInteger state = new AtomicInteger();
+        long deadline = SystemClock.uptimeMillis() + FLING_TIMEOUT_MILLIS;
+        do {
+            SystemClock.sleep(POLL_MILLIS);
+            mInstrumentation.runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    state.set(recyclerView.getScrollState());
+                }
+            });
+        } while (state.get() != RecyclerView.SCROLL_STATE_IDLE && SystemClock.uptimeMillis() < deadline);
+    }
+
+    // Print the summary of the run and save the metrics it recorded
+    private void report(long elapsedNanos) throws IOException {
+        LatencyHistogram.Snapshot frames = FetchMetrics.getHistogram(FetchMetrics.STAGE_FRAME).snapshot();
+        LatencyHistogram.Snapshot binds = FetchMetrics.getHistogram(FetchMetrics.STAGE_BIND).snapshot();
+        long frameCount = FetchMetrics.getCount(FetchMetrics.COUNT_FRAMES);
+        long jankyFrames = FetchMetrics.getCount(FetchMetrics.COUNT_JANKY_FRAMES);
+        double jankPercent = frameCount == 0 ? 0 : 100.0 * jankyFrames / frameCount;
+        String summary = String.format(Locale.US,
+                "scroll: %d flings in %.2f s, %d frames, %d janky (%.1f%%), %d dropped%n"
+                        + "  frame ms: p50 %.1f  p90 %.1f  p99 %.1f  max %.1f%n"
+                        + "  bind ms: %d binds, p50 %.2f  p99 %.2f  max %.2f",
+                mFlings, elapsedNanos / 1e9, frameCount, jankyFrames, jankPercent,
+                FetchMetrics.getCount(FetchMetrics.COUNT_DROPPED_FRAMES),
+                frames.getPercentile(50) / 1e6, frames.getPercentile(90) / 1e6,
+                frames.getPercentile(99) / 1e6, frames.getMaxNanos() / 1e6,
+                binds.getCount(), binds.getPercentile(50) / 1e6, binds.getPercentile(99) / 1e6,
+                binds.getMaxNanos() / 1e6);
+        Log.i(LOG_TAG, summary);
+        Bundle results = new Bundle();
+        results.putString(Instrumentation.REPORT_KEY_STREAMRESULT, summary + "\n");
+        mInstrumentation.sendStatus(0, results);
+
+        // Save the per-stage metrics with the run's summary
+        Map<String, String> info = new HashMap<>();
+        info.put("benchmark", "scroll");
+        info.put("flings", String.valueOf(mFlings));
+        info.put("velocity_dp_per_s", String.valueOf(mVelocity));
+        info.put("rows", String.valueOf(mPageSize));
+        info.put("elapsed_ms", String.valueOf(TimeUnit.NANOSECONDS.toMillis(elapsedNanos)));
+        info.put("jank_percent", String.format(Locale.US, "%.2f", jankPercent));
+        File directory = mContext.getExternalFilesDir(null);
+        if (directory != null) {
+            OutputStream output = new FileOutputStream(new File(directory, "benchmark-scroll.json"));
+            try {
+                output.write(FetchMetrics.toJson(info).getBytes(Charset.forName("UTF-8")));
+            } finally {
+                output.close();
+            }
+        }
+    }
+
+    private static String argument(Bundle arguments, String name, String defaultValue) {
+        String value = arguments.getString(name);
+        return value == null ? defaultValue : value;
+    }
+
+    private static int intArgument(Bundle arguments, String name, int defaultValue) {
+        return Integer.parseInt(argument(arguments, name, String.valueOf(defaultValue)));
+    }
+}
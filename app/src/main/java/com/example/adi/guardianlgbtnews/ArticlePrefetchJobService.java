@@ -0,0 +1,198 @@
+package com.example.adi.guardianlgbtnews;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.os.PersistableBundle;
+import android.preference.PreferenceManager;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A one-off background job saving the text of the top articles of the last loaded list into
+ * the {@link ArticleBodyStore}, so the {@link ArticleReaderActivity} can show them offline.
+ * The job only runs on unmetered networks. The bodies of the articles no longer at the top are
+ * dropped first, then the missing ones are fetched one by one until the byte budget set in the
+ * settings is reached, or as many were tried as the {@link FetchPolicy} allows for how fast
+ * the network turns out to be.
+ */
+public class ArticlePrefetchJobService extends JobService {
+
+    private static final String LOG_TAG = ArticlePrefetchJobService.class.getSimpleName();
+
+    private static final int PREFETCH_JOB_ID = 2;
+
+    // The extra holding the webUrls of the articles to save, most important first
+    private static final String URLS_KEY = "urls";
+
+    // Name of the store's file, in getFilesDir() so it isn't cleared with the caches
+    private static final String BODY_STORE_FILE_NAME = "article_bodies";
+
+    // The size of a saved article assumed until the store holds some, to know whether the next
+    // one is worth downloading
+    private static final long DEFAULT_ARTICLE_BYTES = 16 * 1024;
+
+    private static ArticleBodyStore sBodyStore;
+
+    // States
+    private Thread mPrefetchThread;
+
+    /**
+     * Return the store of the saved article bodies, opening it the first time.
+     */
+    public static synchronized ArticleBodyStore getBodyStore(Context context) throws IOException {
+        if (sBodyStore == null) {
+            sBodyStore = ArticleBodyStore.open(
+                    new File(context.getFilesDir(), BODY_STORE_FILE_NAME));
+        }
+        return sBodyStore;
+    }
+
+    /**
+     * Schedule saving the bodies of the first NewsItems of the given list, if offline reading
+     * is turned on in the settings. It replaces the job of an earlier list that hasn't run yet.
+     */
+    public static void schedule(Context context, List<NewsItem> newsItems) {
+        SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(context);
+        if (!sharedPrefs.getBoolean(context.getString(R.string.settings_prefetch_bodies_key),
+                context.getResources().getBoolean(R.bool.settings_prefetch_bodies_default))) {
+            return;
+        }
+        JobScheduler jobScheduler =
+                (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        if (jobScheduler == null) {
+            return;
+        }
+        int count = Math.min(newsItems.size(), parseInt(sharedPrefs.getString(
+                context.getString(R.string.settings_prefetch_count_key),
+                context.getString(R.string.settings_prefetch_count_default)), 0));
+        if (count <= 0) {
+            return;
+        }
+        String[] urls = new String[count];
+        for (int i = 0; i < count; i++) {
+            urls[i] = newsItems.get(i).getUrl();
+        }
+        PersistableBundle extras = new PersistableBundle();
+        extras.putStringArray(URLS_KEY, urls);
+        jobScheduler.schedule(new JobInfo.Builder(PREFETCH_JOB_ID,
+                new ComponentName(context, ArticlePrefetchJobService.class))
+                // Bodies are only downloaded on Wi-Fi (or another unmetered network)
+                .setRequiredNetworkType(JobInfo.NETWORK_TYPE_UNMETERED)
+                .setExtras(extras)
+                .build());
+    }
+
+    // This method is called on the main thread when the job starts, and runs the prefetch in a
+    // background thread. Returns true as the job isn't finished yet.
+    @Override
+    public boolean onStartJob(final JobParameters params) {
+        final String[] urls = params.getExtras().getStringArray(URLS_KEY);
+        if (urls == null) {
+            return false;
+        }
+        // The job may run in a new process, or on another network than the app was last on
+        NetworkStatus.update(this);
+        mPrefetchThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                boolean success = prefetch(getApplicationContext(), Arrays.asList(urls));
+                // Ask for a retry if the network went away
+                jobFinished(params, !success);
+            }
+        }, "ArticlePrefetch");
+        mPrefetchThread.start();
+        return true;
+    }
+
+    // This method is called if the device left the unmetered network. Returns true so the job
+    // is retried later.
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        if (mPrefetchThread != null) {
+            mPrefetchThread.interrupt();
+        }
+        return true;
+    }
+
+    /**
+     * Make the store hold the bodies of the given articles, as many as fit in the budget, in
+     * the given order. Returns false if it was interrupted or a request failed.
+     */
+    static boolean prefetch(Context context, List<String> urls) {
+        SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(context);
+        long budget = 1024L * parseInt(sharedPrefs.getString(
+                context.getString(R.string.settings_prefetch_budget_key),
+                context.getString(R.string.settings_prefetch_budget_default)), 0);
+
+        ArticleBodyStore store;
+        try {
+            store = getBodyStore(context);
+            // Make room by dropping the articles that are no longer at the top
+            store.retainOnly(urls);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem opening the article store.", e);
+            return false;
+        }
+
+        // Single articles are requested from the API's root, e.g. .../world/2018/jun/01/...
+        String searchUrl = MainActivity.getRequestUrl(context);
+        String contentUrl = searchUrl.substring(0, searchUrl.lastIndexOf('/') + 1);
+        int saved = 0;
+        int tried = 0;
+        for (String url : urls) {
+            if (Thread.currentThread().isInterrupted()) {
+                return false;
+            }
+            // Don't spend the bandwidth on an article that likely won't fit. The policy is asked
+            // again after every request, as they show how fast the network is.
+            if (store.getSize() + store.getAverageRecordSize(DEFAULT_ARTICLE_BYTES) > budget
+                    || tried >= QueryUtils.getFetchPolicy().getPrefetchCount(urls.size())) {
+                break;
+            }
+            String path = Uri.parse(url).getPath();
+            if (store.contains(url) || path == null || path.length() <= 1) {
+                continue;
+            }
+            tried++;
+            GuardianQuery query = new GuardianQuery(contentUrl + path.substring(1))
+                    .with("show-fields", "bodyText")
+                    .with("api-key", "test");
+            try {
+                String body = QueryUtils.fetchArticleBody(query.toUrl());
+                if (body == null || body.isEmpty()) {
+                    continue;
+                }
+                // The record also holds the url and the lengths
+                if (store.getSizeAfterAppend(url, body) > budget) {
+                    break;
+                }
+                store.append(url, body);
+                saved++;
+            } catch (IOException e) {
+                Log.w(LOG_TAG, "Problem prefetching " + url, e);
+                return false;
+            }
+        }
+        FetchMetrics.count(FetchMetrics.COUNT_PREFETCHED_ARTICLES, saved);
+        Log.d(LOG_TAG, "Saved " + saved + " article bodies, store is " + store.getSize() + " bytes");
+        return true;
+    }
+
+    private static int parseInt(String value, int defaultValue) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.adi.guardianlgbtnews;
+
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.util.Log;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.widget.TextView;
+
+import java.io.IOException;
+
+/**
+ * Shows the saved text of an article, read from the {@link ArticleBodyStore}. Opening it never
+ * waits for the network: the body is a lookup in a memory-mapped file, so it is read right
+ * away on the UI thread. The menu still opens the article in the browser.
+ */
+public class ArticleReaderActivity extends AppCompatActivity {
+
+    private static final String LOG_TAG = ArticleReaderActivity.class.getSimpleName();
+
+    private static final String EXTRA_URL = "url";
+    private static final String EXTRA_TITLE = "title";
+
+    // States
+    private String mUrl;
+
+    /**
+     * Return an intent opening the given NewsItem in the reader.
+     */
+    public static Intent newIntent(Context context, NewsItem item) {
+        return new Intent(context, ArticleReaderActivity.class)
+                .putExtra(EXTRA_URL, item.getUrl())
+                .putExtra(EXTRA_TITLE, item.getTitle());
+    }
+
+    /**
+     * Return whether the text of the article with the given webUrl is saved, i.e. whether the
+     * reader can show it.
+     */
+    public static boolean canOpen(Context context, String url) {
+        try {
+            return ArticlePrefetchJobService.getBodyStore(context).contains(url);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem opening the article store.", e);
+            return false;
+        }
+    }
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        long openStart = System.nanoTime();
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_reader);
+        mUrl = getIntent().getStringExtra(EXTRA_URL);
+
+        String body = null;
+        try {
+            body = ArticlePrefetchJobService.getBodyStore(this).get(mUrl);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem reading the article " + mUrl, e);
+        }
+        if (body == null) {
+            // Dropped from the store meanwhile
+            openInBrowser();
+            finish();
+            return;
+        }
+
+        ((TextView) findViewById(R.id.reader_title)).setText(getIntent().getStringExtra(EXTRA_TITLE));
+        ((TextView) findViewById(R.id.reader_body)).setText(body);
+        FetchMetrics.recordSince(FetchMetrics.STAGE_READER_OPEN, openStart);
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.reader, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        if (item.getItemId() == R.id.action_open_in_browser) {
+            openInBrowser();
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+    // This helper method opens the article's page in the browser, if there is one
+    private void openInBrowser() {
+        Intent intent = new Intent(Intent.ACTION_VIEW, Uri.parse(mUrl));
+        if (intent.resolveActivity(getPackageManager()) != null) {
+            startActivity(intent);
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package com.example.adi.guardianlgbtnews;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A local SQLite store of every NewsItem the app has received, deduplicated by webUrl, with a
+ * full-text (FTS4) index over the title, author and section so they can be searched offline.
+ * Entries that haven't been seen for MAX_AGE_MILLIS are pruned, and only the MAX_ARTICLES most
+ * recently seen ones are kept.
+ */
+public final class ArticleStore extends SQLiteOpenHelper {
+
+    private static final String LOG_TAG = ArticleStore.class.getSimpleName();
+
+    private static final String DATABASE_NAME = "articles.db";
+    private static final int DATABASE_VERSION = 4;
+
+    // Pruning limits
+    private static final long MAX_AGE_MILLIS = TimeUnit.DAYS.toMillis(30);
+    private static final int MAX_ARTICLES = 5000;
+
+    // Maximum number of search results returned
+    private static final int MAX_SEARCH_RESULTS = 100;
+
+    // Table and column names
+    private static final String TABLE_ARTICLES = "articles";
+    private static final String TABLE_ARTICLES_FTS = "articles_fts";
+    private static final String COLUMN_URL = "url";
+    private static final String COLUMN_TITLE = "title";
+    private static final String COLUMN_SECTION = "section";
+    private static final String COLUMN_AUTHOR = "author";
+    private static final String COLUMN_PUBLISHED_AT = "published_at";
+    private static final String COLUMN_THUMBNAIL = "thumbnail";
+    private static final String COLUMN_SEEN_AT = "seen_at";
+
+    // The store used by QueryUtils, if one was installed
+    private static volatile ArticleStore sInstalled;
+
+    private ArticleStore(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    /**
+     * Create (or reuse) the store and make it the one every fetched NewsItem is saved to.
+     */
+    public static synchronized ArticleStore install(Context context) {
+        if (sInstalled == null) {
+            sInstalled = new ArticleStore(context.getApplicationContext());
+        }
+        return sInstalled;
+    }
+
+    /**
+     * Return the installed store, or null if none was installed.
+     */
+    public static ArticleStore getInstalled() {
+        return sInstalled;
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_ARTICLES + " ("
+                + COLUMN_URL + " TEXT PRIMARY KEY, "
+                + COLUMN_TITLE + " TEXT NOT NULL, "
+                + COLUMN_SECTION + " TEXT NOT NULL, "
+                + COLUMN_AUTHOR + " TEXT NOT NULL, "
+                + COLUMN_PUBLISHED_AT + " INTEGER NOT NULL, "
+                + COLUMN_THUMBNAIL + " TEXT NOT NULL DEFAULT '', "
+                + COLUMN_SEEN_AT + " INTEGER NOT NULL)");
+        db.execSQL("CREATE INDEX articles_seen_at ON " + TABLE_ARTICLES + " (" + COLUMN_SEEN_AT + ")");
+        db.execSQL("CREATE INDEX articles_published_at ON " + TABLE_ARTICLES
+                + " (" + COLUMN_PUBLISHED_AT + ")");
+
+        // The index only holds the searched columns; their text stays in the articles table
+        db.execSQL("CREATE VIRTUAL TABLE " + TABLE_ARTICLES_FTS + " USING fts4("
+                + "content=\"" + TABLE_ARTICLES + "\", "
+                + COLUMN_TITLE + ", " + COLUMN_AUTHOR + ", " + COLUMN_SECTION + ")");
+
+        // Keep the index in sync with the articles table
+        String indexNew = "INSERT INTO " + TABLE_ARTICLES_FTS + " (docid, " + COLUMN_TITLE + ", "
+                + COLUMN_AUTHOR + ", " + COLUMN_SECTION + ") VALUES (new.rowid, new." + COLUMN_TITLE
+                + ", new." + COLUMN_AUTHOR + ", new." + COLUMN_SECTION + ");";
+        String unindexOld = "DELETE FROM " + TABLE_ARTICLES_FTS + " WHERE docid = old.rowid;";
+        db.execSQL("CREATE TRIGGER articles_ai AFTER INSERT ON " + TABLE_ARTICLES
+                + " BEGIN " + indexNew + " END");
+        db.execSQL("CREATE TRIGGER articles_bd BEFORE DELETE ON " + TABLE_ARTICLES
+                + " BEGIN " + unindexOld + " END");
+        db.execSQL("CREATE TRIGGER articles_bu BEFORE UPDATE ON " + TABLE_ARTICLES
+                + " BEGIN " + unindexOld + " END");
+        db.execSQL("CREATE TRIGGER articles_au AFTER UPDATE ON " + TABLE_ARTICLES
+                + " BEGIN " + indexNew + " END");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // The store only holds copies of server data, so it is simply rebuilt
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_ARTICLES_FTS);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_ARTICLES);
+        onCreate(db);
+    }
+
+    /**
+     * Save the given NewsItems, replacing the stored ones with the same webUrl, and prune the
+     * store.
+     */
+    public void saveAll(List<NewsItem> newsItems) {
+        if (newsItems == null || newsItems.isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            ContentValues values = new ContentValues();
+            for (NewsItem item : newsItems) {
+                values.clear();
+                values.put(COLUMN_TITLE, item.getTitle());
+                values.put(COLUMN_SECTION, item.getSection());
+                values.put(COLUMN_AUTHOR, item.getAuthor());
+                values.put(COLUMN_PUBLISHED_AT, item.getPublishedAt());
+                values.put(COLUMN_THUMBNAIL, item.getThumbnailUrl());
+                values.put(COLUMN_SEEN_AT, now);
+                // Update the stored article, or insert it if it's new
+                int updated = db.update(TABLE_ARTICLES, values, COLUMN_URL + " = ?",
+                        new String[]{item.getUrl()});
+                if (updated == 0) {
+                    values.put(COLUMN_URL, item.getUrl());
+                    db.insert(TABLE_ARTICLES, null, values);
+                }
+            }
+            prune(db, now);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Return the stored NewsItems whose title, author or section contain words starting with
+     * every word of the query, newest first.
+     */
+    public List<NewsItem> search(String query) {
+        List<NewsItem> results = new ArrayList<>();
+        String match = toPrefixMatch(query);
+        if (match.isEmpty()) {
+            return results;
+        }
+        Cursor cursor = getReadableDatabase().rawQuery("SELECT a." + COLUMN_TITLE + ", a."
+                + COLUMN_SECTION + ", a." + COLUMN_URL + ", a." + COLUMN_AUTHOR + ", a." + COLUMN_PUBLISHED_AT + ", a." + COLUMN_THUMBNAIL
+                + " FROM " + TABLE_ARTICLES + " a JOIN " + TABLE_ARTICLES_FTS + " f ON a.rowid = f.docid"
+                + " WHERE " + TABLE_ARTICLES_FTS + " MATCH ?"
+                + " ORDER BY a." + COLUMN_PUBLISHED_AT + " DESC LIMIT " + MAX_SEARCH_RESULTS,
+                new String[]{match});
+        try {
+            while (cursor.moveToNext()) {
+                results.add(readNewsItem(cursor));
+            }
+        } finally {
+            cursor.close();
+        }
+        return results;
+    }
+
+    /**
+     * Return the most recent stored NewsItems, newest first.
+     */
+    public List<NewsItem> getLatest(int limit) {
+        List<NewsItem> results = new ArrayList<>();
+        Cursor cursor = getReadableDatabase().query(TABLE_ARTICLES,
+                new String[]{COLUMN_TITLE, COLUMN_SECTION, COLUMN_URL, COLUMN_AUTHOR, COLUMN_PUBLISHED_AT,
+                        COLUMN_THUMBNAIL},
+                null, null, null, null, COLUMN_PUBLISHED_AT + " DESC", String.valueOf(limit));
+        try {
+            while (cursor.moveToNext()) {
+                results.add(readNewsItem(cursor));
+            }
+        } finally {
+            cursor.close();
+        }
+        return results;
+    }
+
+    /**
+     * Return the webUrls of the stored NewsItems published on or after the given day
+     * ("yyyy-MM-dd").
+     */
+    public Set<String> getUrlsSince(String date) {
+        Set<String> urls = new HashSet<>();
+        Cursor cursor = getReadableDatabase().query(TABLE_ARTICLES, new String[]{COLUMN_URL},
+                COLUMN_PUBLISHED_AT + " >= ?", new String[]{String.valueOf(IsoDates.parse(date))},
+                null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                urls.add(cursor.getString(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return urls;
+    }
+
+    // Delete the entries that are too old, and then the least recently seen ones over the limit
+    private static void prune(SQLiteDatabase db, long now) {
+        int deleted = db.delete(TABLE_ARTICLES, COLUMN_SEEN_AT + " < ?",
+                new String[]{String.valueOf(now - MAX_AGE_MILLIS)});
+        deleted += db.delete(TABLE_ARTICLES, "rowid IN (SELECT rowid FROM " + TABLE_ARTICLES
+                + " ORDER BY " + COLUMN_SEEN_AT + " DESC LIMIT -1 OFFSET " + MAX_ARTICLES + ")", null);
+        if (deleted > 0) {
+            Log.d(LOG_TAG, "Pruned " + deleted + " articles");
+        }
+    }
+
+    // Turn a free-text query into an FTS query matching every word as a prefix,
+    // e.g. "trans-righ" becomes "trans* righ*". Like the tokenizer of the index, every character
+    // that isn't a letter or a digit separates words, which also drops the ones that have a
+    // meaning in the FTS query syntax.
+    private static String toPrefixMatch(String query) {
+        StringBuilder match = new StringBuilder();
+        for (String term : query.split("[^\\p{L}\\p{N}]+")) {
+            if (!term.isEmpty()) {
+                if (match.length() > 0) {
+                    match.append(' ');
+                }
+                match.append(term).append('*');
+            }
+        }
+        return match.toString();
+    }
+
+    private static NewsItem readNewsItem(Cursor cursor) {
+        return new NewsItem(cursor.getString(0), cursor.getString(1), cursor.getString(2),
+                cursor.getString(3), cursor.getLong(4), cursor.getString(5));
+    }
+}
@@ -0,0 +1,150 @@
+package com.example.adi.guardianlgbtnews;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v7.widget.RecyclerView;
+import android.view.Choreographer;
+import android.view.Display;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times the frames of the scrolls of a RecyclerView with the Choreographer, while it is being
+ * dragged or flung, and hands them to a {@link JankTracker}. Nothing is done between scrolls,
+ * so an idle list costs no frame callbacks.
+ * <p>
+ * It also records how long it takes for a list handed to the adapter to be drawn, see
+ * {@link #recordNextDraw(String, long)}.
+ */
+public class FrameMonitor extends RecyclerView.OnScrollListener implements Choreographer.FrameCallback {
+
+    /**
+     * Interface definition for a callback to be invoked when a scroll is over, or a draw was
+     * timed, so the numbers can be shown without disturbing the frames they time.
+     */
+    public interface OnRecordedListener {
+        void onRecorded(JankTracker tracker);
+    }
+
+    // The refresh rate assumed if the display doesn't tell
+    private static final float DEFAULT_REFRESH_RATE = 60f;
+
+    // States
+    private final JankTracker mTracker;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private RecyclerView mRecyclerView;
+    private OnRecordedListener mListener;
+    private boolean mScrolling;
+
+    /**
+     * @param display - the display the list is shown on, whose refresh rate sets the deadline of
+     *                a frame
+     */
+    public FrameMonitor(Display display) {
+        float refreshRate = display == null ? 0 : display.getRefreshRate();
+        if (refreshRate < 1) {
+            refreshRate = DEFAULT_REFRESH_RATE;
+        }
+        mTracker = new JankTracker((long) (TimeUnit.SECONDS.toNanos(1) / refreshRate));
+    }
+
+    /**
+     * Start timing the scrolls of the given RecyclerView.
+     */
+    public void attach(RecyclerView recyclerView) {
+        mRecyclerView = recyclerView;
+        recyclerView.addOnScrollListener(this);
+    }
+
+    /**
+     * Stop timing, e.g. when the activity is destroyed.
+     */
+    public void detach() {
+        if (mRecyclerView != null) {
+            mRecyclerView.removeOnScrollListener(this);
+            mRecyclerView = null;
+        }
+        stopScroll();
+    }
+
+    public void setOnRecordedListener(OnRecordedListener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Return the tracker of the scrolls since this monitor was created.
+     */
+    public JankTracker getTracker() {
+        return mTracker;
+    }
+
+    @Override
+    public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+        if (newState == RecyclerView.SCROLL_STATE_IDLE) {
+            if (mScrolling) {
+                stopScroll();
+                notifyRecorded();
+            }
+        } else if (!mScrolling) {
+            // A drag or a fling starts
+            mScrolling = true;
+            FetchMetrics.count(FetchMetrics.COUNT_SCROLLS, 1);
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (!mScrolling) {
+            return;
+        }
+        mTracker.onFrame(frameTimeNanos);
+        // Keep a frame coming until the scroll is over
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    private void notifyRecorded() {
+        if (mListener != null) {
+            mListener.onRecorded(mTracker);
+        }
+    }
+
+    private void stopScroll() {
+        mScrolling = false;
+        Choreographer.getInstance().removeFrameCallback(this);
+        mTracker.stop();
+    }
+
+    /**
+     * Record the time from the given start to the end of the next frame drawn of the RecyclerView,
+     * e.g. the one showing a list just handed to the adapter, as the given stage.
+     *
+     * @param stage      - the FetchMetrics stage to record
+     * @param startNanos - the start, a System.nanoTime() value
+     */
+    public void recordNextDraw(final String stage, final long startNanos) {
+        if (mRecyclerView == null) {
+            return;
+        }
+        final View view = mRecyclerView;
+        view.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                view.getViewTreeObserver().removeOnPreDrawListener(this);
+                // Runs right after the traversal that is about to draw
+                mHandler.postAtFrontOfQueue(new Runnable() {
+                    @Override
+                    public void run() {
+                        FetchMetrics.recordSince(stage, startNanos);
+                        notifyRecorded();
+                    }
+                });
+                return true;
+            }
+        });
+        // Make sure there is a frame, even if nothing changed
+        view.invalidate();
+    }
+}
@@ -0,0 +1,184 @@
+package com.example.adi.guardianlgbtnews;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An on-disk cache of the encoded bytes of images, keyed by their url, with a size cap and
+ * least-recently-used eviction. Images are stored as they were downloaded (e.g. JPEG), which
+ * is many times smaller than the decoded bitmaps kept in memory by {@link ImageLoader}.
+ */
+public final class ImageDiskCache {
+
+    private static final String LOG_TAG = ImageDiskCache.class.getSimpleName();
+
+    private static final String IMAGE_SUFFIX = ".img";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    // States
+    private final File mDirectory;
+    private final long mMaxSize;
+    private long mSize;
+    // Image files by key in access order, so the eldest is the least recently used
+    private final LinkedHashMap<String, File> mFiles = new LinkedHashMap<>(64, 0.75f, true);
+    // Gives every write its own temporary file, as two workers may fetch the same image
+    private final AtomicLong mNextTempId = new AtomicLong();
+
+    /**
+     * @param directory - the directory to store the images in
+     * @param maxSize   - the maximum number of bytes of images to keep
+     */
+    public ImageDiskCache(File directory, long maxSize) {
+        mDirectory = directory;
+        mMaxSize = maxSize;
+        readDirectory();
+    }
+
+    /**
+     * Return the cached bytes of the image at the given url, or null if it isn't cached.
+     */
+    public byte[] get(String url) {
+        File file;
+        synchronized (this) {
+            file = mFiles.get(sha1Hex(url));
+        }
+        if (file == null) {
+            return null;
+        }
+        try {
+            byte[] bytes = readFully(file);
+            // Record the access on disk too, so the LRU order survives a restart
+            file.setLastModified(System.currentTimeMillis());
+            return bytes;
+        } catch (IOException e) {
+            // Evicted meanwhile, or unreadable: it is a miss either way
+            return null;
+        }
+    }
+
+    /**
+     * Store the bytes of the image at the given url, and evict the least recently used images
+     * if over the size cap.
+     */
+    public void put(String url, byte[] bytes) {
+        String key = sha1Hex(url);
+        File tempFile = new File(mDirectory, key + "." + mNextTempId.incrementAndGet() + TEMP_SUFFIX);
+        try {
+            OutputStream out = new FileOutputStream(tempFile);
+            try {
+                out.write(bytes);
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem caching the image " + url, e);
+            tempFile.delete();
+            return;
+        }
+
+        synchronized (this) {
+            File file = new File(mDirectory, key + IMAGE_SUFFIX);
+            File previous = mFiles.remove(key);
+            if (previous != null) {
+                mSize -= previous.length();
+            }
+            if (!tempFile.renameTo(file)) {
+                tempFile.delete();
+                return;
+            }
+            mFiles.put(key, file);
+            mSize += bytes.length;
+            trimToSize();
+        }
+    }
+
+    public synchronized long getSize() {
+        return mSize;
+    }
+
+    private void trimToSize() {
+        Iterator<Map.Entry<String, File>> iterator = mFiles.entrySet().iterator();
+        while (mSize > mMaxSize && iterator.hasNext()) {
+            File eldest = iterator.next().getValue();
+            iterator.remove();
+            mSize -= eldest.length();
+            eldest.delete();
+        }
+    }
+
+    // Rebuild the in-memory index from the files in the cache directory
+    private synchronized void readDirectory() {
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            Log.e(LOG_TAG, "Couldn't create cache directory " + mDirectory);
+            return;
+        }
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        // Oldest access first, so the LinkedHashMap ends up in LRU order
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return Long.compare(a.lastModified(), b.lastModified());
+            }
+        });
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(TEMP_SUFFIX)) {
+                file.delete();
+            } else if (name.endsWith(IMAGE_SUFFIX)) {
+                mFiles.put(name.substring(0, name.length() - IMAGE_SUFFIX.length()), file);
+                mSize += file.length();
+            }
+        }
+        trimToSize();
+    }
+
+    private static byte[] readFully(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] bytes = new byte[(int) file.length()];
+            int offset = 0;
+            while (offset < bytes.length) {
+                int read = in.read(bytes, offset, bytes.length - offset);
+                if (read == -1) {
+                    throw new IOException("Truncated image " + file);
+                }
+                offset += read;
+            }
+            return bytes;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static String sha1Hex(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1")
+                    .digest(value.getBytes(Charset.forName("UTF-8")));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(String.format("%02x", b & 0xff));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package com.example.adi.guardianlgbtnews;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads the thumbnails of the list into ImageViews. Images are looked up in two caches before
+ * being downloaded: a memory LRU of decoded bitmaps, sized by their bytes, and an
+ * {@link ImageDiskCache} of the downloaded files. Downloads and decodes run on a small pool of
+ * worker threads, and every image is decoded downsampled to the size of its view.
+ * <p>
+ * Every method must be called on the UI thread. A view shows the image of the last
+ * {@link #load(String, ImageView)} call made for it, and {@link #cancel(ImageView)} should be
+ * called when a row is recycled so the workers don't spend time on rows that aren't visible.
+ */
+public final class ImageLoader {
+
+    private static final String LOG_TAG = ImageLoader.class.getSimpleName();
+
+    // Number of images downloaded and decoded at the same time
+    private static final int WORKER_COUNT = 3;
+
+    // The memory cache gets this fraction of the app's memory class
+    private static final int MEMORY_CACHE_DIVISOR = 8;
+
+    private static final String DISK_CACHE_DIRECTORY = "images";
+    private static final long DISK_CACHE_SIZE = 10 * 1024 * 1024;
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+    private static final int READ_TIMEOUT_MILLIS = 10000;
+    // Thumbnails are a few tens of KB; anything much bigger isn't one
+    private static final int MAX_IMAGE_BYTES = 2 * 1024 * 1024;
+
+    private static ImageLoader sInstance;
+
+    // States
+    private final LruCache<String, Bitmap> mMemoryCache;
+    private final ImageDiskCache mDiskCache;
+    private final ExecutorService mWorkers;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    private ImageLoader(Context context) {
+        ActivityManager activityManager =
+                (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        int maxBytes = activityManager.getMemoryClass() * 1024 * 1024 / MEMORY_CACHE_DIVISOR;
+        mMemoryCache = new LruCache<String, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getAllocationByteCount();
+            }
+        };
+        mDiskCache = new ImageDiskCache(
+                new File(context.getCacheDir(), DISK_CACHE_DIRECTORY), DISK_CACHE_SIZE);
+        mWorkers = Executors.newFixedThreadPool(WORKER_COUNT, new ThreadFactory() {
+            private final AtomicInteger mCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "ImageLoader-" + mCount.incrementAndGet());
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Return the loader shared by the whole app.
+     */
+    public static synchronized ImageLoader getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new ImageLoader(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Show the image at the given url in the given view, replacing whatever it showed. The view
+     * is cleared until the image is loaded, and stays clear if it can't be.
+     */
+    public void load(String url, ImageView view) {
+        cancel(view);
+        if (url == null || url.isEmpty()) {
+            view.setImageDrawable(null);
+            return;
+        }
+
+        // The size to decode to; the thumbnail has a fixed size, so it's known before layout
+        ViewGroup.LayoutParams params = view.getLayoutParams();
+        int width = params != null && params.width > 0 ? params.width : view.getWidth();
+        int height = params != null && params.height > 0 ? params.height : view.getHeight();
+        String key = url + '@' + width + 'x' + height;
+
+        Bitmap bitmap = mMemoryCache.get(key);
+        if (bitmap != null) {
+            FetchMetrics.count(FetchMetrics.COUNT_IMAGE_MEMORY_HITS, 1);
+            view.setImageBitmap(bitmap);
+            return;
+        }
+
+        view.setImageDrawable(null);
+        Request request = new Request(url, key, width, height, view);
+        view.setTag(request);
+        request.mFuture = mWorkers.submit(request);
+    }
+
+    /**
+     * Stop loading an image into the given view. A download already under way is finished, so
+     * the image is in the disk cache the next time, but it isn't decoded or shown.
+     */
+    public void cancel(ImageView view) {
+        Object tag = view.getTag();
+        if (tag instanceof Request) {
+            Request request = (Request) tag;
+            view.setTag(null);
+            request.mCancelled = true;
+            if (request.mFuture != null && request.mFuture.cancel(false)) {
+                FetchMetrics.count(FetchMetrics.COUNT_IMAGE_CANCELLED, 1);
+            }
+        }
+    }
+
+    /**
+     * Release memory as asked by {@link ComponentCallbacks2#onTrimMemory(int)}: half of the
+     * bitmaps when memory is getting low, all of them when the process is likely to be killed.
+     */
+    public void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            mMemoryCache.evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            mMemoryCache.trimToSize(mMemoryCache.maxSize() / 2);
+        }
+    }
+
+    // Get the bytes of an image from the disk cache, or download them and cache them
+    private byte[] getImageBytes(String url) throws IOException {
+        byte[] bytes = mDiskCache.get(url);
+        if (bytes != null) {
+            FetchMetrics.count(FetchMetrics.COUNT_IMAGE_DISK_HITS, 1);
+            return bytes;
+        }
+        bytes = download(url);
+        FetchMetrics.count(FetchMetrics.COUNT_IMAGE_DOWNLOADS, 1);
+        mDiskCache.put(url, bytes);
+        return bytes;
+    }
+
+    // The images come from another host than the API, so they don't go through the API's
+    // client and its metrics
+    private static byte[] download(String url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        try {
+            connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+            connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+            if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                throw new HttpStatusException(connection.getResponseCode());
+            }
+            InputStream in = connection.getInputStream();
+            try {
+                ByteArrayOutputStream out = new ByteArrayOutputStream(
+                        Math.max(connection.getContentLength(), 8192));
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                    if (out.size() > MAX_IMAGE_BYTES) {
+                        throw new IOException("Image too large: " + url);
+                    }
+                }
+                return out.toByteArray();
+            } finally {
+                in.close();
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * Decode the given image, downsampled by a power of two so it is no smaller than the given
+     * size. A size of 0 decodes it at full size.
+     */
+    static Bitmap decodeSampled(byte[] bytes, int width, int height) {
+        // Read the dimensions without decoding the pixels
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight, width, height);
+        options.inJustDecodeBounds = false;
+        // Thumbnails are opaque photos; 2 bytes per pixel instead of 4
+        options.inPreferredConfig = Bitmap.Config.RGB_565;
+        return BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+    }
+
+    // The largest power of two that keeps both sides of the image at least as big as wanted
+    static int calculateInSampleSize(int imageWidth, int imageHeight, int width, int height) {
+        int inSampleSize = 1;
+        if (width <= 0 || height <= 0) {
+            return inSampleSize;
+        }
+        while (imageWidth / (inSampleSize * 2) >= width && imageHeight / (inSampleSize * 2) >= height) {
+            inSampleSize *= 2;
+        }
+        return inSampleSize;
+    }
+
+    /**
+     * The loading of one image into one view. The view is only referenced weakly, so a
+     * queued request doesn't keep a destroyed activity alive.
+     */
+    private final class Request implements Runnable {
+        private final String mUrl;
+        private final String mKey;
+        private final int mWidth;
+        private final int mHeight;
+        private final WeakReference<ImageView> mView;
+        private volatile boolean mCancelled;
+        private Future<?> mFuture;
+
+        Request(String url, String key, int width, int height, ImageView view) {
+            mUrl = url;
+            mKey = key;
+            mWidth = width;
+            mHeight = height;
+            mView = new WeakReference<>(view);
+        }
+
+        @Override
+        public void run() {
+            long start = System.nanoTime();
+            final Bitmap bitmap;
+            try {
+                byte[] bytes = getImageBytes(mUrl);
+                if (mCancelled) {
+                    FetchMetrics.count(FetchMetrics.COUNT_IMAGE_CANCELLED, 1);
+                    return;
+                }
+                bitmap = decodeSampled(bytes, mWidth, mHeight);
+            } catch (IOException e) {
+                Log.w(LOG_TAG, "Problem loading the image " + mUrl, e);
+                return;
+            }
+            if (bitmap == null) {
+                return;
+            }
+            mMemoryCache.put(mKey, bitmap);
+            FetchMetrics.recordSince(FetchMetrics.STAGE_IMAGE_LOAD, start);
+
+            // Show it, unless the view has been given another image meanwhile
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    ImageView view = mView.get();
+                    if (view != null && view.getTag() == Request.this) {
+                        view.setTag(null);
+                        view.setImageBitmap(bitmap);
+                    }
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.example.adi.guardianlgbtnews;
+
+import android.content.Context;
+import android.content.res.ColorStateList;
+import android.content.res.TypedArray;
+import android.graphics.Canvas;
+import android.graphics.Typeface;
+import android.text.Layout;
+import android.text.TextPaint;
+import android.util.AttributeSet;
+import android.util.TypedValue;
+import android.view.View;
+
+/**
+ * A view drawing a plain text, in the android:textAppearance given by its style, with a layout
+ * taken from a {@link TextLayoutCache}. Unlike a TextView, it doesn't measure and break its text
+ * into lines when it is bound, as the layout was most likely precomputed in the background.
+ */
+public class LayoutTextView extends View {
+
+    // The attributes of a text appearance that are used, sorted by ID as obtainStyledAttributes needs
+    private static final int[] APPEARANCE_ATTRS = {android.R.attr.textSize,
+            android.R.attr.textStyle, android.R.attr.textColor, android.R.attr.fontFamily};
+    private static final int APPEARANCE_TEXT_SIZE = 0;
+    private static final int APPEARANCE_TEXT_STYLE = 1;
+    private static final int APPEARANCE_TEXT_COLOR = 2;
+    private static final int APPEARANCE_FONT_FAMILY = 3;
+
+    // The size of the text when the style doesn't give one, as for a TextView
+    private static final int DEFAULT_TEXT_SIZE_SP = 15;
+
+    // States
+    private final TextPaint mPaint = new TextPaint(TextPaint.ANTI_ALIAS_FLAG);
+    private CharSequence mText = "";
+    private TextLayoutCache mCache;
+    private int mField;
+    private Layout mLayout;
+
+    // Constructors
+    public LayoutTextView(Context context) {
+        this(context, null);
+    }
+
+    public LayoutTextView(Context context, AttributeSet attrs) {
+        this(context, attrs, 0);
+    }
+
+    public LayoutTextView(Context context, AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+        mPaint.density = getResources().getDisplayMetrics().density;
+        mPaint.setTextSize(TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP,
+                DEFAULT_TEXT_SIZE_SP, getResources().getDisplayMetrics()));
+
+        // Find the text appearance given by the style
+        TypedArray styleArray = context.obtainStyledAttributes(attrs,
+                new int[]{android.R.attr.textAppearance}, defStyleAttr, 0);
+        int appearance = styleArray.getResourceId(0, 0);
+        styleArray.recycle();
+        if (appearance != 0) {
+            TypedArray appearanceArray = context.obtainStyledAttributes(appearance, APPEARANCE_ATTRS);
+            applyAppearance(appearanceArray);
+            appearanceArray.recycle();
+        }
+    }
+
+    private void applyAppearance(TypedArray appearance) {
+        int textSize = appearance.getDimensionPixelSize(APPEARANCE_TEXT_SIZE, 0);
+        if (textSize > 0) {
+            mPaint.setTextSize(textSize);
+        }
+        ColorStateList textColor = appearance.getColorStateList(APPEARANCE_TEXT_COLOR);
+        if (textColor != null) {
+            mPaint.setColor(textColor.getDefaultColor());
+        }
+
+        // Pick the typeface as a TextView would, faking the bold or italic it doesn't have
+        int textStyle = appearance.getInt(APPEARANCE_TEXT_STYLE, Typeface.NORMAL);
+        String fontFamily = appearance.getString(APPEARANCE_FONT_FAMILY);
+        Typeface typeface = fontFamily == null
+                ? Typeface.defaultFromStyle(textStyle) : Typeface.create(fontFamily, textStyle);
+        mPaint.setTypeface(typeface);
+        int missingStyle = textStyle & ~typeface.getStyle();
+        mPaint.setFakeBoldText((missingStyle & Typeface.BOLD) != 0);
+        mPaint.setTextSkewX((missingStyle & Typeface.ITALIC) != 0 ? -0.25f : 0);
+    }
+
+    /**
+     * Return the paint the text is drawn with, i.e. the style of the field it shows.
+     */
+    public TextPaint getPaint() {
+        return mPaint;
+    }
+
+    /**
+     * Show the given text, with a layout from the given cache.
+     *
+     * @param text  - the text to show
+     * @param cache - the cache holding the layouts of the field
+     * @param field - the field the text is, one of the TextLayoutCache.FIELD_ constants
+     */
+    public void setText(CharSequence text, TextLayoutCache cache, int field) {
+        if (text == null) {
+            text = "";
+        }
+        boolean changed = !text.toString().equals(mText.toString()) || cache != mCache || field != mField;
+        mText = text;
+        mCache = cache;
+        mField = field;
+        setContentDescription(text);
+        if (changed) {
+            mLayout = null;
+            requestLayout();
+            invalidate();
+        }
+    }
+
+    public CharSequence getText() {
+        return mText;
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        int widthMode = MeasureSpec.getMode(widthMeasureSpec);
+        int horizontalPadding = getPaddingLeft() + getPaddingRight();
+        int availableWidth = widthMode == MeasureSpec.UNSPECIFIED
+                ? (int) Math.ceil(Layout.getDesiredWidth(mText, mPaint))
+                : MeasureSpec.getSize(widthMeasureSpec) - horizontalPadding;
+        boolean fill = widthMode == MeasureSpec.EXACTLY;
+
+        // Take the layout for this width, most likely precomputed
+        if (mCache == null || mText.length() == 0) {
+            mLayout = null;
+        } else {
+            mLayout = mCache.get(mField, mText, availableWidth, fill, mPaint);
+        }
+
+        int width = fill ? MeasureSpec.getSize(widthMeasureSpec)
+                : (mLayout == null ? 0 : mLayout.getWidth()) + horizontalPadding;
+        int height = (mLayout == null ? 0 : mLayout.getHeight())
+                + getPaddingTop() + getPaddingBottom();
+        setMeasuredDimension(resolveSize(width, widthMeasureSpec),
+                resolveSize(height, heightMeasureSpec));
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        if (mLayout == null) {
+            return;
+        }
+        canvas.save();
+        canvas.translate(getPaddingLeft(), getPaddingTop());
+        mLayout.draw(canvas);
+        canvas.restore();
+    }
+}
@@ -7,69 +7,197 @@ import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.SystemClock;
 import android.preference.PreferenceManager;
+import android.text.TextUtils;
+import android.util.Log;
 import android.support.v4.app.LoaderManager;
 import android.support.v4.content.AsyncTaskLoader;
 import android.support.v4.content.Loader;
 import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.DividerItemDecoration;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.support.v7.widget.SearchView;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
-import android.widget.AdapterView;
-import android.widget.ListView;
 import android.widget.ProgressBar;
 import android.widget.TextView;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 public class MainActivity extends AppCompatActivity implements LoaderManager.LoaderCallbacks<List<NewsItem>> {
+    private static final String LOG_TAG = MainActivity.class.getSimpleName();
     // States
-    private static final String REQUEST_URL =
-            "https://content.guardianapis.com/search";
     private static final int NEWSITEMS_LOADER_ID = 1;
+    private static final int SEARCH_LOADER_ID = 2;
+    private static final int LOCAL_LOADER_ID = 3;
+    private static final String SEARCH_QUERY_KEY = "query";
+    // Size cap of the on-disk cache of Guardian responses
+    static final long RESPONSE_CACHE_SIZE = 4 * 1024 * 1024;
+    // Number of articles requested per page in paging mode, kept small for a fast first screen
+    private static final int PAGE_SIZE = 10;
+    // Maximum number of articles kept in memory in paging mode
+    private static final int MAX_PAGED_ITEMS = 500;
+    // Name of the snapshot of the last loaded list, in the cache directory
+    private static final String SNAPSHOT_FILE_NAME = "last_news.snapshot";
+    // The snapshots are written one after the other on this background thread
+    private static final Executor sSnapshotExecutor = Executors.newSingleThreadExecutor();
+    // Preference changes are applied once they have stopped changing for this long
+    private static final long PREFERENCE_DEBOUNCE_MILLIS = 400;
     private NewsItemsAdapter mAdapter;
     private TextView mEmptyView;
     private ProgressBar mProgressBar;
+    // Times the scrolls of the list, shown on the mFrameOverlay if enabled
+    private FrameMonitor mFrameMonitor;
+    private TextView mFrameOverlay;
+    private int mPrefetchDistance;
+    // The last list delivered by the NewsItemsLoader, shown again when a search is closed
+    private List<NewsItem> mLoadedNewsItems;
+    // The query of the search in the saved articles, or null when not searching
+    private String mSearchQuery;
+    // When the activity was created (System.nanoTime()), and whether content was shown since
+    private long mCreatedAtNanos;
+    private boolean mFirstContentShown;
+    // Whether the list shows the rows of a network response that is still downloading
+    private boolean mShowingProgressive;
+    // Whether the activity is between onStart and onStop
+    private boolean mStarted;
+    // Tells the FetchPolicy about the changes of network while the activity is started
+    private ConnectivityManager.NetworkCallback mNetworkCallback;
+    private final Handler mHandler = new Handler();
+    private final Runnable mApplyPreferences = new Runnable() {
+        @Override
+        public void run() {
+            applyPreferences();
+        }
+    };
+    // Applies the preferences once a burst of changes is over. The SharedPreferences only keep
+    // a weak reference to it.
+    private final SharedPreferences.OnSharedPreferenceChangeListener mPreferenceListener =
+            new SharedPreferences.OnSharedPreferenceChangeListener() {
+                @Override
+                public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+                    mHandler.removeCallbacks(mApplyPreferences);
+                    mHandler.postDelayed(mApplyPreferences, PREFERENCE_DEBOUNCE_MILLIS);
+                }
+            };
+    // Shows the rows of the NewsItemsLoader's responses as they are parsed
+    private final ProgressiveDelivery.OnBatchListener mBatchListener =
+            new ProgressiveDelivery.OnBatchListener() {
+                @Override
+                public void onBatch(List<NewsItem> batch) {
+                    showProgressiveBatch(batch);
+                }
+            };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        mCreatedAtNanos = System.nanoTime();
+        // Only a cold start is measured; a recreated activity gets its loaders' data right away
+        mFirstContentShown = savedInstanceState != null;
         setContentView(R.layout.activity_main);
 
         // Get the object references for the ProgressBar and the TextView for the empty list notification
         mProgressBar = (ProgressBar) findViewById(R.id.progress_bar);
         mEmptyView = (TextView) findViewById(R.id.empty_view);
+        mFrameOverlay = (TextView) findViewById(R.id.frame_overlay);
 
-        // Get the object references for the ListView
-        ListView ListView = (ListView) findViewById(R.id.list);
-        // Create a new NewsItemsAdapter
-        mAdapter = new NewsItemsAdapter(this, new ArrayList<NewsItem>());
-        // Set the adapter on the ListView so the list can be populated in the UI
-        ListView.setAdapter(mAdapter);
+        // Every received NewsItem is saved to the local store, where it can be searched, and
+        // which is kept up to date in the background
+        ArticleStore.install(this);
+        NewsSyncJobService.schedule(this);
+        // Open the store of the articles saved for offline reading in the background, so they
+        // open at once when clicked
+        final Context appContext = getApplicationContext();
+        sSnapshotExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    ArticlePrefetchJobService.getBodyStore(appContext);
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Problem opening the article store.", e);
+                }
+            }
+        });
 
-        // Set an onItemClickListener on the news items list
-        ListView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+        // Get the object references for the RecyclerView
+        RecyclerView recyclerView = (RecyclerView) findViewById(R.id.list);
+        final LinearLayoutManager layoutManager = new LinearLayoutManager(this);
+        recyclerView.setLayoutManager(layoutManager);
+        recyclerView.addItemDecoration(
+                new DividerItemDecoration(this, DividerItemDecoration.VERTICAL));
+        // Create a new NewsItemsAdapter, opening a NewsItem when it is clicked: in the reader if
+        // its text was saved for offline reading, in the browser otherwise
+        mAdapter = new NewsItemsAdapter(this, new NewsItemsAdapter.OnItemClickListener() {
             @Override
-            public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
+            public void onItemClick(NewsItem item) {
+                if (ArticleReaderActivity.canOpen(MainActivity.this, item.getUrl())) {
+                    startActivity(ArticleReaderActivity.newIntent(MainActivity.this, item));
+                    return;
+                }
                 // Create an intent, parse the url into Uri and pass it to the intent
-                Intent intent = new Intent(Intent.ACTION_VIEW, Uri.parse(mAdapter.getItem(position).getUrl()));
+                Intent intent = new Intent(Intent.ACTION_VIEW, Uri.parse(item.getUrl()));
                 // If there is an app that can handle the request, send it
                 if (intent.resolveActivity(getPackageManager()) != null) {
                     startActivity(intent);
                 }
             }
         });
+        // Set the adapter on the RecyclerView so the list can be populated in the UI
+        recyclerView.setAdapter(mAdapter);
 
-        // Call setEmptyView() on the list so that it shows the empty_view instead of the list if empty.
-        mEmptyView = (TextView) findViewById(R.id.empty_view);
-        ListView.setEmptyView(mEmptyView);
+        // Time the frames of every scroll, and show them once it is over
+        mFrameMonitor = new FrameMonitor(getWindowManager().getDefaultDisplay());
+        mFrameMonitor.attach(recyclerView);
+        mFrameMonitor.setOnRecordedListener(new FrameMonitor.OnRecordedListener() {
+            @Override
+            public void onRecorded(JankTracker tracker) {
+                updateFrameOverlay();
+            }
+        });
+
+        // In paging mode, load the next page once the user scrolls to within
+        // mPrefetchDistance items of the end of the list
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                int totalItemCount = layoutManager.getItemCount();
+                if (mSearchQuery == null && totalItemCount > 0 && layoutManager.findLastVisibleItemPosition()
+                        >= totalItemCount - 1 - mPrefetchDistance) {
+                    Loader<List<NewsItem>> loader =
+                            getSupportLoaderManager().getLoader(NEWSITEMS_LOADER_ID);
+                    if (loader instanceof NewsItemsLoader) {
+                        ((NewsItemsLoader) loader).loadNextPage();
+                    }
+                }
+            }
+        });
 
         // Get the status of network connectivity
         ConnectivityManager cm =
                 (ConnectivityManager) getSystemService(Context.CONNECTIVITY_SERVICE);
         NetworkInfo activeNetwork = cm.getActiveNetworkInfo();
         boolean isConnected = activeNetwork != null && activeNetwork.isConnectedOrConnecting();
+        // The first requests are sized for it
+        NetworkStatus.update(this);
+        // Show the last loaded list (or the newest articles of the local store) right away. If
+        // there is network access it is then only updated with the delta by the network result.
+        getSupportLoaderManager().initLoader(LOCAL_LOADER_ID, null, this);
         // If there is network access create a Loader.
         if (isConnected) {
             // Create an NewsItemsLoader making an http request in the background thread, parsing
@@ -81,11 +209,152 @@ public class MainActivity extends AppCompatActivity implements LoaderManager.Loa
             mProgressBar.setVisibility(View.GONE);
             mEmptyView.setText(R.string.no_network_access);
         }
+
+        // Apply the preferences as soon as they are changed, e.g. in the SettingsActivity
+        PreferenceManager.getDefaultSharedPreferences(this)
+                .registerOnSharedPreferenceChangeListener(mPreferenceListener);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        mFrameMonitor.detach();
+        PreferenceManager.getDefaultSharedPreferences(this)
+                .unregisterOnSharedPreferenceChangeListener(mPreferenceListener);
+        mHandler.removeCallbacks(mApplyPreferences);
+    }
+
+    // This method applies, every time the activity comes back to the foreground, the changes
+    // to the preferences that are still waiting for their debounce delay
+    @Override
+    protected void onStart() {
+        super.onStart();
+        mStarted = true;
+        mNetworkCallback = NetworkStatus.register(this);
+        applyPreferences();
+    }
+
+    // The loader outlives the activity, so it mustn't keep a reference to it
+    @Override
+    protected void onStop() {
+        super.onStop();
+        mStarted = false;
+        NetworkStatus.unregister(this, mNetworkCallback);
+        mNetworkCallback = null;
+        Loader<List<NewsItem>> loader = getSupportLoaderManager().getLoader(NEWSITEMS_LOADER_ID);
+        if (loader instanceof NewsItemsLoader) {
+            ((NewsItemsLoader) loader).setOnBatchListener(null);
+        }
+    }
+
+    // This helper method applies the current preferences. If the request they make up differs
+    // from the one of the running loader, the list in memory is re-sorted or trimmed when that
+    // gives the same result as the new request (see ResultDerivation), and the loader is only
+    // restarted otherwise. If the request is the same the loader keeps its last result.
+    private void applyPreferences() {
+        mHandler.removeCallbacks(mApplyPreferences);
+        SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(this);
+        mPrefetchDistance = parseInt(sharedPrefs.getString(
+                getString(R.string.settings_prefetch_distance_key),
+                getString(R.string.settings_prefetch_distance_default)), 0);
+        updateFrameOverlay();
+
+        Loader<List<NewsItem>> loader = getSupportLoaderManager().getLoader(NEWSITEMS_LOADER_ID);
+        if (loader instanceof NewsItemsLoader) {
+            NewsItemsLoader newsItemsLoader = (NewsItemsLoader) loader;
+            boolean paging = isPagingEnabled();
+            // A change of network alone doesn't reload the list: the new requests keep the size
+            // the loader's were given by the FetchPolicy
+            List<GuardianQuery> queries =
+                    newsItemsLoader.keepFetchParameters(buildRequestQueries(paging), paging);
+            String orderBy = sharedPrefs.getString(
+                    getString(R.string.settings_order_by_key),
+                    getString(R.string.settings_order_by_default));
+            newsItemsLoader.setFreshnessMillis(getFreshnessMillis());
+            if (!newsItemsLoader.isLoading(queries, paging)
+                    && !newsItemsLoader.reuseResultFor(queries, orderBy, paging)) {
+                mProgressBar.setVisibility(View.VISIBLE);
+                newsItemsLoader = (NewsItemsLoader)
+                        getSupportLoaderManager().restartLoader(NEWSITEMS_LOADER_ID, null, this);
+            }
+            // Show the rows as they arrive, if enabled
+            newsItemsLoader.setOnBatchListener(
+                    mStarted && isProgressiveEnabled() ? mBatchListener : null);
+        }
+    }
+
+    // When the system runs low on memory, the decoded thumbnails and the text layouts of the
+    // rows are the first things to give back
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        ImageLoader.getInstance(this).trimMemory(level);
+        mAdapter.trimMemory(level);
     }
 
     // This method handles the LoaderCallback of Loader creation by creating a NewsItemsLoader
     @Override
     public Loader<List<NewsItem>> onCreateLoader(int id, Bundle args) {
+        // The search loader only needs the query
+        if (id == SEARCH_LOADER_ID) {
+            return new ArticleSearchLoader(this, args.getString(SEARCH_QUERY_KEY));
+        }
+        // The local loader needs the snapshot of the last list, and the number of articles to
+        // show if there is none
+        if (id == LOCAL_LOADER_ID) {
+            SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(this);
+            int numArticles = isPagingEnabled() ? PAGE_SIZE : parseInt(sharedPrefs.getString(
+                    getString(R.string.settings_num_articles_key),
+                    getString(R.string.settings_num_articles_default)), PAGE_SIZE);
+            return new LocalArticlesLoader(this, numArticles, getSnapshotFile(), getSnapshotTag());
+        }
+
+        // Build the request from the current preferences
+        boolean paging = isPagingEnabled();
+
+        // Retrieve the order, which the results of several topics are merged by
+        SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(this);
+        String orderBy = sharedPrefs.getString(
+                getString(R.string.settings_order_by_key),
+                getString(R.string.settings_order_by_default));
+
+        return new NewsItemsLoader(this, buildRequestQueries(paging), orderBy, paging,
+                getFreshnessMillis());
+    }
+
+    // This helper method retrieves the freshness window after which a result is reloaded
+    private long getFreshnessMillis() {
+        int freshnessMinutes = parseInt(PreferenceManager.getDefaultSharedPreferences(this).getString(
+                getString(R.string.settings_freshness_key),
+                getString(R.string.settings_freshness_default)), 0);
+        return TimeUnit.MINUTES.toMillis(freshnessMinutes);
+    }
+
+    // This helper method retrieves the paging preference. In paging mode short pages are
+    // requested one after the other instead of one page of numArticles.
+    private boolean isPagingEnabled() {
+        return PreferenceManager.getDefaultSharedPreferences(this).getBoolean(
+                getString(R.string.settings_paging_key),
+                getResources().getBoolean(R.bool.settings_paging_default));
+    }
+
+    // This helper method retrieves the progressive loading preference. When it is on, the rows
+    // of the network response are shown while it is still downloading, if nothing is shown yet.
+    private boolean isProgressiveEnabled() {
+        return PreferenceManager.getDefaultSharedPreferences(this).getBoolean(
+                getString(R.string.settings_progressive_key),
+                getResources().getBoolean(R.bool.settings_progressive_default));
+    }
+
+    // This helper method builds the requests from the preferences, sized for the network by the
+    // FetchPolicy: one search for each of the followed topics
+    private List<GuardianQuery> buildRequestQueries(boolean paging) {
+        return buildRequestQueries(paging, QueryUtils.getFetchPolicy());
+    }
+
+    // This helper method builds the requests from the preferences, sized by the given policy (the
+    // page size in paging mode, and the fields), or as in the preferences if it is null
+    private List<GuardianQuery> buildRequestQueries(boolean paging, FetchPolicy policy) {
         // Get the default SharedPreference
         SharedPreferences sharedPrefs =
                 PreferenceManager.getDefaultSharedPreferences(this);
@@ -102,58 +371,295 @@ public class MainActivity extends AppCompatActivity implements LoaderManager.Loa
                 getString(R.string.settings_order_by_key),
                 getString(R.string.settings_order_by_default));
 
-        // Break apart the REQUEST_URL to its parameter
-        Uri baseUri = Uri.parse(REQUEST_URL);
+        if (paging) {
+            numArticles = String.valueOf(policy != null ? policy.getPageSize(PAGE_SIZE) : PAGE_SIZE);
+        }
 
-        // Prepare the parsed baseUri so we can add query parameters to it
-        Uri.Builder uriBuilder = baseUri.buildUpon();
+        List<GuardianQuery> requestQueries = buildRequestQueries(this, orderBy, numArticles);
+        if (policy != null) {
+            String showFields = policy.getShowFields();
+            for (int i = 0; i < requestQueries.size(); i++) {
+                requestQueries.set(i, requestQueries.get(i).with("show-fields", showFields));
+            }
+        }
+        return requestQueries;
+    }
+
+    // This helper method builds one search request for each of the followed topics, with the
+    // given order and page size. It is also used by the NewsSyncJobService.
+    static List<GuardianQuery> buildRequestQueries(Context context, String orderBy, String pageSize) {
+        // Retrieve the set of followed topics
+        SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(context);
+        Set<String> topics = sharedPrefs.getStringSet(
+                context.getString(R.string.settings_topics_key),
+                new HashSet<>(Arrays.asList(
+                        context.getResources().getStringArray(R.array.settings_topics_default))));
+        if (topics.isEmpty()) {
+            topics = Collections.singleton(context.getString(R.string.settings_topics_lgbt_value));
+        }
+        // Sort them so the same topics always make the same requests
+        List<String> sortedTopics = new ArrayList<>(topics);
+        Collections.sort(sortedTopics);
+
+        String requestUrl = getRequestUrl(context);
+        List<GuardianQuery> requestQueries = new ArrayList<>(sortedTopics.size());
+        for (String topic : sortedTopics) {
 //            "https://content.guardianapis.com/search?q=LGBT&show-fields=byline&api-key=test";
 
-        // Append query parameter and its value.
-        uriBuilder.appendQueryParameter("q", "LGBT");
-        uriBuilder.appendQueryParameter("show-fields", "byline");
-        uriBuilder.appendQueryParameter("order-by", orderBy);
-        uriBuilder.appendQueryParameter("page-size", numArticles);
-        uriBuilder.appendQueryParameter("api-key", "test");
+            // Append query parameter and its value.
+            requestQueries.add(new GuardianQuery(requestUrl)
+                    .with("q", topic)
+                    .with("show-fields", FetchPolicy.FIELDS_FULL)
+                    .with("order-by", orderBy)
+                    .with("page-size", pageSize)
+                    .with("api-key", "test"));
+        }
+
+        // Return the completed requests
+        return requestQueries;
+    }
 
-        // Return the completed uri
-        return new NewsItemsLoader(this, uriBuilder.toString());
+    // This helper method returns the search url: the one of the build, unless a debug build was
+    // pointed at another server in the settings
+    static String getRequestUrl(Context context) {
+        if (BuildConfig.DEBUG) {
+            SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(context);
+            String baseUrl = sharedPrefs.getString(
+                    context.getString(R.string.settings_base_url_key), "").trim();
+            if (!baseUrl.isEmpty()) {
+                return baseUrl;
+            }
+        }
+        return BuildConfig.GUARDIAN_BASE_URL;
+    }
+
+    // This helper method returns the file the last loaded list is saved to
+    private File getSnapshotFile() {
+        return new File(getCacheDir(), SNAPSHOT_FILE_NAME);
+    }
+
+    // This helper method returns the tag of the snapshot of the current requests, so a list
+    // saved for other preferences isn't shown. It doesn't depend on the network, so a list
+    // saved on Wi-Fi is also shown on a mobile network.
+    private String getSnapshotTag() {
+        List<String> urls = new ArrayList<>();
+        for (GuardianQuery query : buildRequestQueries(isPagingEnabled(), null)) {
+            urls.add(query.toUrl());
+        }
+        return TextUtils.join("\n", urls);
+    }
+
+    // This helper method saves the given list as the snapshot shown on the next start
+    private void saveSnapshot(final List<NewsItem> data) {
+        final File file = getSnapshotFile();
+        final String tag = getSnapshotTag();
+        sSnapshotExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    NewsItemSnapshot.write(file, tag, data);
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Problem saving the snapshot.", e);
+                }
+            }
+        });
+    }
+
+    // This helper method parses a number preference, falling back to the default value if the
+    // stored value isn't a valid number
+    private static int parseInt(String value, int defaultValue) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
     }
 
     // This method handles the LoaderCallback called when the NewsItemsLoader finished loading the
     // NewsItems data by updating the UI. If the there are no NewsItems found, it would hide the
     // list and show a textView notifying the user of that.
+    // While searching, the list shows the results of the ArticleSearchLoader instead.
     @Override
     public void onLoadFinished(Loader<List<NewsItem>> loader, List<NewsItem> data) {
+        if (loader.getId() == SEARCH_LOADER_ID) {
+            if (mSearchQuery != null) {
+                showNewsItems(data, R.string.no_search_results, null);
+            }
+            return;
+        }
+        if (loader.getId() == LOCAL_LOADER_ID) {
+            // Only show the saved list until the network result, or its first rows, arrive
+            if (mLoadedNewsItems == null && mSearchQuery == null && !mShowingProgressive
+                    && data != null && !data.isEmpty()) {
+                mProgressBar.setVisibility(View.GONE);
+                showNewsItems(data, R.string.empty_list, FetchMetrics.STAGE_FIRST_CONTENT_CACHED);
+            }
+            return;
+        }
+
         // Hide the progress bar indicator
         mProgressBar.setVisibility(View.GONE);
+        // The complete list replaces the rows shown while it was downloading
+        mShowingProgressive = false;
 
-        // Clear the adapter of previous earthquake data
-        mAdapter.clear();
-
-        // If there is a valid list of Earthquakes, then add them to the adapter's
-        // data set. This will trigger the ListView to update.
+        // Keep the list for when the search is closed, and for the next start
+        mLoadedNewsItems = data;
         if (data != null && !data.isEmpty()) {
-            mAdapter.addAll(data);
+            saveSnapshot(data);
+            // Save the text of the top articles for offline reading, once on Wi-Fi
+            ArticlePrefetchJobService.schedule(this, data);
+        }
+        if (mSearchQuery == null) {
+            showNewsItems(data, R.string.empty_list, FetchMetrics.STAGE_FIRST_CONTENT_NETWORK);
         }
+    }
+
+    // This helper method shows the given list, or the given empty text if it is empty. If it is
+    // the first content shown since the activity was created, the time it took is recorded as
+    // the given stage (if not null).
+    private void showNewsItems(List<NewsItem> data, int emptyTextId, final String firstContentStage) {
+        // Hand the new list to the adapter, which only updates the rows that changed. Once it
+        // is displayed, show the mEmptyView instead of the list if it is empty.
+        final long displayStart = System.nanoTime();
+        mAdapter.submitList(data, new Runnable() {
+            @Override
+            public void run() {
+                FetchMetrics.recordSince(FetchMetrics.STAGE_DISPLAY, displayStart);
+                mFrameMonitor.recordNextDraw(FetchMetrics.STAGE_LOAD_TO_DRAW, displayStart);
+                updateEmptyView();
+                if (firstContentStage != null) {
+                    recordFirstContent(firstContentStage);
+                }
+            }
+        });
 
         // Change the text of the mEmptyView to notify the user that there were no earthquakes found.
-        mEmptyView.setText(R.string.empty_list);
+        mEmptyView.setText(emptyTextId);
+    }
+
+    // This helper method adds rows of the network response that is still downloading at the end
+    // of the list. They are only shown on an empty list: a list that is already shown (e.g. the
+    // saved one) is only replaced by the complete result, through a diff.
+    private void showProgressiveBatch(List<NewsItem> batch) {
+        if (mSearchQuery != null || (!mShowingProgressive && mAdapter.getItemCount() > 0)) {
+            return;
+        }
+        mShowingProgressive = true;
+        mProgressBar.setVisibility(View.GONE);
+        mAdapter.appendItems(batch);
+        updateEmptyView();
+        recordFirstContent(FetchMetrics.STAGE_FIRST_CONTENT_PROGRESSIVE);
+    }
+
+    // This helper method records the time from the activity's creation to the first content
+    // shown, as the given stage, unless content was already shown or the list is empty
+    private void recordFirstContent(String stage) {
+        if (!mFirstContentShown && mAdapter.getItemCount() > 0) {
+            mFirstContentShown = true;
+            FetchMetrics.recordSince(stage, mCreatedAtNanos);
+            Log.i(LOG_TAG, "First content (" + stage + ") shown after "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - mCreatedAtNanos) + "ms");
+        }
     }
 
     // This method handles the LoaderCallback of Loader resetting by clearing the mAdapter
     @Override
     public void onLoaderReset(Loader<List<NewsItem>> loader) {
-        mAdapter.clear();
+        if (loader.getId() == LOCAL_LOADER_ID) {
+            return;
+        }
+        if (loader.getId() == NEWSITEMS_LOADER_ID) {
+            mLoadedNewsItems = null;
+            mShowingProgressive = false;
+        }
+        // Only clear the list if it shows this loader's data
+        boolean searching = mSearchQuery != null;
+        boolean shown = loader.getId() == SEARCH_LOADER_ID ? searching : !searching;
+        if (shown) {
+            mAdapter.submitList(null, null);
+        }
+    }
+
+    // This helper method shows the frame timing of the list on the mFrameOverlay, if enabled.
+    // It is only updated between scrolls, so it doesn't add work to the frames it times.
+    private void updateFrameOverlay() {
+        boolean enabled = BuildConfig.DEBUG && PreferenceManager.getDefaultSharedPreferences(this)
+                .getBoolean(getString(R.string.settings_frame_overlay_key),
+                        getResources().getBoolean(R.bool.settings_frame_overlay_default));
+        mFrameOverlay.setVisibility(enabled ? View.VISIBLE : View.GONE);
+        if (!enabled) {
+            return;
+        }
+        JankTracker tracker = mFrameMonitor.getTracker();
+        LatencyHistogram.Snapshot frames = tracker.getFrames();
+        mFrameOverlay.setText(getString(R.string.frame_overlay,
+                tracker.getFrameCount(), tracker.getJankyFrames(), tracker.getDroppedFrames(),
+                frames.getPercentile(50) / 1e6, frames.getPercentile(95) / 1e6,
+                frames.getPercentile(99) / 1e6,
+                FetchMetrics.getHistogram(FetchMetrics.STAGE_BIND).snapshot().getPercentile(95) / 1e6,
+                FetchMetrics.getHistogram(FetchMetrics.STAGE_LOAD_TO_DRAW).snapshot()
+                        .getPercentile(50) / 1e6));
+    }
+
+    // This helper method shows the mEmptyView only while there are no items in the list
+    private void updateEmptyView() {
+        mEmptyView.setVisibility(mAdapter.getItemCount() == 0 ? View.VISIBLE : View.GONE);
     }
 
     // This method inflates the options menu when the activity is launched
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         getMenuInflater().inflate(R.menu.main, menu);
+        // The metrics screen is only for debug builds
+        menu.findItem(R.id.action_metrics).setVisible(BuildConfig.DEBUG);
+
+        // Search the saved articles as the query is typed
+        MenuItem searchItem = menu.findItem(R.id.action_search);
+        SearchView searchView = (SearchView) searchItem.getActionView();
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                return onQueryTextChange(query);
+            }
+
+            @Override
+            public boolean onQueryTextChange(String query) {
+                if (query.trim().isEmpty()) {
+                    closeSearch();
+                } else {
+                    mSearchQuery = query;
+                    Bundle args = new Bundle();
+                    args.putString(SEARCH_QUERY_KEY, query);
+                    getSupportLoaderManager().restartLoader(SEARCH_LOADER_ID, args, MainActivity.this);
+                }
+                return true;
+            }
+        });
+        searchItem.setOnActionExpandListener(new MenuItem.OnActionExpandListener() {
+            @Override
+            public boolean onMenuItemActionExpand(MenuItem item) {
+                return true;
+            }
+
+            @Override
+            public boolean onMenuItemActionCollapse(MenuItem item) {
+                closeSearch();
+                return true;
+            }
+        });
         return true;
     }
 
+    // This helper method stops searching and shows the loaded NewsItems again
+    private void closeSearch() {
+        if (mSearchQuery == null) {
+            return;
+        }
+        mSearchQuery = null;
+        getSupportLoaderManager().destroyLoader(SEARCH_LOADER_ID);
+        showNewsItems(mLoadedNewsItems, R.string.empty_list, null);
+    }
+
     // This method opens the SettingsActivity when the Settings item is selected in the m=options menu
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
@@ -163,41 +669,424 @@ public class MainActivity extends AppCompatActivity implements LoaderManager.Loa
             startActivity(settingsIntent);
             return true;
         }
+        if (id == R.id.action_metrics) {
+            startActivity(new Intent(this, MetricsActivity.class));
+            return true;
+        }
         return super.onOptionsItemSelected(item);
     }
 
+    /**
+     * Objects of this inner class are Loaders that read, in a background thread, the snapshot
+     * of the last list loaded for the same requests or, if there is none, the newest saved
+     * articles of the {@link ArticleStore}.
+     */
+    private static class LocalArticlesLoader extends AsyncTaskLoader<List<NewsItem>> {
+        // States
+        private final int mLimit;
+        private final File mSnapshotFile;
+        private final String mSnapshotTag;
+        private List<NewsItem> mData;
+
+        public LocalArticlesLoader(Context context, int limit, File snapshotFile, String snapshotTag) {
+            super(context);
+            mLimit = limit;
+            mSnapshotFile = snapshotFile;
+            mSnapshotTag = snapshotTag;
+        }
+
+        @Override
+        protected void onStartLoading() {
+            if (mData != null) {
+                deliverResult(mData);
+            } else {
+                forceLoad();
+            }
+        }
+
+        @Override
+        public void deliverResult(List<NewsItem> data) {
+            mData = data;
+            super.deliverResult(data);
+        }
+
+        @Override
+        public List<NewsItem> loadInBackground() {
+            long readStart = System.nanoTime();
+            try {
+                NewsItemSnapshot snapshot = NewsItemSnapshot.read(mSnapshotFile, mSnapshotTag);
+                if (snapshot != null && !snapshot.getNewsItems().isEmpty()) {
+                    FetchMetrics.recordSince(FetchMetrics.STAGE_SNAPSHOT_READ, readStart);
+                    return snapshot.getNewsItems();
+                }
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Problem reading the snapshot.", e);
+            }
+            return ArticleStore.install(getContext()).getLatest(mLimit);
+        }
+    }
+
+    /**
+     * Objects of this inner class are Loaders that search the saved articles of the
+     * {@link ArticleStore} in a background thread.
+     */
+    private static class ArticleSearchLoader extends AsyncTaskLoader<List<NewsItem>> {
+        // States
+        private final String mQuery;
+        private List<NewsItem> mData;
+
+        public ArticleSearchLoader(Context context, String query) {
+            super(context);
+            mQuery = query;
+        }
+
+        @Override
+        protected void onStartLoading() {
+            if (mData != null) {
+                deliverResult(mData);
+            } else {
+                forceLoad();
+            }
+        }
+
+        @Override
+        public void deliverResult(List<NewsItem> data) {
+            mData = data;
+            super.deliverResult(data);
+        }
+
+        @Override
+        public List<NewsItem> loadInBackground() {
+            return ArticleStore.install(getContext()).search(mQuery);
+        }
+    }
+
     /**
      * Objects of this inner class are Loaders, managed by the LoaderManager, that are able to
      * perform http requests in a background thread, and return a list of NewsItems from the
-     * REQUEST_URL.
+     * search url. When several topics are followed their searches run in parallel, and the
+     * results are merged into one list. Near-duplicate stories (see {@link StoryClusterer}) are
+     * only listed once, as their first item.
+     * In paging mode the loader fetches one page at a time, and every load returns all the
+     * pages fetched so far, without duplicates and capped at MAX_PAGED_ITEMS.
+     * The last result is kept and delivered again when the loader is restarted; it is only
+     * reloaded once it is older than the freshness window. When the requests change only by
+     * their order or page size, the new result may be derived from the last one instead.
+     * While a list (or the first page) is downloading, the NewsItems parsed so far can be handed
+     * to an {@link ProgressiveDelivery.OnBatchListener}, once per frame, before the complete
+     * result is delivered.
+     * It is package-private so the load harness of the instrumentation tests can run it.
      */
-    private static class NewsItemsLoader extends AsyncTaskLoader<List<NewsItem>> {
+    static class NewsItemsLoader extends AsyncTaskLoader<List<NewsItem>> {
         // States
-        private String mUrl;
+        // Changed on the UI thread by reuseResultFor, while no load is running
+        private volatile List<GuardianQuery> mQueries;
+        private volatile String mOrderBy;
+        private final boolean mPaging;
+        // The paged NewsItems by their url, in the order they were received
+        private final LinkedHashMap<String, NewsItem> mPagedItems = new LinkedHashMap<>();
+        // The stories of the paged NewsItems, grown with every page (guarded by mPagedItems)
+        private final StoryClusterer mClusterer = new StoryClusterer();
+        private int mLoadedPages;
+        private volatile boolean mHasMorePages = true;
+        private volatile boolean mRestartPaging;
+        private long mFreshnessMillis;
+        // The generation of the latest load, bumped by every forceLoad (on the UI thread), and the
+        // one whose result was delivered or which was cancelled. A load is running while they
+        // differ. A callback of an older load can't change the state of a newer one.
+        private volatile int mLoadGeneration;
+        private int mSettledGeneration;
+        // Only used on the UI thread
+        private List<NewsItem> mData;
+        private long mLoadedAt;
+        // The result of each request that mData was merged from (null in paging mode), and the
+        // ones of the load running in the background, with its generation, until they are
+        // delivered
+        private List<List<NewsItem>> mResultLists;
+        private volatile List<List<NewsItem>> mLoadingResultLists;
+        private volatile int mLoadingResultGeneration;
+        // Set on the UI thread, read by the loading thread
+        private volatile ProgressiveDelivery.OnBatchListener mBatchListener;
 
-        // A constructor setting the URL to be worked on as a state variable
-        public NewsItemsLoader(Context context, String url) {
+        // A constructor setting the URLs to be worked on, their order, the paging mode and the
+        // freshness window as state variables
+        public NewsItemsLoader(Context context, List<GuardianQuery> queries, String orderBy, boolean paging,
+                               long freshnessMillis) {
             super(context);
-            // Set mUrl to be the URL
-            mUrl = url;
+            // Set mQueries to be the requests
+            mQueries = queries;
+            mOrderBy = orderBy;
+            mPaging = paging;
+            mFreshnessMillis = freshnessMillis;
+        }
+
+        // Sets the listener the NewsItems are handed to while they are downloading, or null to
+        // only deliver the complete result. It is only called while the loader is started.
+        public void setOnBatchListener(ProgressiveDelivery.OnBatchListener listener) {
+            mBatchListener = listener;
+        }
+
+        // Sets the freshness window, which applies from the next time the loader is started
+        public void setFreshnessMillis(long freshnessMillis) {
+            mFreshnessMillis = freshnessMillis;
         }
 
-        // This method is called by the initLoader, and triggers the newly created Loader to start
-        // running the loadInBackground code.
+        // Switches this loader to the given requests if their result can be derived from the
+        // last one in memory (see ResultDerivation), and delivers it. Returns whether it did; if
+        // not, the loader must be restarted to load them. Only called from the UI thread.
+        public boolean reuseResultFor(List<GuardianQuery> queries, String orderBy, boolean paging) {
+            if (paging || mPaging || isLoading() || mData == null || mResultLists == null) {
+                return false;
+            }
+            List<List<NewsItem>> resultLists = ResultDerivation.derive(mQueries, mResultLists, queries);
+            if (resultLists == null) {
+                return false;
+            }
+            mQueries = queries;
+            mOrderBy = orderBy;
+            mResultLists = resultLists;
+            // The result is as fresh as the one it was derived from, so mLoadedAt is kept
+            mData = StoryClusterer.collapse(QueryUtils.mergeNewsItems(resultLists, orderBy));
+            redeliverResult();
+            return true;
+        }
+
+        // Returns the given requests with the page size (in paging mode) and the fields of this
+        // loader's requests, which the FetchPolicy chose for the network when it was created
+        public List<GuardianQuery> keepFetchParameters(List<GuardianQuery> queries, boolean paging) {
+            List<GuardianQuery> loaderQueries = mQueries;
+            if (queries.size() != loaderQueries.size()) {
+                return queries;
+            }
+            List<GuardianQuery> kept = new ArrayList<>(queries.size());
+            for (int i = 0; i < queries.size(); i++) {
+                GuardianQuery loaderQuery = loaderQueries.get(i);
+                GuardianQuery query = queries.get(i)
+                        .with("show-fields", loaderQuery.getParameter("show-fields"));
+                if (paging && mPaging) {
+                    query = query.with("page-size", loaderQuery.getParameter("page-size"));
+                }
+                kept.add(query);
+            }
+            return kept;
+        }
+
+        // Returns whether this loader loads the given requests
+        public boolean isLoading(List<GuardianQuery> queries, boolean paging) {
+            return mQueries.equals(queries) && mPaging == paging;
+        }
+
+        // This method is called by the initLoader and whenever the activity is started again. It
+        // delivers the last result right away, and triggers the loader to start running the
+        // loadInBackground code only if there is no result yet or it is no longer fresh.
         @Override
         protected void onStartLoading() {
             super.onStartLoading();
+            if (mData != null) {
+                redeliverResult();
+            }
+            boolean stale = SystemClock.elapsedRealtime() - mLoadedAt > mFreshnessMillis;
+            if (takeContentChanged() || mData == null || stale) {
+                // Start over from the first page
+                mRestartPaging = true;
+                forceLoad();
+            }
+        }
+
+        @Override
+        protected void onForceLoad() {
+            // A new load supersedes the running one, whose callbacks are then ignored
+            mLoadGeneration++;
+            super.onForceLoad();
+        }
+
+        @Override
+        protected void onStopLoading() {
+            cancelLoad();
+            // The running load won't be delivered; its onCanceled comes later, if at all
+            mSettledGeneration = mLoadGeneration;
+        }
+
+        // Returns whether a load was forced and has neither been delivered nor cancelled
+        private boolean isLoading() {
+            return mSettledGeneration != mLoadGeneration;
+        }
+
+        // Hands the last result to the listener again, e.g. when the activity is started again,
+        // without counting it as the result of a load
+        private void redeliverResult() {
+            if (isStarted() && !isReset()) {
+                super.deliverResult(mData);
+            }
+        }
+
+        @Override
+        protected void onReset() {
+            super.onReset();
+            onStopLoading();
+            mData = null;
+        }
+
+        // This method is called from the UI thread when the list is scrolled near its end. It
+        // starts loading the next page unless a load is already running or there are no more
+        // pages. Returns whether a load was started.
+        public boolean loadNextPage() {
+            if (!mPaging || isLoading() || !mHasMorePages || !isStarted()) {
+                return false;
+            }
             forceLoad();
+            return true;
         }
 
-        // In the background thread, if the REQUEST_URL isn't null, make an http request, parse the
+        @Override
+        public void deliverResult(List<NewsItem> data) {
+            if (isReset()) {
+                return;
+            }
+            // Only the result of the latest load gets here: the AsyncTaskLoader hands the ones
+            // of superseded loads to onCanceled, and the last result is redelivered directly
+            if (isLoading()) {
+                mSettledGeneration = mLoadGeneration;
+                mData = data;
+                mResultLists = mLoadingResultGeneration == mLoadGeneration ? mLoadingResultLists : null;
+                mLoadedAt = SystemClock.elapsedRealtime();
+            }
+            if (isStarted()) {
+                super.deliverResult(data);
+            }
+        }
+
+        @Override
+        public void onCanceled(List<NewsItem> data) {
+            // A load superseded by forceLoad, or one already settled by onStopLoading: the state
+            // belongs to the newer load, if any
+            super.onCanceled(data);
+        }
+
+        // In the background thread, fetch the next page and add its new items to the ones
+        // fetched so far. The items of the first page are handed to the given delivery (if not
+        // null) as they arrive.
+        private List<NewsItem> loadNextPageInBackground(ProgressiveDelivery delivery) {
+            synchronized (mPagedItems) {
+                if (mRestartPaging) {
+                    mPagedItems.clear();
+                    mClusterer.clear();
+                    mLoadedPages = 0;
+                    mHasMorePages = true;
+                    mRestartPaging = false;
+                }
+                if (!mHasMorePages) {
+                    return mClusterer.getRepresentatives();
+                }
+
+                int page = mLoadedPages + 1;
+                List<String> pageUrls = new ArrayList<>(mQueries.size());
+                for (GuardianQuery query : mQueries) {
+                    pageUrls.add(query.with("page", page).toUrl());
+                }
+                List<List<NewsItem>> pageLists = QueryUtils.fetchNewsItemsInParallel(pageUrls,
+                        page == 1 ? delivery : null);
+                // There are more pages as long as one of the topics returned a full page. A short
+                // page is its topic's last one, and so is a page the API rejects. Any other
+                // failure (a timeout, a server error) may pass, so the page is asked for again
+                // on the next scroll.
+                boolean fullPage = false;
+                boolean transientFailure = false;
+                for (int i = 0; i < pageLists.size(); i++) {
+                    List<NewsItem> pageList = pageLists.get(i);
+                    int pageSize = parseInt(mQueries.get(i).getParameter("page-size"), PAGE_SIZE);
+                    if (pageList == null) {
+                        if (!QueryUtils.takeRejected(pageUrls.get(i))) {
+                            transientFailure = true;
+                        }
+                    } else if (pageList.size() >= pageSize) {
+                        fullPage = true;
+                    }
+                }
+                mHasMorePages = fullPage || transientFailure;
+                List<NewsItem> pageItems = QueryUtils.mergeNewsItems(pageLists, mOrderBy);
+                if (page == 1 && !pageLists.isEmpty() && pageItems.isEmpty()
+                        && pageLists.contains(null)) {
+                    // The first page failed
+                    return null;
+                }
+                if (!transientFailure) {
+                    mLoadedPages = page;
+                }
+                // Drop the items that were already received in an earlier page
+                for (NewsItem item : pageItems) {
+                    if (mPagedItems.size() >= MAX_PAGED_ITEMS) {
+                        mHasMorePages = false;
+                        break;
+                    }
+                    if (!mPagedItems.containsKey(item.getUrl())) {
+                        mPagedItems.put(item.getUrl(), item);
+                        mClusterer.add(item);
+                    }
+                }
+                // Only the first item of every story is shown, whichever page the others came in
+                return mClusterer.getRepresentatives();
+            }
+        }
+
+        // Returns a delivery handing the NewsItems of this load to the current listener, or null
+        // if there is none. A batch is dropped if the loader was stopped meanwhile.
+        private ProgressiveDelivery createDelivery() {
+            if (mBatchListener == null) {
+                return null;
+            }
+            return new ProgressiveDelivery(new ProgressiveDelivery.OnBatchListener() {
+                @Override
+                public void onBatch(List<NewsItem> batch) {
+                    ProgressiveDelivery.OnBatchListener listener = mBatchListener;
+                    if (listener != null && isStarted()) {
+                        listener.onBatch(batch);
+                    }
+                }
+            });
+        }
+
+        // In the background thread, if there are requests, make an http request, parse the
         // JSON response, extract the Earthquakes data and return it in a list of earthquakes.
         @Override
         public List<NewsItem> loadInBackground() {
-            if (mUrl == null) {
+            // A load only starts once the one before it ended, so this is its generation (or the
+            // one of a newer load, which then writes its own result lists before it's delivered)
+            int generation = mLoadGeneration;
+            if (mQueries == null || mQueries.isEmpty()) {
                 return null;
             } else {
-                return QueryUtils.fetchNewsItems(mUrl);
+                // Make sure the response cache is installed before making the request
+                NewsResponseCache.install(
+                        new File(getContext().getCacheDir(), "responses"), RESPONSE_CACHE_SIZE);
+                long loadStart = System.nanoTime();
+                ProgressiveDelivery delivery = createDelivery();
+                try {
+                    if (mPaging) {
+                        return loadNextPageInBackground(delivery);
+                    }
+                    List<String> urls = new ArrayList<>(mQueries.size());
+                    for (GuardianQuery query : mQueries) {
+                        urls.add(query.toUrl());
+                    }
+                    // Keep the result of each request, so a change of order or page size can
+                    // be applied to them without loading again
+                    List<List<NewsItem>> resultLists = QueryUtils.fetchNewsItemsInParallel(urls, delivery);
+                    mLoadingResultLists = resultLists;
+                    mLoadingResultGeneration = generation;
+                    if (Collections.frequency(resultLists, null) == resultLists.size()) {
+                        // Every request failed
+                        return null;
+                    }
+                    // Only the first item of every story is shown
+                    return StoryClusterer.collapse(QueryUtils.mergeNewsItems(resultLists, mOrderBy));
+                } finally {
+                    // The complete result is about to be delivered
+                    if (delivery != null) {
+                        delivery.close();
+                    }
+                    FetchMetrics.recordSince(FetchMetrics.STAGE_LOAD, loadStart);
+                }
             }
         }
     }
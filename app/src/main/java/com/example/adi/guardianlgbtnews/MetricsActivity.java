@@ -0,0 +1,189 @@
+package com.example.adi.guardianlgbtnews;
+
+import android.content.Intent;
+import android.os.Build;
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.util.Log;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A debug screen showing the percentiles of every stage recorded in {@link FetchMetrics} and
+ * its counters. The JSON snapshot can be shared, and is saved to the app's external files
+ * directory so it can also be pulled with adb.
+ */
+public class MetricsActivity extends AppCompatActivity {
+
+    private static final String LOG_TAG = MetricsActivity.class.getSimpleName();
+
+    // Name of the saved snapshot, in getExternalFilesDir(null)
+    private static final String SNAPSHOT_FILE_NAME = "metrics.json";
+
+    // The stages in the order they happen, for the table
+    private static final String[] STAGES = {FetchMetrics.STAGE_CONNECT, FetchMetrics.STAGE_FIRST_BYTE,
+            FetchMetrics.STAGE_DOWNLOAD, FetchMetrics.STAGE_PARSE, FetchMetrics.STAGE_FETCH,
+            FetchMetrics.STAGE_LOAD, FetchMetrics.STAGE_DISPLAY, FetchMetrics.STAGE_BIND,
+            FetchMetrics.STAGE_SNAPSHOT_READ, FetchMetrics.STAGE_FIRST_CONTENT_CACHED,
+            FetchMetrics.STAGE_FIRST_CONTENT_NETWORK, FetchMetrics.STAGE_FIRST_CONTENT_PROGRESSIVE,
+            FetchMetrics.STAGE_LOAD_TO_DRAW, FetchMetrics.STAGE_FRAME,
+            FetchMetrics.STAGE_IMAGE_LOAD, FetchMetrics.STAGE_READER_OPEN,
+            FetchMetrics.STAGE_QUEUE_WAIT_FOREGROUND, FetchMetrics.STAGE_QUEUE_WAIT_BACKGROUND};
+
+    private static final String[] COUNTERS = {FetchMetrics.COUNT_REQUESTS,
+            FetchMetrics.COUNT_NOT_MODIFIED, FetchMetrics.COUNT_ERRORS,
+            FetchMetrics.COUNT_BYTES_RECEIVED, FetchMetrics.COUNT_BYTES_DECODED,
+            FetchMetrics.COUNT_CACHE_REVALIDATIONS, FetchMetrics.COUNT_CACHE_MISSES,
+            FetchMetrics.COUNT_CACHE_BYTES_SAVED,
+            FetchMetrics.COUNT_RETRIES, FetchMetrics.COUNT_HEDGES, FetchMetrics.COUNT_HEDGE_WINS,
+            FetchMetrics.COUNT_SHORT_CIRCUITED, FetchMetrics.COUNT_STALE_SERVED,
+            FetchMetrics.COUNT_QUEUED, FetchMetrics.COUNT_RATE_LIMITED,
+            FetchMetrics.COUNT_SCROLLS, FetchMetrics.COUNT_FRAMES,
+            FetchMetrics.COUNT_JANKY_FRAMES, FetchMetrics.COUNT_DROPPED_FRAMES,
+            FetchMetrics.COUNT_IMAGE_MEMORY_HITS, FetchMetrics.COUNT_IMAGE_DISK_HITS,
+            FetchMetrics.COUNT_IMAGE_DOWNLOADS, FetchMetrics.COUNT_IMAGE_CANCELLED,
+            FetchMetrics.COUNT_LAYOUT_HITS, FetchMetrics.COUNT_LAYOUT_MISSES,
+            FetchMetrics.COUNT_PREFETCHED_ARTICLES, FetchMetrics.COUNT_PREFETCHED_BYTES};
+
+    // States
+    private TextView mMetricsText;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_metrics);
+        mMetricsText = (TextView) findViewById(R.id.metrics_text);
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        showMetrics();
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.metrics, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        int id = item.getItemId();
+        if (id == R.id.action_refresh_metrics) {
+            showMetrics();
+            return true;
+        }
+        if (id == R.id.action_share_metrics) {
+            shareSnapshot();
+            return true;
+        }
+        if (id == R.id.action_reset_metrics) {
+            FetchMetrics.reset();
+            showMetrics();
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+    // This helper method shows the metrics as a table, one stage per row
+    private void showMetrics() {
+        StringBuilder text = new StringBuilder();
+        text.append(String.format(Locale.US, "%-21s %6s %8s %8s %8s %8s%n",
+                "stage (ms)", "n", "p50", "p95", "p99", "max"));
+        for (String stage : STAGES) {
+            LatencyHistogram.Snapshot snapshot = FetchMetrics.getHistogram(stage).snapshot();
+            text.append(String.format(Locale.US, "%-21s %6d %8.1f %8.1f %8.1f %8.1f%n",
+                    stage, snapshot.getCount(),
+                    snapshot.getPercentile(50) / 1e6, snapshot.getPercentile(95) / 1e6,
+                    snapshot.getPercentile(99) / 1e6, snapshot.getMaxNanos() / 1e6));
+        }
+        text.append('\n');
+        for (String counter : COUNTERS) {
+            text.append(String.format(Locale.US, "%-21s %12d%n",
+                    counter, FetchMetrics.getCount(counter)));
+        }
+        // The requests waiting for a permit right now
+        RequestScheduler scheduler = QueryUtils.getRequestScheduler();
+        text.append(String.format(Locale.US, "%-21s %12d%n", "queue_foreground",
+                scheduler.getQueueDepth(RequestScheduler.PRIORITY_FOREGROUND)));
+        text.append(String.format(Locale.US, "%-21s %12d%n", "queue_background",
+                scheduler.getQueueDepth(RequestScheduler.PRIORITY_BACKGROUND)));
+        // What the FetchPolicy makes of the network
+        FetchPolicy policy = QueryUtils.getFetchPolicy();
+        text.append(String.format(Locale.US, "%-21s %12d%n", "network_tier", policy.getTier()));
+        text.append(String.format(Locale.US, "%-21s %12.1f%n", "throughput_kb_per_s",
+                policy.getBytesPerSecond() / 1024));
+        text.append(String.format(Locale.US, "%-21s %12.1f%n", "latency_ms", policy.getLatencyMillis()));
+        mMetricsText.setText(text);
+    }
+
+    // This helper method saves the JSON snapshot to a file and sends it to another app
+    private void shareSnapshot() {
+        String json = FetchMetrics.toJson(getRunInfo());
+
+        File directory = getExternalFilesDir(null);
+        if (directory != null) {
+            File file = new File(directory, SNAPSHOT_FILE_NAME);
+            try {
+                OutputStream output = new FileOutputStream(file);
+                try {
+                    output.write(json.getBytes(Charset.forName("UTF-8")));
+                } finally {
+                    output.close();
+                }
+                Toast.makeText(this, getString(R.string.metrics_saved, file.getAbsolutePath()),
+                        Toast.LENGTH_SHORT).show();
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Problem saving the metrics snapshot.", e);
+            }
+        }
+
+        Intent shareIntent = new Intent(Intent.ACTION_SEND);
+        shareIntent.setType("application/json");
+        shareIntent.putExtra(Intent.EXTRA_SUBJECT, SNAPSHOT_FILE_NAME);
+        shareIntent.putExtra(Intent.EXTRA_TEXT, json);
+        startActivity(Intent.createChooser(shareIntent, getString(R.string.share_metrics_menu_item)));
+    }
+
+    // The values identifying this run, so snapshots of different releases and devices can be told apart
+    private Map<String, String> getRunInfo() {
+        Map<String, String> info = new HashMap<>();
+        info.put("version_name", BuildConfig.VERSION_NAME);
+        info.put("version_code", String.valueOf(BuildConfig.VERSION_CODE));
+        info.put("build_type", BuildConfig.BUILD_TYPE);
+        info.put("device", Build.MANUFACTURER + " " + Build.MODEL);
+        info.put("sdk", String.valueOf(Build.VERSION.SDK_INT));
+        // The frame deadline of the jank counters
+        info.put("refresh_rate", String.format(Locale.US, "%.1f",
+                getWindowManager().getDefaultDisplay().getRefreshRate()));
+        info.put("parser", QueryUtils.isUsingStreamingParser() ? "streaming" : "json_object");
+        NewsResponseCache cache = NewsResponseCache.getInstalled();
+        if (cache != null) {
+            info.put("response_cache_bytes", String.valueOf(cache.getSize()));
+        }
+        RequestScheduler scheduler = QueryUtils.getRequestScheduler();
+        info.put("queue_foreground", String.valueOf(
+                scheduler.getQueueDepth(RequestScheduler.PRIORITY_FOREGROUND)));
+        info.put("queue_background", String.valueOf(
+                scheduler.getQueueDepth(RequestScheduler.PRIORITY_BACKGROUND)));
+        FetchPolicy policy = QueryUtils.getFetchPolicy();
+        info.put("network_link", String.valueOf(policy.getLink()));
+        info.put("network_metered", String.valueOf(policy.isMetered()));
+        info.put("network_tier", String.valueOf(policy.getTier()));
+        info.put("throughput_bytes_per_s", String.format(Locale.US, "%.0f", policy.getBytesPerSecond()));
+        info.put("latency_ms", String.format(Locale.US, "%.1f", policy.getLatencyMillis()));
+        return info;
+    }
+}
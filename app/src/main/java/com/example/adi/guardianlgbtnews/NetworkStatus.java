@@ -0,0 +1,106 @@
+package com.example.adi.guardianlgbtnews;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkInfo;
+import android.net.NetworkRequest;
+import android.telephony.TelephonyManager;
+
+/**
+ * Helper methods telling the {@link FetchPolicy} of the {@link QueryUtils} which network the
+ * requests are made on: the kind of link and whether it is metered.
+ */
+public final class NetworkStatus {
+
+    /**
+     * Create a private constructor because no one should ever create a {@link NetworkStatus}
+     * object. This class is only meant to hold static methods.
+     */
+    private NetworkStatus() {
+    }
+
+    /**
+     * Tell the FetchPolicy about the active network, and apply its timeouts.
+     */
+    public static void update(Context context) {
+        ConnectivityManager cm =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (cm == null) {
+            return;
+        }
+        NetworkInfo activeNetwork = cm.getActiveNetworkInfo();
+        int link = activeNetwork != null && activeNetwork.isConnected()
+                ? linkOf(activeNetwork) : FetchPolicy.LINK_UNKNOWN;
+        QueryUtils.getFetchPolicy().setNetwork(link, cm.isActiveNetworkMetered());
+        QueryUtils.applyFetchPolicy();
+    }
+
+    /**
+     * Start following the changes of network, until {@link #unregister(Context,
+     * ConnectivityManager.NetworkCallback)} is called with the returned callback.
+     */
+    public static ConnectivityManager.NetworkCallback register(Context context) {
+        final Context appContext = context.getApplicationContext();
+        ConnectivityManager cm =
+                (ConnectivityManager) appContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+        // Called on a thread of the system, which the FetchPolicy is safe to be used from
+        ConnectivityManager.NetworkCallback callback = new ConnectivityManager.NetworkCallback() {
+            @Override
+            public void onAvailable(Network network) {
+                update(appContext);
+            }
+
+            @Override
+            public void onCapabilitiesChanged(Network network, NetworkCapabilities capabilities) {
+                update(appContext);
+            }
+
+            @Override
+            public void onLost(Network network) {
+                update(appContext);
+            }
+        };
+        if (cm != null) {
+            cm.registerNetworkCallback(new NetworkRequest.Builder()
+                    .addCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)
+                    .build(), callback);
+        }
+        update(appContext);
+        return callback;
+    }
+
+    /**
+     * Stop following the changes of network.
+     */
+    public static void unregister(Context context, ConnectivityManager.NetworkCallback callback) {
+        ConnectivityManager cm = (ConnectivityManager) context.getApplicationContext()
+                .getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (cm != null) {
+            cm.unregisterNetworkCallback(callback);
+        }
+    }
+
+    // The kind of link of the given network, from its type and, for a mobile one, its generation
+    private static int linkOf(NetworkInfo network) {
+        switch (network.getType()) {
+            case ConnectivityManager.TYPE_WIFI:
+            case ConnectivityManager.TYPE_ETHERNET:
+                return FetchPolicy.LINK_FAST;
+            case ConnectivityManager.TYPE_MOBILE:
+                switch (network.getSubtype()) {
+                    case TelephonyManager.NETWORK_TYPE_GPRS:
+                    case TelephonyManager.NETWORK_TYPE_EDGE:
+                    case TelephonyManager.NETWORK_TYPE_CDMA:
+                    case TelephonyManager.NETWORK_TYPE_1xRTT:
+                    case TelephonyManager.NETWORK_TYPE_IDEN:
+                        return FetchPolicy.LINK_SLOW;
+                    default:
+                        return FetchPolicy.LINK_MEDIUM;
+                }
+            default:
+                return FetchPolicy.LINK_UNKNOWN;
+        }
+    }
+}
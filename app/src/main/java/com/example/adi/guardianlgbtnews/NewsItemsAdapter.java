@@ -1,66 +1,385 @@
 package com.example.adi.guardianlgbtnews;
 
-import android.app.Activity;
-import android.support.annotation.NonNull;
-import android.support.annotation.Nullable;
+import android.content.Context;
+import android.content.res.Resources;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.widget.RecyclerView;
+import android.text.TextUtils;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.ArrayAdapter;
-import android.widget.TextView;
+import android.widget.ImageView;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
 /**
- * This is a custom adapter placing the title, section and date of publishing of each NewsItem
- * in the given array to the appropriate view in the list_item layout.
+ * This is a custom RecyclerView adapter placing the title, section and date of publishing of each
+ * NewsItem in the given list to the appropriate view in the list_item layout, and loading its
+ * thumbnail with the {@link ImageLoader}.
+ * Item IDs are derived from the webUrl, and a new list is compared to the displayed one in a
+ * background thread, so only the rows that changed are updated.
+ * The text layouts of the rows are precomputed in another background thread as soon as a list
+ * arrives, for the width of the RecyclerView, and kept in a {@link TextLayoutCache}.
  */
 
-public class NewsItemsAdapter extends ArrayAdapter<NewsItem> {
+public class NewsItemsAdapter extends RecyclerView.Adapter<NewsItemsAdapter.ViewHolder> {
+
+    /**
+     * Interface definition for a callback to be invoked when a NewsItem row is clicked.
+     */
+    public interface OnItemClickListener {
+        void onItemClick(NewsItem item);
+    }
+
+    // The diffs of all the adapters are computed one after the other on this background thread
+    private static final Executor sDiffExecutor = Executors.newSingleThreadExecutor();
+
+    // The number of rows of a list whose text layouts are precomputed
+    private static final int MAX_PRECOMPUTED_ROWS = 200;
+
+    // States
+    private final LayoutInflater mInflater;
+    private final OnItemClickListener mListener;
+    private final ImageLoader mImageLoader;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final TextLayoutCache mTextLayoutCache = new TextLayoutCache();
+    // The geometry of list_item, in pixels
+    private final int mRowPadding;
+    private final int mThumbnailSpace;
+    private final int mDetailsSpace;
+    private List<NewsItem> mNewsItems = Collections.emptyList();
+    // Incremented by every submitList and appendItems call, so only the latest diff is applied
+    private int mGeneration;
+    // The width inside the RecyclerView, which rows fill (0 until it is laid out)
+    private int mRowWidth;
+    // Incremented by every new list or width, so only the latest precomputation goes on
+    private volatile int mLayoutGeneration;
+
+    // Precompute the layouts again when the width of the RecyclerView changes
+    private final View.OnLayoutChangeListener mWidthListener = new View.OnLayoutChangeListener() {
+        @Override
+        public void onLayoutChange(View view, int left, int top, int right, int bottom,
+                int oldLeft, int oldTop, int oldRight, int oldBottom) {
+            int rowWidth = right - left - view.getPaddingLeft() - view.getPaddingRight();
+            if (rowWidth != mRowWidth) {
+                mRowWidth = rowWidth;
+                precomputeLayouts(mNewsItems, true);
+            }
+        }
+    };
+
     // Constructor
-    public NewsItemsAdapter(Activity context, List<NewsItem> newsItemsList) {
-        super(context, 0, newsItemsList);
+    public NewsItemsAdapter(Context context, OnItemClickListener listener) {
+        mInflater = LayoutInflater.from(context);
+        mListener = listener;
+        mImageLoader = ImageLoader.getInstance(context);
+        Resources resources = context.getResources();
+        mRowPadding = resources.getDimensionPixelSize(R.dimen.margin_around_items);
+        mThumbnailSpace = resources.getDimensionPixelSize(R.dimen.thumbnail_width) + mRowPadding;
+        mDetailsSpace = resources.getDimensionPixelSize(R.dimen.margin_between_detailes);
+        setHasStableIds(true);
+    }
+
+    /**
+     * Display a new list of NewsItems. The diff between the displayed list and the new one is
+     * computed in a background thread and then applied on the UI thread.
+     *
+     * @param newsItems - the new list to display (null for an empty list). It mustn't be changed
+     *                  after being submitted.
+     * @param onCommitted - called on the UI thread once the new list is displayed (can be null)
+     */
+    public void submitList(List<NewsItem> newsItems, final Runnable onCommitted) {
+        final int generation = ++mGeneration;
+        final List<NewsItem> oldItems = mNewsItems;
+        final List<NewsItem> newItems =
+                newsItems == null ? Collections.<NewsItem>emptyList() : newsItems;
+        precomputeLayouts(newItems, true);
+
+        // Nothing to compare: swap the lists right away
+        if (oldItems.isEmpty() || newItems.isEmpty()) {
+            mNewsItems = newItems;
+            if (!oldItems.isEmpty()) {
+                notifyItemRangeRemoved(0, oldItems.size());
+            } else if (!newItems.isEmpty()) {
+                notifyItemRangeInserted(0, newItems.size());
+            }
+            if (onCommitted != null) {
+                onCommitted.run();
+            }
+            return;
+        }
+
+        sDiffExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final DiffUtil.DiffResult diff =
+                        DiffUtil.calculateDiff(new NewsItemsDiffCallback(oldItems, newItems));
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        // A newer list was submitted in the meantime
+                        if (generation != mGeneration) {
+                            return;
+                        }
+                        mNewsItems = newItems;
+                        diff.dispatchUpdatesTo(NewsItemsAdapter.this);
+                        if (onCommitted != null) {
+                            onCommitted.run();
+                        }
+                    }
+                });
+            }
+        });
     }
 
     /**
-     * This override of the getView method verifies that there is an inflated list item view to work on,
-     * extracts the object of the current NewsItem of the array to display,
-     * and places its title, section and date in the appropriate TextViews.
+     * Add the given NewsItems at the end of the displayed list, right away and without a diff.
+     * A diff of a list submitted before is dropped, as it was computed against the old list.
      *
-     * @param position    - the position in the newsItemsList array to be displayed
-     * @param convertView - the view to be recycled (can be null)
-     * @param parent      - the parent into which the view should be inserted to
-     * @return - the updated list item view with the NewsItem info
+     * @param newsItems - the NewsItems to add, which mustn't be displayed already
+     */
+    public void appendItems(List<NewsItem> newsItems) {
+        if (newsItems.isEmpty()) {
+            return;
+        }
+        ++mGeneration;
+        List<NewsItem> items = new ArrayList<>(mNewsItems.size() + newsItems.size());
+        items.addAll(mNewsItems);
+        items.addAll(newsItems);
+        int oldSize = mNewsItems.size();
+        mNewsItems = items;
+        precomputeLayouts(newsItems, false);
+        notifyItemRangeInserted(oldSize, newsItems.size());
+    }
+
+    /**
+     * Release the precomputed text layouts as asked by onTrimMemory(int).
+     */
+    public void trimMemory(int level) {
+        mTextLayoutCache.trimMemory(level);
+    }
+
+    /**
+     * Return the displayed list of NewsItems.
+     */
+    public List<NewsItem> getNewsItems() {
+        return mNewsItems;
+    }
+
+    public NewsItem getItem(int position) {
+        return mNewsItems.get(position);
+    }
+
+    /**
+     * This override takes the text styles of the rows from a row inflated for the RecyclerView,
+     * and follows its width, so the text layouts can be precomputed.
      */
-    @NonNull
     @Override
-    public View getView(int position, @Nullable View convertView, @NonNull ViewGroup parent) {
-        // Check if the existing view is being reused, otherwise inflate the view
-        if (convertView == null) {
-            convertView = LayoutInflater.from(getContext()).inflate(
-                    R.layout.list_item, parent, false);
+    public void onAttachedToRecyclerView(RecyclerView recyclerView) {
+        if (!mTextLayoutCache.isStyled()) {
+            View row = mInflater.inflate(R.layout.list_item, recyclerView, false);
+            setStyle(row, R.id.title, TextLayoutCache.FIELD_TITLE);
+            setStyle(row, R.id.author, TextLayoutCache.FIELD_AUTHOR);
+            setStyle(row, R.id.section, TextLayoutCache.FIELD_SECTION);
+            setStyle(row, R.id.date, TextLayoutCache.FIELD_DATE);
+        }
+        recyclerView.addOnLayoutChangeListener(mWidthListener);
+    }
+
+    @Override
+    public void onDetachedFromRecyclerView(RecyclerView recyclerView) {
+        recyclerView.removeOnLayoutChangeListener(mWidthListener);
+        // Stop the precomputation for it
+        ++mLayoutGeneration;
+        mRowWidth = 0;
+    }
+
+    private void setStyle(View row, int viewId, int field) {
+        mTextLayoutCache.setStyle(field, ((LayoutTextView) row.findViewById(viewId)).getPaint());
+    }
+
+    /**
+     * Precompute the text layouts of the given rows in a background thread, as the views of
+     * list_item will ask for them once measured by the RelativeLayout.
+     *
+     * @param newsItems - the rows to precompute
+     * @param restart   - whether a precomputation still going on should stop, because the rows
+     *                  or the width changed
+     */
+    private void precomputeLayouts(List<NewsItem> newsItems, boolean restart) {
+        if (restart) {
+            ++mLayoutGeneration;
+        }
+        if (mRowWidth <= 0 || !mTextLayoutCache.isStyled() || newsItems.isEmpty()) {
+            return;
         }
+        final int generation = mLayoutGeneration;
+        final List<NewsItem> items =
+                newsItems.subList(0, Math.min(newsItems.size(), MAX_PRECOMPUTED_ROWS));
+        // The width inside the padding of the row
+        final int innerWidth = mRowWidth - 2 * mRowPadding;
+        mTextLayoutCache.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (NewsItem item : items) {
+                    if (generation != mLayoutGeneration) {
+                        return;
+                    }
+                    // The title fills the space left of the thumbnail, if the article has one
+                    int titleWidth = item.getThumbnailUrl().isEmpty()
+                            ? innerWidth : innerWidth - mThumbnailSpace;
+                    mTextLayoutCache.precompute(TextLayoutCache.FIELD_TITLE, item.getTitle(),
+                            titleWidth, true);
+                    mTextLayoutCache.precompute(TextLayoutCache.FIELD_AUTHOR, item.getAuthor(),
+                            innerWidth, false);
+                    // The date is right of the section
+                    int sectionWidth = mTextLayoutCache.precompute(TextLayoutCache.FIELD_SECTION,
+                            item.getSection(), innerWidth, false).getWidth();
+                    mTextLayoutCache.precompute(TextLayoutCache.FIELD_DATE, item.getDate(),
+                            innerWidth - sectionWidth - mDetailsSpace, false);
+                }
+            }
+        });
+    }
+
+    @Override
+    public int getItemCount() {
+        return mNewsItems.size();
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return mNewsItems.get(position).getStableId();
+    }
+
+    /**
+     * This override inflates a new list_item view and holds the references to its views.
+     */
+    @Override
+    public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        View itemView = mInflater.inflate(R.layout.list_item, parent, false);
+        return new ViewHolder(itemView);
+    }
+
+    /**
+     * This override places the title, author, section and date of the NewsItem in the given
+     * position in the views of the holder, which take their text layouts from the cache.
+     *
+     * @param holder   - the holder of the row to update
+     * @param position - the position in the newsItemsList to be displayed
+     */
+    @Override
+    public void onBindViewHolder(ViewHolder holder, int position) {
+        long bindStart = System.nanoTime();
         // Get the data of the current NewsItem
-        NewsItem currentItem = getItem(position);
+        NewsItem currentItem = mNewsItems.get(position);
 
-        // Update the title
-        TextView titleText = (TextView) convertView.findViewById(R.id.title);
-        titleText.setText(currentItem.getTitle());
+        // Update the title, author, section and date
+        holder.mTitleText.setText(currentItem.getTitle(), mTextLayoutCache,
+                TextLayoutCache.FIELD_TITLE);
+        holder.mAuthorText.setText(currentItem.getAuthor(), mTextLayoutCache,
+                TextLayoutCache.FIELD_AUTHOR);
+        holder.mSectionText.setText(currentItem.getSection(), mTextLayoutCache,
+                TextLayoutCache.FIELD_SECTION);
+        holder.mDateText.setText(currentItem.getDate(), mTextLayoutCache,
+                TextLayoutCache.FIELD_DATE);
 
-        // Update the author
-        TextView authorText = (TextView) convertView.findViewById(R.id.author);
-        authorText.setText(currentItem.getAuthor());
+        // Show the thumbnail, if the article has one
+        String thumbnailUrl = currentItem.getThumbnailUrl();
+        if (thumbnailUrl.isEmpty()) {
+            mImageLoader.cancel(holder.mThumbnailImage);
+            holder.mThumbnailImage.setVisibility(View.GONE);
+        } else {
+            holder.mThumbnailImage.setVisibility(View.VISIBLE);
+            mImageLoader.load(thumbnailUrl, holder.mThumbnailImage);
+        }
+        FetchMetrics.recordSince(FetchMetrics.STAGE_BIND, bindStart);
+    }
 
-        // Update the section
-        TextView sectionText = (TextView) convertView.findViewById(R.id.section);
-        sectionText.setText(currentItem.getSection());
+    /**
+     * This override stops loading the thumbnail of a row that scrolled off screen, and lets go
+     * of its bitmap (which stays in the ImageLoader's memory cache).
+     */
+    @Override
+    public void onViewRecycled(ViewHolder holder) {
+        mImageLoader.cancel(holder.mThumbnailImage);
+        holder.mThumbnailImage.setImageDrawable(null);
+    }
 
-        // Update the date
-        TextView dateText = (TextView) convertView.findViewById(R.id.date);
-        dateText.setText(currentItem.getDate());
+    /**
+     * Holds the views of one row, so they are only looked up once.
+     */
+    public class ViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
+        private final LayoutTextView mTitleText;
+        private final LayoutTextView mAuthorText;
+        private final LayoutTextView mSectionText;
+        private final LayoutTextView mDateText;
+        private final ImageView mThumbnailImage;
 
-        //Return the newly-inflated/recycled view after the values were updated
-        return convertView;
+        ViewHolder(View itemView) {
+            super(itemView);
+            mTitleText = (LayoutTextView) itemView.findViewById(R.id.title);
+            mAuthorText = (LayoutTextView) itemView.findViewById(R.id.author);
+            mSectionText = (LayoutTextView) itemView.findViewById(R.id.section);
+            mDateText = (LayoutTextView) itemView.findViewById(R.id.date);
+            mThumbnailImage = (ImageView) itemView.findViewById(R.id.thumbnail);
+            itemView.setOnClickListener(this);
+        }
+
+        @Override
+        public void onClick(View view) {
+            int position = getAdapterPosition();
+            if (mListener != null && position != RecyclerView.NO_POSITION) {
+                mListener.onItemClick(mNewsItems.get(position));
+            }
+        }
     }
 
+    /**
+     * Compares two lists of NewsItems: items are the same if they have the same webUrl, and
+     * their contents are the same if everything that is displayed is equal.
+     */
+    private static class NewsItemsDiffCallback extends DiffUtil.Callback {
+        private final List<NewsItem> mOldItems;
+        private final List<NewsItem> mNewItems;
+
+        NewsItemsDiffCallback(List<NewsItem> oldItems, List<NewsItem> newItems) {
+            mOldItems = oldItems;
+            mNewItems = newItems;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return mOldItems.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return mNewItems.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return mOldItems.get(oldItemPosition).getUrl()
+                    .equals(mNewItems.get(newItemPosition).getUrl());
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            NewsItem oldItem = mOldItems.get(oldItemPosition);
+            NewsItem newItem = mNewItems.get(newItemPosition);
+            // Compare what the displayed strings are built from, without building them
+            return TextUtils.equals(oldItem.getWebTitle(), newItem.getWebTitle())
+                    && TextUtils.equals(oldItem.getAuthor(), newItem.getAuthor())
+                    && TextUtils.equals(oldItem.getSection(), newItem.getSection())
+                    && oldItem.getPublishedAt() == newItem.getPublishedAt()
+                    && TextUtils.equals(oldItem.getThumbnailUrl(), newItem.getThumbnailUrl());
+        }
+    }
 }
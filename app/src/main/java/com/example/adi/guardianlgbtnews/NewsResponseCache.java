@@ -0,0 +1,461 @@
+package com.example.adi.guardianlgbtnews;
+
+import android.net.Uri;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An on-disk cache of Guardian responses, keyed by the normalized request URL (without the
+ * api-key), with a size cap and least-recently-used eviction. Cached entries remember the
+ * ETag and Last-Modified headers so requests can be revalidated conditionally, and the parsed
+ * NewsItems of recently used entries are kept in memory so a 304 also skips the parse.
+ */
+public final class NewsResponseCache {
+
+    private static final String LOG_TAG = NewsResponseCache.class.getSimpleName();
+
+    private static final String BODY_SUFFIX = ".body";
+    private static final String META_SUFFIX = ".meta";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    // Number of parsed responses kept in memory
+    private static final int PARSED_CACHE_SIZE = 8;
+
+    // The cache used by QueryUtils, if one was installed
+    private static volatile NewsResponseCache sInstalled;
+
+    // States
+    private final File mDirectory;
+    private final long mMaxSize;
+    private long mSize;
+    // Entries in access order, so the eldest is the least recently used
+    private final LinkedHashMap<String, Entry> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+    private final LruCache<String, List<NewsItem>> mParsed = new LruCache<>(PARSED_CACHE_SIZE);
+
+    // Counters
+    private final AtomicLong mHitCount = new AtomicLong();
+    private final AtomicLong mMissCount = new AtomicLong();
+    private final AtomicLong mRevalidationCount = new AtomicLong();
+    private final AtomicLong mBytesSaved = new AtomicLong();
+    // Gives every Editor its own temporary file, as hedged requests may write the same entry
+    private final AtomicLong mNextEditorId = new AtomicLong();
+
+    private NewsResponseCache(File directory, long maxSize) {
+        mDirectory = directory;
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * Create (or reuse) the cache in the given directory and make it the one used by
+     * {@link QueryUtils}.
+     *
+     * @param directory - the directory to store the responses in
+     * @param maxSize   - the maximum number of bytes of response bodies to keep
+     */
+    public static synchronized NewsResponseCache install(File directory, long maxSize) {
+        NewsResponseCache installed = sInstalled;
+        if (installed != null && installed.mDirectory.equals(directory)
+                && installed.mMaxSize == maxSize) {
+            return installed;
+        }
+        NewsResponseCache cache = new NewsResponseCache(directory, maxSize);
+        cache.readJournal();
+        sInstalled = cache;
+        return cache;
+    }
+
+    /**
+     * Return the installed cache, or null if none was installed.
+     */
+    public static NewsResponseCache getInstalled() {
+        return sInstalled;
+    }
+
+    /**
+     * Return the cache key of the given request URL: the URL with a lower-cased scheme and host,
+     * its query parameters sorted and the api-key removed.
+     */
+    public static String normalizeUrl(String url) {
+        Uri uri = Uri.parse(url);
+        List<String> names = new ArrayList<>(uri.getQueryParameterNames());
+        Collections.sort(names);
+        Uri.Builder builder = uri.buildUpon().clearQuery();
+        if (uri.getScheme() != null) {
+            builder.scheme(uri.getScheme().toLowerCase());
+        }
+        if (uri.getEncodedAuthority() != null) {
+            builder.encodedAuthority(uri.getEncodedAuthority().toLowerCase());
+        }
+        for (String name : names) {
+            if (name.equals("api-key")) {
+                continue;
+            }
+            for (String value : uri.getQueryParameters(name)) {
+                builder.appendQueryParameter(name, value);
+            }
+        }
+        return builder.build().toString();
+    }
+
+    /**
+     * Return the cached entry of the given request URL, or null if there is none.
+     */
+    public synchronized Entry get(String url) {
+        Entry entry = mEntries.get(keyFor(url));
+        if (entry != null) {
+            // Record the access on disk too, so the LRU order survives a restart
+            entry.getBodyFile().setLastModified(System.currentTimeMillis());
+        }
+        return entry;
+    }
+
+    /**
+     * Add If-None-Match / If-Modified-Since headers to the headers of a request.
+     */
+    public void addConditionalHeaders(Entry entry, Map<String, String> requestHeaders) {
+        if (entry.mEtag != null) {
+            requestHeaders.put("If-None-Match", entry.mEtag);
+        }
+        if (entry.mLastModified != null) {
+            requestHeaders.put("If-Modified-Since", entry.mLastModified);
+        }
+        mRevalidationCount.incrementAndGet();
+        FetchMetrics.count(FetchMetrics.COUNT_CACHE_REVALIDATIONS, 1);
+    }
+
+    /**
+     * Record that the server answered 304 for the given entry, and return its parsed
+     * NewsItems if they are still in memory (null otherwise).
+     */
+    public List<NewsItem> onNotModified(Entry entry) {
+        mHitCount.incrementAndGet();
+        mBytesSaved.addAndGet(entry.mLength);
+        FetchMetrics.count(FetchMetrics.COUNT_CACHE_BYTES_SAVED, entry.mLength);
+        return mParsed.get(entry.mKey);
+    }
+
+    /**
+     * Return the parsed NewsItems of a cached entry if they are still in memory (null
+     * otherwise), without counting a hit.
+     */
+    public List<NewsItem> getParsed(Entry entry) {
+        return mParsed.get(entry.mKey);
+    }
+
+    /**
+     * Open the cached body of an entry for reading.
+     */
+    public InputStream openBody(Entry entry) throws IOException {
+        return new BufferedInputStream(new FileInputStream(entry.getBodyFile()));
+    }
+
+    /**
+     * Keep the parsed NewsItems of a cached entry in memory.
+     */
+    public void putParsed(Entry entry, List<NewsItem> newsItems) {
+        if (entry != null && newsItems != null) {
+            mParsed.put(entry.mKey, Collections.unmodifiableList(new ArrayList<>(newsItems)));
+        }
+    }
+
+    /**
+     * Start caching a fresh (200) response of the given URL. The body is written to disk while
+     * it is read through {@link Editor#wrap(InputStream)}, and only kept once committed.
+     */
+    public Editor edit(String url, NewsHttpClient.Response response) {
+        mMissCount.incrementAndGet();
+        FetchMetrics.count(FetchMetrics.COUNT_CACHE_MISSES, 1);
+        Entry entry = new Entry(keyFor(url), normalizeUrl(url),
+                response.getHeader("ETag"),
+                response.getHeader("Last-Modified"), 0);
+        return new Editor(entry);
+    }
+
+    public long getHitCount() {
+        return mHitCount.get();
+    }
+
+    public long getMissCount() {
+        return mMissCount.get();
+    }
+
+    public long getRevalidationCount() {
+        return mRevalidationCount.get();
+    }
+
+    public long getBytesSaved() {
+        return mBytesSaved.get();
+    }
+
+    public synchronized long getSize() {
+        return mSize;
+    }
+
+    @Override
+    public String toString() {
+        return "NewsResponseCache[hits=" + getHitCount() + ", misses=" + getMissCount()
+                + ", revalidations=" + getRevalidationCount() + ", bytesSaved=" + getBytesSaved()
+                + ", size=" + getSize() + "/" + mMaxSize + "]";
+    }
+
+    private String keyFor(String url) {
+        return sha1Hex(normalizeUrl(url));
+    }
+
+    // Store a committed entry and evict the least recently used ones if over the size cap
+    private synchronized void commit(Entry entry, File tempBody) throws IOException {
+        Entry previous = mEntries.remove(entry.mKey);
+        if (previous != null) {
+            mSize -= previous.mLength;
+        }
+        writeMeta(entry);
+        if (!tempBody.renameTo(entry.getBodyFile())) {
+            tempBody.delete();
+            entry.getMetaFile().delete();
+            throw new IOException("Couldn't store cached response " + entry.getBodyFile());
+        }
+        mEntries.put(entry.mKey, entry);
+        mParsed.remove(entry.mKey);
+        mSize += entry.mLength;
+        trimToSize();
+    }
+
+    private void trimToSize() {
+        Iterator<Map.Entry<String, Entry>> iterator = mEntries.entrySet().iterator();
+        while (mSize > mMaxSize && iterator.hasNext()) {
+            Entry eldest = iterator.next().getValue();
+            iterator.remove();
+            mSize -= eldest.mLength;
+            mParsed.remove(eldest.mKey);
+            eldest.getBodyFile().delete();
+            eldest.getMetaFile().delete();
+        }
+    }
+
+    // Rebuild the in-memory index from the files in the cache directory
+    private synchronized void readJournal() {
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            Log.e(LOG_TAG, "Couldn't create cache directory " + mDirectory);
+            return;
+        }
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        // Oldest access first, so the LinkedHashMap ends up in LRU order
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return Long.compare(a.lastModified(), b.lastModified());
+            }
+        });
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(TEMP_SUFFIX)) {
+                file.delete();
+            } else if (name.endsWith(BODY_SUFFIX)) {
+                String key = name.substring(0, name.length() - BODY_SUFFIX.length());
+                Entry entry = readMeta(key, file.length());
+                if (entry == null) {
+                    file.delete();
+                } else {
+                    mEntries.put(key, entry);
+                    mSize += entry.mLength;
+                }
+            }
+        }
+        trimToSize();
+    }
+
+    private Entry readMeta(String key, long length) {
+        File metaFile = new File(mDirectory, key + META_SUFFIX);
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(metaFile)));
+            String url = in.readUTF();
+            String etag = in.readUTF();
+            String lastModified = in.readUTF();
+            return new Entry(key, url, etag.isEmpty() ? null : etag,
+                    lastModified.isEmpty() ? null : lastModified, length);
+        } catch (IOException e) {
+            metaFile.delete();
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    private void writeMeta(Entry entry) throws IOException {
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(entry.getMetaFile())));
+        try {
+            out.writeUTF(entry.mUrl);
+            out.writeUTF(entry.mEtag == null ? "" : entry.mEtag);
+            out.writeUTF(entry.mLastModified == null ? "" : entry.mLastModified);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static String sha1Hex(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1")
+                    .digest(value.getBytes(Charset.forName("UTF-8")));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(String.format("%02x", b & 0xff));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignored) {
+                // Nothing more to do
+            }
+        }
+    }
+
+    /**
+     * The metadata of one cached response.
+     */
+    public final class Entry {
+        private final String mKey;
+        private final String mUrl;
+        private final String mEtag;
+        private final String mLastModified;
+        private long mLength;
+
+        private Entry(String key, String url, String etag, String lastModified, long length) {
+            mKey = key;
+            mUrl = url;
+            mEtag = etag;
+            mLastModified = lastModified;
+            mLength = length;
+        }
+
+        public String getUrl() {
+            return mUrl;
+        }
+
+        // Only responses that can be revalidated are worth keeping
+        private boolean isRevalidatable() {
+            return mEtag != null || mLastModified != null;
+        }
+
+        private File getBodyFile() {
+            return new File(mDirectory, mKey + BODY_SUFFIX);
+        }
+
+        private File getMetaFile() {
+            return new File(mDirectory, mKey + META_SUFFIX);
+        }
+    }
+
+    /**
+     * Writes a response body to disk while it's being read, and stores it once committed.
+     */
+    public final class Editor {
+        private final Entry mEntry;
+        private final File mTempFile;
+        private OutputStream mOut;
+        private InputStream mIn;
+
+        private Editor(Entry entry) {
+            mEntry = entry;
+            mTempFile = new File(mDirectory,
+                    entry.mKey + "." + mNextEditorId.incrementAndGet() + TEMP_SUFFIX);
+        }
+
+        /**
+         * Return a stream that reads the given body and copies every byte into the cache.
+         */
+        public InputStream wrap(InputStream body) throws IOException {
+            mOut = new BufferedOutputStream(new FileOutputStream(mTempFile));
+            mIn = new FilterInputStream(body) {
+                @Override
+                public int read() throws IOException {
+                    int b = super.read();
+                    if (b != -1) {
+                        mOut.write(b);
+                        mEntry.mLength++;
+                    }
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] buffer, int offset, int count) throws IOException {
+                    int read = super.read(buffer, offset, count);
+                    if (read > 0) {
+                        mOut.write(buffer, offset, read);
+                        mEntry.mLength += read;
+                    }
+                    return read;
+                }
+            };
+            return mIn;
+        }
+
+        /**
+         * Read whatever is left of the body and store it in the cache, together with its
+         * parsed NewsItems.
+         */
+        public void commit(List<NewsItem> newsItems) {
+            try {
+                // The parser may stop before the end of the stream
+                byte[] buffer = new byte[8192];
+                while (mIn.read(buffer) != -1) {
+                    // Keep copying
+                }
+                mOut.close();
+                if (!mEntry.isRevalidatable()) {
+                    mTempFile.delete();
+                    return;
+                }
+                NewsResponseCache.this.commit(mEntry, mTempFile);
+                putParsed(mEntry, newsItems);
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Problem caching the response.", e);
+                abort();
+            }
+        }
+
+        /**
+         * Discard the partially written body.
+         */
+        public void abort() {
+            closeQuietly(mOut);
+            mTempFile.delete();
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.example.adi.guardianlgbtnews;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.preference.PreferenceManager;
+import android.util.Log;
+
+import java.io.File;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A background job that keeps the {@link ArticleStore} up to date with small delta queries.
+ * It remembers, for each topic, the newest webPublicationDate of its last complete sync, and
+ * each run only asks the Guardian API for the topic's items published since then (from-date,
+ * newest first), paging until it reaches items that are already stored. The job only runs on
+ * unmetered networks and, where supported, when the battery isn't low; failed runs are retried
+ * with exponential backoff.
+ */
+public class NewsSyncJobService extends JobService {
+
+    private static final String LOG_TAG = NewsSyncJobService.class.getSimpleName();
+
+    private static final int SYNC_JOB_ID = 1;
+    private static final long SYNC_INTERVAL_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private static final long INITIAL_BACKOFF_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    // Size and maximum number of the pages requested by one run, for every topic
+    private static final int SYNC_PAGE_SIZE = 50;
+    private static final int MAX_SYNC_PAGES = 5;
+
+    // The prefix of the preferences holding the newest publication date synced for each topic
+    private static final String NEWEST_DATE_KEY = "sync_newest_date";
+
+    // States
+    private Thread mSyncThread;
+
+    /**
+     * Schedule the periodic sync, unless it already is.
+     */
+    public static void schedule(Context context) {
+        JobScheduler jobScheduler =
+                (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        if (jobScheduler == null) {
+            return;
+        }
+        for (JobInfo job : jobScheduler.getAllPendingJobs()) {
+            if (job.getId() == SYNC_JOB_ID) {
+                return;
+            }
+        }
+        JobInfo.Builder builder = new JobInfo.Builder(SYNC_JOB_ID,
+                new ComponentName(context, NewsSyncJobService.class))
+                .setPeriodic(SYNC_INTERVAL_MILLIS)
+                // Back off while the device is on a metered network
+                .setRequiredNetworkType(JobInfo.NETWORK_TYPE_UNMETERED)
+                .setBackoffCriteria(INITIAL_BACKOFF_MILLIS, JobInfo.BACKOFF_POLICY_EXPONENTIAL)
+                .setPersisted(true);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            // ...and while its battery is low
+            builder.setRequiresBatteryNotLow(true);
+        }
+        jobScheduler.schedule(builder.build());
+    }
+
+    // This method is called on the main thread when the job starts, and runs the sync in a
+    // background thread. Returns true as the job isn't finished yet.
+    @Override
+    public boolean onStartJob(final JobParameters params) {
+        // The job may run in a new process, or on another network than the app was last on
+        NetworkStatus.update(this);
+        mSyncThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                boolean success = syncDelta(getApplicationContext());
+                // Ask for a retry (with backoff) if the sync failed
+                jobFinished(params, !success);
+            }
+        }, "NewsSync");
+        mSyncThread.start();
+        return true;
+    }
+
+    // This method is called if the job's constraints are no longer met, e.g. the device moved
+    // to a metered network. Returns true so the job is retried later.
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        if (mSyncThread != null) {
+            mSyncThread.interrupt();
+        }
+        return true;
+    }
+
+    /**
+     * Fetch the NewsItems of the followed topics published since the newest stored one of each
+     * topic into the ArticleStore. Returns whether every request succeeded.
+     */
+    static boolean syncDelta(Context context) {
+        ArticleStore store = ArticleStore.install(context);
+        NewsResponseCache.install(new File(context.getCacheDir(), "responses"),
+                MainActivity.RESPONSE_CACHE_SIZE);
+        SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(context);
+
+        boolean success = true;
+        int fetched = 0;
+        List<GuardianQuery> topicQueries = MainActivity.buildRequestQueries(context,
+                context.getString(R.string.settings_order_by_newest_value),
+                String.valueOf(SYNC_PAGE_SIZE));
+        for (GuardianQuery topicQuery : topicQueries) {
+            // Start from the newest date of the topic's last complete sync; without one (e.g. a
+            // topic just followed) this is a first full sync
+            String dateKey = NEWEST_DATE_KEY + "_" + topicQuery.getParameter("q");
+            String fromDate = sharedPrefs.getString(dateKey, null);
+            long fromMillis = IsoDates.parse(fromDate);
+            Set<String> knownUrls = fromDate == null ? null : store.getUrlsSince(fromDate);
+            long newestPublishedAt = fromMillis;
+            boolean topicSuccess = true;
+
+            for (int page = 1; page <= MAX_SYNC_PAGES; page++) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return false;
+                }
+                GuardianQuery pageQuery = topicQuery.with("page", page);
+                if (fromDate != null) {
+                    pageQuery = pageQuery.with("from-date", fromDate);
+                }
+                // The fetched NewsItems are saved to the store by QueryUtils. No one is waiting
+                // for them, so the requests the user makes meanwhile go first.
+                List<NewsItem> pageItems = QueryUtils.fetchNewsItems(pageQuery.toUrl(),
+                        RequestScheduler.PRIORITY_BACKGROUND);
+                if (pageItems == null) {
+                    // A page past the last one fails too, so only the first one is an error
+                    success &= page > 1;
+                    topicSuccess = page > 1;
+                    break;
+                }
+                fetched += pageItems.size();
+
+                // Stop at the first page that reaches the items of the last complete sync (the
+                // ones of its newest day), or the last page. Newer stored items may only be
+                // the first pages of a failed run, or the ones the user loaded.
+                boolean reachedKnown = false;
+                for (NewsItem item : pageItems) {
+                    newestPublishedAt = Math.max(newestPublishedAt, item.getPublishedAt());
+                    if (knownUrls != null && knownUrls.contains(item.getUrl())
+                            && item.getPublishedAt() < fromMillis + TimeUnit.DAYS.toMillis(1)) {
+                        reachedKnown = true;
+                    }
+                }
+                if (reachedKnown || pageItems.size() < SYNC_PAGE_SIZE) {
+                    break;
+                }
+            }
+
+            // The date only moves on once the topic's delta is complete, so the items of a
+            // failed run are asked for again on the next one
+            if (topicSuccess && newestPublishedAt != IsoDates.UNKNOWN) {
+                sharedPrefs.edit()
+                        .putString(dateKey, IsoDates.formatDay(newestPublishedAt))
+                        .apply();
+            }
+            Log.d(LOG_TAG, "Synced " + topicQuery.getParameter("q") + " from " + fromDate);
+        }
+        Log.d(LOG_TAG, "Synced " + fetched + " NewsItems");
+        return success;
+    }
+}
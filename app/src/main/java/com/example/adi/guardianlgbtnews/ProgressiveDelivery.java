@@ -0,0 +1,89 @@
+package com.example.adi.guardianlgbtnews;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hands the NewsItems parsed by the loader's threads over to the UI thread while the responses
+ * are still downloading. The items received between two frames are delivered together, in the
+ * order they were parsed, at the start of the next frame, so the list grows by at most one
+ * batch per frame however fast they arrive. An item already handed over (e.g. by a retried or
+ * hedged request) is dropped, and so is a near-duplicate of one (see {@link StoryClusterer}),
+ * as the complete result only lists a story once.
+ * <p>
+ * Items may be added from any thread. Once {@link #close()} is called, the items not yet
+ * delivered, and the ones added after it, are dropped.
+ */
+public final class ProgressiveDelivery implements NewsItemsParser.OnNewsItemListener {
+
+    /**
+     * Interface definition for a callback to be invoked on the UI thread with every batch.
+     */
+    public interface OnBatchListener {
+        void onBatch(List<NewsItem> batch);
+    }
+
+    // States
+    private final OnBatchListener mListener;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    // The stories of the items received so far, to drop the duplicates
+    private final StoryClusterer mClusterer = new StoryClusterer();
+    // The items received since the last frame
+    private List<NewsItem> mPending = new ArrayList<>();
+    private boolean mFrameScheduled;
+    private boolean mClosed;
+
+    // The Choreographer of the UI thread can only be reached from it
+    private final Runnable mScheduleFrame = new Runnable() {
+        @Override
+        public void run() {
+            Choreographer.getInstance().postFrameCallback(mFrameCallback);
+        }
+    };
+
+    private final Choreographer.FrameCallback mFrameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            List<NewsItem> batch;
+            synchronized (ProgressiveDelivery.this) {
+                batch = mPending;
+                mPending = new ArrayList<>();
+                mFrameScheduled = false;
+                if (mClosed) {
+                    return;
+                }
+            }
+            if (!batch.isEmpty()) {
+                mListener.onBatch(batch);
+            }
+        }
+    };
+
+    public ProgressiveDelivery(OnBatchListener listener) {
+        mListener = listener;
+    }
+
+    @Override
+    public synchronized void onNewsItem(NewsItem item) {
+        if (mClosed || !mClusterer.add(item)) {
+            return;
+        }
+        mPending.add(item);
+        if (!mFrameScheduled) {
+            mFrameScheduled = true;
+            mMainHandler.post(mScheduleFrame);
+        }
+    }
+
+    /**
+     * Stop delivering, e.g. because the complete result is about to be delivered.
+     */
+    public synchronized void close() {
+        mClosed = true;
+        mPending.clear();
+    }
+}
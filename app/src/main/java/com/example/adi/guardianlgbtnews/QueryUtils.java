@@ -1,22 +1,29 @@
 package com.example.adi.guardianlgbtnews;
 
-import android.text.TextUtils;
+import android.database.sqlite.SQLiteException;
 import android.util.Log;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
 import java.net.URL;
-import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 /**
  * Helper methods related to requesting and receiving data from the Guardian url
@@ -28,6 +35,67 @@ public final class QueryUtils {
      */
     public static final String LOG_TAG = QueryUtils.class.getSimpleName();
 
+    /**
+     * Whether responses are parsed straight from the connection's stream with a pull parser
+     * (true), or read into a String and parsed as a JSONObject tree (false). The DOM path is
+     * kept so the two can be compared.
+     */
+    private static volatile boolean sUseStreamingParser = true;
+
+    /**
+     * The client all the requests are made with, so they can share kept-alive connections
+     */
+    private static final NewsHttpClient sHttpClient = new NewsHttpClient();
+
+    /**
+     * The requests currently being made, by their URL
+     */
+    private static final ConcurrentHashMap<String, FutureTask<List<NewsItem>>> sInFlightRequests =
+            new ConcurrentHashMap<>();
+
+    /**
+     * The URLs of the requests the API rejected (a client error, e.g. a page past the last one),
+     * until the caller asks with {@link #takeRejected(String)}
+     */
+    private static final Set<String> sRejectedUrls =
+            Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /**
+     * The executor running the requests of a fan-out in parallel
+     */
+    private static final int MAX_PARALLEL_REQUESTS = 4;
+    private static final ExecutorService sFanOutExecutor =
+            Executors.newFixedThreadPool(MAX_PARALLEL_REQUESTS);
+
+    /**
+     * The policy deciding the size of the requests and the per-attempt timeouts from the
+     * network, fed with the timing of every response
+     */
+    private static final FetchPolicy sFetchPolicy = new FetchPolicy();
+
+    /**
+     * The scheduler keeping all the requests to the API within the rate limit of its key, with
+     * the ones the user is waiting for ahead of the sync and prefetch ones
+     */
+    private static final RequestScheduler sRequestScheduler = new RequestScheduler();
+
+    /**
+     * The executor retrying and hedging the requests, shared by all of them so its circuit
+     * breaker sees every failure of the API
+     */
+    private static final ResilientExecutor sRequestExecutor =
+            new ResilientExecutor(new CircuitBreaker());
+
+    /**
+     * How long a background request may wait for a permit of the scheduler
+     */
+    private static final long BACKGROUND_PERMIT_TIMEOUT_MILLIS = 60000;
+
+    static {
+        applyFetchPolicy();
+        sRequestExecutor.setScheduler(sRequestScheduler);
+    }
+
     /**
      * Create a private constructor because no one should ever create a {@link QueryUtils} object.
      * This class is only meant to hold static variables and methods, which can be accessed
@@ -37,159 +105,461 @@ public final class QueryUtils {
     }
 
     /**
-     * Query the Guardian dataset in the given URL and return the JSON response as String.
+     * Switch between the streaming parser and the String + JSONObject parser.
+     */
+    public static void setUseStreamingParser(boolean useStreamingParser) {
+        sUseStreamingParser = useStreamingParser;
+    }
+
+    public static boolean isUsingStreamingParser() {
+        return sUseStreamingParser;
+    }
+
+    /**
+     * Return the HTTP client used for the requests, e.g. to set its timeouts.
+     */
+    public static NewsHttpClient getHttpClient() {
+        return sHttpClient;
+    }
+
+    /**
+     * Return the policy the requests are sized by, e.g. to tell it the network.
+     */
+    public static FetchPolicy getFetchPolicy() {
+        return sFetchPolicy;
+    }
+
+    /**
+     * Set the per-attempt timeouts of the client, and the deadline of the requests, to the ones
+     * of the {@link FetchPolicy}, after its network or estimates changed. They are shorter than
+     * the client's defaults unless the network is slow: a stalled attempt is retried or hedged
+     * instead of being waited for.
+     */
+    public static void applyFetchPolicy() {
+        sHttpClient.setConnectTimeout(sFetchPolicy.getConnectTimeoutMillis());
+        sHttpClient.setReadTimeout(sFetchPolicy.getReadTimeoutMillis());
+        sRequestExecutor.setDeadline(sFetchPolicy.getDeadlineMillis());
+    }
+
+    // Add the timing of the given response, once read, to the estimates of the FetchPolicy
+    private static void recordResponseTiming(NewsHttpClient.Response response) {
+        sFetchPolicy.onResponse(response.getHeadersNanos(), response.getBytesReceived(),
+                response.getBodyReadNanos());
+        applyFetchPolicy();
+    }
+
+    /**
+     * Return the scheduler every request to the API waits for, e.g. for its queue depths.
+     */
+    public static RequestScheduler getRequestScheduler() {
+        return sRequestScheduler;
+    }
+
+    /**
+     * Query the Guardian dataset in the given URL and return the NewsItems of the JSON response.
+     * If the same URL is already being fetched by another thread, wait for that request and
+     * return a copy of its result instead of making a second one.
      */
     public static List<NewsItem> fetchNewsItems(String requestUrl) {
-        // Create URL object
-        URL url = createUrl(requestUrl);
-        // Perform HTTP request to the URL and receive a JSON response back
-        String jsonResponse = null;
+        return fetchNewsItems(requestUrl, null, RequestScheduler.PRIORITY_FOREGROUND);
+    }
+
+    /**
+     * Same as {@link #fetchNewsItems(String)}, with the given priority for the
+     * {@link RequestScheduler}, e.g. PRIORITY_BACKGROUND for a sync no one is waiting for.
+     */
+    public static List<NewsItem> fetchNewsItems(String requestUrl, int priority) {
+        return fetchNewsItems(requestUrl, null, priority);
+    }
+
+    /**
+     * Same as {@link #fetchNewsItems(String)}, also handing the NewsItems to the given listener
+     * as they are parsed, while the response is still downloading. This only happens when the
+     * streaming parser is used and the request isn't joined to one already being made. A
+     * retried or hedged request may hand the same NewsItem over more than once.
+     */
+    public static List<NewsItem> fetchNewsItems(String requestUrl,
+            NewsItemsParser.OnNewsItemListener listener) {
+        return fetchNewsItems(requestUrl, listener, RequestScheduler.PRIORITY_FOREGROUND);
+    }
+
+    // A request joining one already being made keeps the priority of the first one
+    private static List<NewsItem> fetchNewsItems(final String requestUrl,
+            final NewsItemsParser.OnNewsItemListener listener, final int priority) {
+        FutureTask<List<NewsItem>> task = new FutureTask<>(new Callable<List<NewsItem>>() {
+            @Override
+            public List<NewsItem> call() {
+                List<NewsItem> newsItems = fetchNewsItemsUncoalesced(requestUrl, listener, priority);
+                // Keep every received NewsItem in the local store, so it can be searched offline
+                ArticleStore store = ArticleStore.getInstalled();
+                if (store != null) {
+                    try {
+                        store.saveAll(newsItems);
+                    } catch (SQLiteException e) {
+                        Log.e(LOG_TAG, "Problem saving the NewsItems.", e);
+                    }
+                }
+                return newsItems;
+            }
+        });
+        FutureTask<List<NewsItem>> inFlight = sInFlightRequests.putIfAbsent(requestUrl, task);
+        if (inFlight == null) {
+            // No identical request is running, so make this one
+            inFlight = task;
+            try {
+                task.run();
+            } finally {
+                sInFlightRequests.remove(requestUrl, task);
+            }
+        }
         try {
-            jsonResponse = makeHttpRequest(url);
-        } catch (IOException e) {
-            Log.e(LOG_TAG, "Problem making the HTTP request.", e);
+            List<NewsItem> newsItems = inFlight.get();
+            // Every caller gets its own list
+            return newsItems == null ? null : new ArrayList<>(newsItems);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            Log.e(LOG_TAG, "Problem fetching the NewsItems.", e.getCause());
+            return null;
         }
-        // Parse the JSON response and build a NewsItems list if it's not null or empty
-        List<NewsItem> newsItemsList = extractNewsItems(jsonResponse);
-        // Return the list of NewsItems
-        return newsItemsList;
     }
 
     /**
-     * Return a list of {@link NewsItem} objects that has been built up from parsing a JSON response.
-     *
-     * @param jsonString the JSON string received from the http request
+     * Query all the given URLs in parallel and return their NewsItems merged into one list by
+     * {@link #mergeNewsItems(List, String)}, or null if every request failed.
      */
-    private static List<NewsItem> extractNewsItems(String jsonString) {
-        // If the jsonString is empty return null
-        if (TextUtils.isEmpty(jsonString)) {
-            return null;
+    public static List<NewsItem> fetchNewsItems(List<String> requestUrls, String orderBy) {
+        return fetchNewsItems(requestUrls, orderBy, null);
+    }
+
+    /**
+     * Same as {@link #fetchNewsItems(List, String)}, also handing the NewsItems of every request
+     * to the given listener as they are parsed (see {@link #fetchNewsItems(String,
+     * NewsItemsParser.OnNewsItemListener)}). They arrive in the order of their own response,
+     * but the responses of several requests are interleaved.
+     */
+    public static List<NewsItem> fetchNewsItems(List<String> requestUrls, String orderBy,
+            NewsItemsParser.OnNewsItemListener listener) {
+        List<List<NewsItem>> resultLists = fetchNewsItemsInParallel(requestUrls, listener);
+        for (List<NewsItem> resultList : resultLists) {
+            if (resultList != null) {
+                return mergeNewsItems(resultLists, orderBy);
+            }
         }
+        return null;
+    }
 
-        // Create an empty ArrayList that we can start adding NewsItems to
-        List<NewsItem> newsItems = new ArrayList<>();
+    /**
+     * Return whether the last request of the given URL failed because the API rejected it, e.g.
+     * as a page past the last one, rather than because of the network or a server error, which
+     * a later request may not run into. Forgets the answer.
+     */
+    public static boolean takeRejected(String requestUrl) {
+        return sRejectedUrls.remove(requestUrl);
+    }
 
-        // Try to parse the jsonString. If there's a problem with the way the JSON
-        // is formatted, a JSONException exception object will be thrown.
-        // Catch the exception so the app doesn't crash, and print the error message to the logs.
-        try {
-            // Convert the jsonString into a JSONObject
-            JSONObject root = new JSONObject(jsonString);
-            // Replace the root JSONObject with the "response" JSONObject within it
-            root = root.getJSONObject("response");
-            // Extract “results” JSONArray
-            JSONArray resultsArray = root.optJSONArray("results");
-            // If there are items in the results array
-            if (resultsArray.length() > 0) {
-                // Loop through each result in the array
-                for (int i = 0; i < resultsArray.length(); i++) {
-                    // Get news item JSONObject at position i
-                    JSONObject currentItem = resultsArray.getJSONObject(i);
-                    // Get “webTitle” for the item's title
-                    String currentTitle = currentItem.getString("webTitle");
-                    // If it contains the author's name - omit it
-                    if (currentTitle.contains(" | ")){
-                        currentTitle = currentTitle.substring(0, currentTitle.indexOf(" | "));
-                    }
-                    // Get “sectionName” for the item's section
-                    String currentSection = currentItem.getString("sectionName");
-                    // Get “webUrl” for the item's section
-                    String currentUrl = currentItem.getString("webUrl");
-                    // Get “byline” for the item's author name (from the "fields" JSONObject).
-                    // If missing set to "".
-                    String currentAuthor = currentItem.getJSONObject("fields").getString("byline");
-                    if (currentAuthor == null){
-                        currentAuthor = "";
-                    }
-                    // Get “webPublicationDate” for the item's publishing date. If missing set to "".
-                    String currentDate = currentItem.getString("webPublicationDate").substring(0, 10);
-                    if (currentDate == null){
-                        currentDate = "";
+    /**
+     * Query all the given URLs in parallel, at most MAX_PARALLEL_REQUESTS at a time, and return
+     * the NewsItems of each one, in the same order (null for a request that failed).
+     */
+    public static List<List<NewsItem>> fetchNewsItemsInParallel(List<String> requestUrls) {
+        return fetchNewsItemsInParallel(requestUrls, null);
+    }
+
+    /**
+     * Same as {@link #fetchNewsItemsInParallel(List)}, also handing the NewsItems to the given
+     * listener as they are parsed. The listener must be thread-safe.
+     */
+    public static List<List<NewsItem>> fetchNewsItemsInParallel(List<String> requestUrls,
+            final NewsItemsParser.OnNewsItemListener listener) {
+        // A single request is made on the calling thread
+        if (requestUrls.size() == 1) {
+            return Collections.singletonList(fetchNewsItems(requestUrls.get(0), listener));
+        }
+
+        List<Future<List<NewsItem>>> futures = new ArrayList<>(requestUrls.size());
+        for (final String requestUrl : requestUrls) {
+            futures.add(sFanOutExecutor.submit(new Callable<List<NewsItem>>() {
+                @Override
+                public List<NewsItem> call() {
+                    return fetchNewsItems(requestUrl, listener);
+                }
+            }));
+        }
+
+        List<List<NewsItem>> resultLists = new ArrayList<>(requestUrls.size());
+        for (Future<List<NewsItem>> future : futures) {
+            try {
+                resultLists.add(future.get());
+            } catch (InterruptedException e) {
+                // Give up on all the requests
+                for (Future<List<NewsItem>> other : futures) {
+                    other.cancel(true);
+                }
+                Thread.currentThread().interrupt();
+                // The cancelled requests have no result; waiting for them would throw
+                while (resultLists.size() < futures.size()) {
+                    resultLists.add(null);
+                }
+                break;
+            } catch (ExecutionException e) {
+                Log.e(LOG_TAG, "Problem fetching the NewsItems.", e.getCause());
+                resultLists.add(null);
+            }
+        }
+        return resultLists;
+    }
+
+    /**
+     * Merge the result lists of several queries into one list without duplicate webUrls.
+     * The results are interleaved by their rank in their own list, which keeps the "relevance"
+     * order, and then sorted by date for the "newest" and "oldest" orders.
+     *
+     * @param resultLists the NewsItems of each query (null lists are skipped)
+     * @param orderBy     the order-by value of the queries
+     */
+    public static List<NewsItem> mergeNewsItems(List<List<NewsItem>> resultLists, String orderBy) {
+        LinkedHashMap<String, NewsItem> merged = new LinkedHashMap<>();
+        // Take the first item of every list, then the second one of every list, and so on
+        for (int rank = 0; ; rank++) {
+            boolean anyLeft = false;
+            for (List<NewsItem> resultList : resultLists) {
+                if (resultList != null && rank < resultList.size()) {
+                    anyLeft = true;
+                    NewsItem item = resultList.get(rank);
+                    if (!merged.containsKey(item.getUrl())) {
+                        merged.put(item.getUrl(), item);
                     }
-                    // Create a NewsItem java object from the data and add it to the list
-                    newsItems.add(i, new NewsItem(currentTitle, currentSection, currentUrl, currentAuthor, currentDate));
                 }
             }
-        } catch (JSONException e) {
-            // If an error is thrown when executing any of the above statements in the "try" block,
-            // catch the exception here, so the app doesn't crash. Print a log message
-            // with the message from the exception.
-            Log.e("QueryUtils", "Problem parsing the earthquake JSON results", e);
+            if (!anyLeft) {
+                break;
+            }
         }
 
-        // Return the list of earthquakes
+        List<NewsItem> newsItems = new ArrayList<>(merged.values());
+        if ("newest".equals(orderBy) || "oldest".equals(orderBy)) {
+            final boolean newestFirst = "newest".equals(orderBy);
+            // The sort is stable, so items of the same date keep their interleaved order
+            Collections.sort(newsItems, new Comparator<NewsItem>() {
+                @Override
+                public int compare(NewsItem a, NewsItem b) {
+                    return IsoDates.compare(a.getPublishedAt(), b.getPublishedAt(), newestFirst);
+                }
+            });
+        }
         return newsItems;
     }
 
     /**
-     * Returns new URL object from the given string URL.
+     * Query the Guardian dataset in the given URL and return the NewsItems of the JSON response.
+     * If a {@link NewsResponseCache} is installed the request is revalidated against the cached
+     * response, and a 304 reuses it without downloading or (if still in memory) parsing it.
+     * The request is made through the {@link ResilientExecutor}; if it fails, or isn't made
+     * because the API keeps failing, the cached response is returned instead.
+     * The time of each stage and the bytes received are recorded in {@link FetchMetrics}.
+     * The NewsItems downloaded are handed to the listener (if not null) as they are parsed.
+     * The attempts wait for permits of the {@link RequestScheduler} with the given priority.
      */
-    private static URL createUrl(String stringUrl) {
-        URL url = null;
+    private static List<NewsItem> fetchNewsItemsUncoalesced(final String requestUrl,
+            final NewsItemsParser.OnNewsItemListener listener, int priority) {
+        // Create URL object
+        final URL url = createUrl(requestUrl);
+        // If the URL is null, then return early.
+        if (url == null) {
+            return null;
+        }
+
+        // Look for a cached copy of the response to revalidate
+        final NewsResponseCache cache = NewsResponseCache.getInstalled();
+        final NewsResponseCache.Entry cached = cache != null ? cache.get(requestUrl) : null;
+
+        long fetchStart = System.nanoTime();
+        sRejectedUrls.remove(requestUrl);
         try {
-            url = new URL(stringUrl);
-        } catch (MalformedURLException e) {
-            Log.e(LOG_TAG, "Error with creating URL ", e);
+            return sRequestExecutor.execute(new Callable<List<NewsItem>>() {
+                @Override
+                public List<NewsItem> call() throws IOException {
+                    return fetchNewsItemsOnce(url, requestUrl, cache, cached, listener);
+                }
+            }, priority);
+        } catch (CircuitOpenException e) {
+            Log.w(LOG_TAG, e.getMessage());
+        } catch (IOException e) {
+            FetchMetrics.count(FetchMetrics.COUNT_ERRORS, 1);
+            if (e instanceof HttpStatusException && !((HttpStatusException) e).isRetryable()) {
+                sRejectedUrls.add(requestUrl);
+            }
+            Log.e(LOG_TAG, "Problem retrieving the NewsItems JSON results.", e);
+        } finally {
+            FetchMetrics.recordSince(FetchMetrics.STAGE_FETCH, fetchStart);
         }
-        return url;
+
+        // Serve the cached response rather than nothing
+        if (cached != null) {
+            try {
+                List<NewsItem> newsItems = readCachedNewsItems(cache, cached);
+                FetchMetrics.count(FetchMetrics.COUNT_STALE_SERVED, 1);
+                return newsItems;
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Problem reading the cached response.", e);
+            }
+        }
+        return null;
     }
 
     /**
-     * Make an HTTP request to the given URL and return a String as the response.
+     * Make one attempt at the request of the given URL. Throws an {@link HttpStatusException}
+     * if the server answers with an error.
      */
-    private static String makeHttpRequest(URL url) throws IOException {
-        String jsonResponse = "";
-
-        // If the URL is null, then return early.
-        if (url == null) {
-            return jsonResponse;
+    private static List<NewsItem> fetchNewsItemsOnce(URL url, String requestUrl,
+            NewsResponseCache cache, NewsResponseCache.Entry cached,
+            NewsItemsParser.OnNewsItemListener listener) throws IOException {
+        Map<String, String> requestHeaders = new HashMap<>();
+        if (cached != null) {
+            cache.addConditionalHeaders(cached, requestHeaders);
         }
 
-        HttpURLConnection urlConnection = null;
-        InputStream inputStream = null;
+        NewsHttpClient.Response response = null;
+        NewsResponseCache.Editor editor = null;
+        FetchMetrics.count(FetchMetrics.COUNT_REQUESTS, 1);
         try {
-            urlConnection = (HttpURLConnection) url.openConnection();
-            urlConnection.setReadTimeout(10000 /* milliseconds */);
-            urlConnection.setConnectTimeout(15000 /* milliseconds */);
-            urlConnection.setRequestMethod("GET");
-            urlConnection.connect();
-
-            // If the request was successful (response code 200),
-            // then read the input stream and parse the response.
-            if (urlConnection.getResponseCode() == 200) {
-                inputStream = urlConnection.getInputStream();
-                jsonResponse = readFromStream(inputStream);
+            response = sHttpClient.get(url, requestHeaders);
+            int responseCode = response.getCode();
+
+            if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null) {
+                FetchMetrics.count(FetchMetrics.COUNT_NOT_MODIFIED, 1);
+                // Nothing changed since the cached copy: reuse its NewsItems, or parse it from disk
+                List<NewsItem> parsed = cache.onNotModified(cached);
+                if (parsed != null) {
+                    return new ArrayList<>(parsed);
+                }
+                return readCachedNewsItems(cache, cached);
+            } else if (responseCode == HttpURLConnection.HTTP_OK) {
+                // If the request was successful (response code 200), then parse the input
+                // stream, copying it into the cache on the way
+                InputStream inputStream = response.getBody();
+                if (cache != null) {
+                    editor = cache.edit(requestUrl, response);
+                    inputStream = editor.wrap(inputStream);
+                }
+                long parseStart = System.nanoTime();
+                List<NewsItem> newsItems = parseNewsItems(inputStream, listener);
+                // The streaming parser reads while it parses: split its time into the time spent
+                // waiting for the body and the rest
+                long bodyNanos = System.nanoTime() - parseStart;
+                long readNanos = response.getBodyReadNanos();
+                FetchMetrics.record(FetchMetrics.STAGE_DOWNLOAD, readNanos);
+                FetchMetrics.record(FetchMetrics.STAGE_PARSE, bodyNanos - readNanos);
+                if (editor != null) {
+                    editor.commit(newsItems);
+                    editor = null;
+                }
+                return newsItems;
             } else {
-                Log.e(LOG_TAG, "Error response code: " + urlConnection.getResponseCode());
+                throw newHttpStatusException(response);
             }
-        } catch (IOException e) {
-            Log.e(LOG_TAG, "Problem retrieving the NewsItems JSON results.", e);
         } finally {
-            if (urlConnection != null) {
-                urlConnection.disconnect();
+            if (editor != null) {
+                editor.abort();
             }
-            if (inputStream != null) {
-                inputStream.close();
+            // Closing the response (rather than disconnecting it) lets its connection be reused
+            if (response != null) {
+                response.close();
+                FetchMetrics.count(FetchMetrics.COUNT_BYTES_RECEIVED, response.getBytesReceived());
+                FetchMetrics.count(FetchMetrics.COUNT_BYTES_DECODED, response.getBytesDecoded());
+                recordResponseTiming(response);
             }
         }
-        return jsonResponse;
     }
 
     /**
-     * Convert the {@link InputStream} into a String which contains the
-     * whole JSON response from the server.
+     * Request one article (e.g. .../world/2018/jun/01/...) with show-fields=bodyText and return
+     * its text, or null if the API has none for it. It is made with the background priority,
+     * and waits for a permit of the {@link RequestScheduler} for as long as it takes: a "429 Too
+     * Many Requests" pauses the scheduler and is thrown, so the caller can try again later.
      */
-    private static String readFromStream(InputStream inputStream) throws IOException {
-        StringBuilder output = new StringBuilder();
-        if (inputStream != null) {
-            InputStreamReader inputStreamReader = new InputStreamReader(inputStream, Charset.forName("UTF-8"));
-            BufferedReader reader = new BufferedReader(inputStreamReader);
-            String line = reader.readLine();
-            while (line != null) {
-                output.append(line);
-                line = reader.readLine();
+    public static String fetchArticleBody(String requestUrl) throws IOException {
+        if (!sRequestScheduler.acquire(RequestScheduler.PRIORITY_BACKGROUND,
+                BACKGROUND_PERMIT_TIMEOUT_MILLIS)) {
+            throw new SocketTimeoutException("No request permit for " + requestUrl);
+        }
+        NewsHttpClient.Response response = sHttpClient.get(new URL(requestUrl), null);
+        try {
+            if (response.getCode() == 429) {
+                HttpStatusException e = newHttpStatusException(response);
+                FetchMetrics.count(FetchMetrics.COUNT_RATE_LIMITED, 1);
+                sRequestScheduler.pause(e.getRetryAfterMillis() >= 0
+                        ? e.getRetryAfterMillis() : RequestScheduler.DEFAULT_PAUSE_MILLIS);
+                throw e;
             }
+            if (response.getCode() != HttpURLConnection.HTTP_OK) {
+                return null;
+            }
+            String body = NewsItemsParser.readArticleBody(response.getBody());
+            FetchMetrics.count(FetchMetrics.COUNT_PREFETCHED_BYTES, response.getBytesReceived());
+            return body;
+        } finally {
+            response.close();
+            recordResponseTiming(response);
+        }
+    }
+
+    /**
+     * Return the exception for the unexpected status of the given response, with the time its
+     * Retry-After header asks to wait.
+     */
+    private static HttpStatusException newHttpStatusException(NewsHttpClient.Response response) {
+        return new HttpStatusException(response.getCode(), RequestScheduler.parseRetryAfter(
+                response.getHeader("Retry-After"), System.currentTimeMillis()));
+    }
+
+    /**
+     * Return the NewsItems of a cached response, from memory if they are still there or else
+     * parsed from disk.
+     */
+    private static List<NewsItem> readCachedNewsItems(NewsResponseCache cache,
+            NewsResponseCache.Entry cached) throws IOException {
+        List<NewsItem> parsed = cache.getParsed(cached);
+        if (parsed != null) {
+            return new ArrayList<>(parsed);
         }
-        return output.toString();
+        long parseStart = System.nanoTime();
+        InputStream cachedBody = cache.openBody(cached);
+        try {
+            List<NewsItem> newsItems = parseNewsItems(cachedBody, null);
+            FetchMetrics.recordSince(FetchMetrics.STAGE_PARSE, parseStart);
+            cache.putParsed(cached, newsItems);
+            return newsItems;
+        } finally {
+            cachedBody.close();
+        }
+    }
+
+    /**
+     * Parse the NewsItems of a JSON response with the selected parser. Only the streaming parser
+     * hands them to the listener (if not null), as it reads them.
+     */
+    private static List<NewsItem> parseNewsItems(InputStream inputStream,
+            NewsItemsParser.OnNewsItemListener listener) throws IOException {
+        if (sUseStreamingParser) {
+            return NewsItemsParser.readNewsItems(inputStream, listener);
+        }
+        // Read the whole response into a String and parse it as a JSONObject tree
+        return NewsItemsParser.extractNewsItems(NewsItemsParser.readFromStream(inputStream));
+    }
+
+    /**
+     * Returns new URL object from the given string URL.
+     */
+    private static URL createUrl(String stringUrl) {
+        URL url = null;
+        try {
+            url = new URL(stringUrl);
+        } catch (MalformedURLException e) {
+            Log.e(LOG_TAG, "Error with creating URL ", e);
+        }
+        return url;
     }
 }
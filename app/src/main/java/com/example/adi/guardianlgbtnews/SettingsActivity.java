@@ -2,12 +2,18 @@ package com.example.adi.guardianlgbtnews;
 
 import android.content.SharedPreferences;
 import android.preference.ListPreference;
+import android.preference.MultiSelectListPreference;
 import android.preference.Preference;
 import android.preference.PreferenceFragment;
 import android.preference.PreferenceManager;
 import android.support.annotation.Nullable;
 import android.support.v7.app.AppCompatActivity;
 import android.os.Bundle;
+import android.text.TextUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
 
 public class SettingsActivity extends AppCompatActivity {
 
@@ -28,11 +34,46 @@ public class SettingsActivity extends AppCompatActivity {
             bindPreferenceSummaryToValue(numArticles);
             Preference orderBy = findPreference(getString(R.string.settings_order_by_key));
             bindPreferenceSummaryToValue(orderBy);
+            Preference topics = findPreference(getString(R.string.settings_topics_key));
+            bindPreferenceSummaryToValue(topics);
+            Preference prefetchDistance = findPreference(getString(R.string.settings_prefetch_distance_key));
+            bindPreferenceSummaryToValue(prefetchDistance);
+            Preference freshness = findPreference(getString(R.string.settings_freshness_key));
+            bindPreferenceSummaryToValue(freshness);
+            Preference prefetchCount = findPreference(getString(R.string.settings_prefetch_count_key));
+            bindPreferenceSummaryToValue(prefetchCount);
+            Preference prefetchBudget = findPreference(getString(R.string.settings_prefetch_budget_key));
+            bindPreferenceSummaryToValue(prefetchBudget);
+
+            // Only debug builds can be pointed at another server, e.g. a local stand-in, and
+            // show the frame timing
+            Preference baseUrl = findPreference(getString(R.string.settings_base_url_key));
+            if (BuildConfig.DEBUG) {
+                bindPreferenceSummaryToValue(baseUrl);
+            } else {
+                getPreferenceScreen().removePreference(baseUrl);
+                getPreferenceScreen().removePreference(
+                        findPreference(getString(R.string.settings_frame_overlay_key)));
+            }
         }
 
         // This method takes care of updating the displayed preference summary after it has been changed
         @Override
         public boolean onPreferenceChange(Preference preference, Object newValue) {
+            if (preference instanceof MultiSelectListPreference) {
+                // Show the labels of all the selected values
+                MultiSelectListPreference multiSelectPreference = (MultiSelectListPreference) preference;
+                CharSequence[] labels = multiSelectPreference.getEntries();
+                List<CharSequence> selectedLabels = new ArrayList<>();
+                for (Object value : (Set<?>) newValue) {
+                    int prefIndex = multiSelectPreference.findIndexOfValue(value.toString());
+                    if (prefIndex >= 0) {
+                        selectedLabels.add(labels[prefIndex]);
+                    }
+                }
+                preference.setSummary(TextUtils.join(", ", selectedLabels));
+                return true;
+            }
             String stringValue = newValue.toString();
             if (preference instanceof ListPreference){
                 ListPreference listPreference = (ListPreference) preference;
@@ -41,6 +82,10 @@ public class SettingsActivity extends AppCompatActivity {
                     CharSequence[] labels = listPreference.getEntries();
                     preference.setSummary(labels[prefIndex]);
                 }
+            } else if (stringValue.isEmpty()
+                    && preference.getKey().equals(getString(R.string.settings_base_url_key))) {
+                // No url set means the default one
+                preference.setSummary(BuildConfig.GUARDIAN_BASE_URL);
             } else {
                 preference.setSummary(stringValue);
             }
@@ -53,6 +98,12 @@ public class SettingsActivity extends AppCompatActivity {
         private void bindPreferenceSummaryToValue(Preference preference) {
             preference.setOnPreferenceChangeListener(this);
             SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(preference.getContext());
+            if (preference instanceof MultiSelectListPreference) {
+                Set<String> preferenceValues = preferences.getStringSet(preference.getKey(),
+                        ((MultiSelectListPreference) preference).getValues());
+                onPreferenceChange(preference, preferenceValues);
+                return;
+            }
             String preferenceString = preferences.getString(preference.getKey(), "");
             onPreferenceChange(preference, preferenceString);
         }
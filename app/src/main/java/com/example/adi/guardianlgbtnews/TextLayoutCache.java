@@ -0,0 +1,157 @@
+package com.example.adi.guardianlgbtnews;
+
+import android.content.ComponentCallbacks2;
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+import android.util.LruCache;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A bounded cache of the text layouts of the list rows, so a row being bound doesn't measure
+ * and break its text into lines on the UI thread. The layouts are built on a background thread
+ * as soon as a list arrives, with the text styles of the row (see {@link #setStyle}), and
+ * looked up by {@link LayoutTextView} when it is measured; only a miss is built on the spot.
+ * <p>
+ * A layout is keyed by the field it is for, the width it was built for and its text, so the
+ * rows of the same section or date share theirs, and a changed title gets a new one.
+ */
+public final class TextLayoutCache {
+
+    // The fields of a row, which each have their own style
+    public static final int FIELD_TITLE = 0;
+    public static final int FIELD_AUTHOR = 1;
+    public static final int FIELD_SECTION = 2;
+    public static final int FIELD_DATE = 3;
+    private static final int FIELD_COUNT = 4;
+
+    // The 4 fields of a couple hundred rows, e.g. a full list at two widths
+    private static final int MAX_LAYOUTS = 800;
+
+    // The layouts of all the caches are built one after the other on this background thread
+    private static final Executor sLayoutExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "TextLayout");
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    });
+
+    // States
+    private final LruCache<String, Layout> mLayouts = new LruCache<>(MAX_LAYOUTS);
+    // The paint of each field, used on the UI thread, and a copy of it the background thread
+    // copies again for every layout it builds
+    private final TextPaint[] mPaints = new TextPaint[FIELD_COUNT];
+    private final TextPaint[] mBackgroundPaints = new TextPaint[FIELD_COUNT];
+    private volatile boolean mStyled;
+
+    /**
+     * Set the text style of the given field, from a view of the row showing it. Until every
+     * field has one, nothing can be precomputed. Only called from the UI thread.
+     */
+    public synchronized void setStyle(int field, TextPaint paint) {
+        mPaints[field] = paint;
+        mBackgroundPaints[field] = copyOf(paint);
+        boolean styled = true;
+        for (TextPaint fieldPaint : mPaints) {
+            styled &= fieldPaint != null;
+        }
+        mStyled = styled;
+    }
+
+    /**
+     * Return whether every field has a style, so layouts can be precomputed.
+     */
+    public boolean isStyled() {
+        return mStyled;
+    }
+
+    /**
+     * Return the layout of the given text, from the cache if it was precomputed, or else built
+     * now with the given paint (the view's own). Only called from the UI thread.
+     *
+     * @param width - the width available to the text
+     * @param fill  - whether the layout takes all the width, or only what the text needs
+     * @param paint - the paint to build a missing layout with
+     */
+    public Layout get(int field, CharSequence text, int width, boolean fill, TextPaint paint) {
+        String key = keyOf(field, text, width, fill);
+        Layout layout = mLayouts.get(key);
+        if (layout != null) {
+            FetchMetrics.count(FetchMetrics.COUNT_LAYOUT_HITS, 1);
+            return layout;
+        }
+        FetchMetrics.count(FetchMetrics.COUNT_LAYOUT_MISSES, 1);
+        layout = build(text, paint, width, fill);
+        mLayouts.put(key, layout);
+        return layout;
+    }
+
+    /**
+     * Build the layout of the given text unless it is cached, and return it. Only called from
+     * the runnables given to {@link #execute(Runnable)}, once {@link #isStyled()}.
+     */
+    public Layout precompute(int field, CharSequence text, int width, boolean fill) {
+        String key = keyOf(field, text, width, fill);
+        Layout layout = mLayouts.get(key);
+        if (layout == null) {
+            // A layout keeps its paint to draw with on the UI thread, and a Paint isn't
+            // thread-safe, so each one gets its own rather than the one used for the next build
+            TextPaint paint;
+            synchronized (this) {
+                paint = copyOf(mBackgroundPaints[field]);
+            }
+            layout = build(text, paint, width, fill);
+            mLayouts.put(key, layout);
+        }
+        return layout;
+    }
+
+    /**
+     * Run the given precomputation on the background thread of the caches.
+     */
+    public void execute(Runnable precomputation) {
+        sLayoutExecutor.execute(precomputation);
+    }
+
+    /**
+     * Release memory as asked by {@link ComponentCallbacks2#onTrimMemory(int)}, as the
+     * {@link ImageLoader} does: half of the layouts when memory is getting low, all of them when
+     * the process is likely to be killed.
+     */
+    public void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            mLayouts.evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            mLayouts.trimToSize(mLayouts.maxSize() / 2);
+        }
+    }
+
+    private static Layout build(CharSequence text, TextPaint paint, int width, boolean fill) {
+        int layoutWidth = Math.max(0, width);
+        if (!fill) {
+            // Only as wide as the longest line, as a wrap_content TextView would be
+            layoutWidth = Math.min(layoutWidth, (int) Math.ceil(Layout.getDesiredWidth(text, paint)));
+        }
+        // The constructor works on every API level the app supports, unlike StaticLayout.Builder
+        return new StaticLayout(text, paint, layoutWidth, Layout.Alignment.ALIGN_NORMAL,
+                1f, 0f, true);
+    }
+
+    // A copy of the given paint, including its density, which the copy constructor drops
+    private static TextPaint copyOf(TextPaint paint) {
+        TextPaint copy = new TextPaint(paint);
+        copy.density = paint.density;
+        return copy;
+    }
+
+    private static String keyOf(int field, CharSequence text, int width, boolean fill) {
+        return field + (fill ? "=" : "<") + width + ':' + text;
+    }
+}
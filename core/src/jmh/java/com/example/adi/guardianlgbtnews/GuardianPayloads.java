@@ -0,0 +1,96 @@
+package com.example.adi.guardianlgbtnews;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Builds synthetic Guardian search responses shaped like the real ones (the same fields and
+ * roughly the same string lengths), so the parsers can be benchmarked without a network.
+ */
+final class GuardianPayloads {
+
+    private static final String[] SECTIONS = {"World news", "Opinion", "Society", "Sport",
+            "Culture", "US news", "Australia news", "Life and style"};
+
+    private static final String[] WORDS = {"pride", "rights", "march", "court", "equality",
+            "community", "trans", "marriage", "vote", "city", "health", "history", "law", "young"};
+
+    private GuardianPayloads() {
+    }
+
+    /**
+     * Return a search response holding the given number of results. The same seed always
+     * builds the same response.
+     */
+    static String response(int results, long seed) {
+        Random random = new Random(seed);
+        StringBuilder json = new StringBuilder(results * 700 + 200);
+        json.append("{\"response\":{\"status\":\"ok\",\"userTier\":\"developer\",\"total\":")
+                .append(results)
+                .append(",\"startIndex\":1,\"pageSize\":").append(results)
+                .append(",\"currentPage\":1,\"pages\":1,\"orderBy\":\"newest\",\"results\":[");
+        for (int i = 0; i < results; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            String section = SECTIONS[random.nextInt(SECTIONS.length)];
+            String slug = words(random, 5).replace(' ', '-');
+            String author = capitalize(WORDS[random.nextInt(WORDS.length)]) + " "
+                    + capitalize(WORDS[random.nextInt(WORDS.length)]);
+            json.append("{\"id\":\"world/2018/jun/01/").append(slug).append('-').append(i)
+                    .append("\",\"type\":\"article\",\"sectionId\":\"world\",\"sectionName\":\"")
+                    .append(section)
+                    .append("\",\"webPublicationDate\":\"2018-06-")
+                    .append(String.format("%02d", 1 + random.nextInt(28)))
+                    .append("T1").append(random.nextInt(10)).append(":00:00Z\",\"webTitle\":\"")
+                    .append(capitalize(words(random, 8))).append(" | ").append(author)
+                    .append("\",\"webUrl\":\"https://www.theguardian.com/world/2018/jun/01/")
+                    .append(slug).append('-').append(i)
+                    .append("\",\"apiUrl\":\"https://content.guardianapis.com/world/2018/jun/01/")
+                    .append(slug).append('-').append(i)
+                    .append("\",\"fields\":{\"byline\":\"").append(author)
+                    .append("\"},\"isHosted\":false,\"pillarId\":\"pillar/news\",\"pillarName\":\"News\"}");
+        }
+        json.append("]}}");
+        return json.toString();
+    }
+
+    /**
+     * Return the UTF-8 bytes of the given response.
+     */
+    static byte[] bytes(String response) {
+        return response.getBytes(Charset.forName("UTF-8"));
+    }
+
+    /**
+     * Return the given bytes gzip-compressed, as a server sending Content-Encoding gzip would.
+     */
+    static byte[] gzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(bytes.length / 4);
+        GZIPOutputStream gzip = new GZIPOutputStream(output);
+        try {
+            gzip.write(bytes);
+        } finally {
+            gzip.close();
+        }
+        return output.toByteArray();
+    }
+
+    private static String words(Random random, int count) {
+        StringBuilder words = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                words.append(' ');
+            }
+            words.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return words.toString();
+    }
+
+    private static String capitalize(String word) {
+        return Character.toUpperCase(word.charAt(0)) + word.substring(1);
+    }
+}
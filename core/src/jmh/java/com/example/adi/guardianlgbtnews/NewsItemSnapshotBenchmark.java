@@ -0,0 +1,56 @@
+package com.example.adi.guardianlgbtnews;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares reading the cold start snapshot with parsing the JSON response it was made from.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class NewsItemSnapshotBenchmark {
+
+    @Param({"10", "100", "500"})
+    public int results;
+
+    // The response, and the snapshot of its NewsItems
+    private byte[] mBody;
+    private File mSnapshotFile;
+
+    @Setup
+    public void setUp() throws IOException {
+        mBody = GuardianPayloads.bytes(GuardianPayloads.response(results, 42));
+        mSnapshotFile = File.createTempFile("snapshot", ".bin");
+        NewsItemSnapshot.write(mSnapshotFile, "tag",
+                NewsItemsParser.readNewsItems(new ByteArrayInputStream(mBody)));
+    }
+
+    @TearDown
+    public void tearDown() {
+        mSnapshotFile.delete();
+    }
+
+    @Benchmark
+    public List<NewsItem> readSnapshot() throws IOException {
+        return NewsItemSnapshot.read(mSnapshotFile, "tag").getNewsItems();
+    }
+
+    @Benchmark
+    public List<NewsItem> parseJson() throws IOException {
+        return NewsItemsParser.readNewsItems(new ByteArrayInputStream(mBody));
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.adi.guardianlgbtnews;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Compares the streaming parser with the String plus JSONObject one, over responses of
+ * increasing size. Run with ./gradlew :core:jmh; the gc profiler adds the allocation rate
+ * (gc.alloc.rate.norm is the number of bytes allocated per parsed response).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class NewsItemsParserBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    public int results;
+
+    // The response bodies, built once for each size
+    private byte[] mBody;
+    private byte[] mGzippedBody;
+
+    @Setup
+    public void setUp() throws IOException {
+        mBody = GuardianPayloads.bytes(GuardianPayloads.response(results, 42));
+        mGzippedBody = GuardianPayloads.gzip(mBody);
+    }
+
+    @Benchmark
+    public List<NewsItem> streaming() throws IOException {
+        return NewsItemsParser.readNewsItems(new ByteArrayInputStream(mBody));
+    }
+
+    @Benchmark
+    public List<NewsItem> jsonObject() throws IOException {
+        return NewsItemsParser.extractNewsItems(
+                NewsItemsParser.readFromStream(new ByteArrayInputStream(mBody)));
+    }
+
+    // The same parsers reading a gzip-compressed body, as they do in the app
+    @Benchmark
+    public List<NewsItem> streamingGzip() throws IOException {
+        return NewsItemsParser.readNewsItems(
+                new GZIPInputStream(new ByteArrayInputStream(mGzippedBody)));
+    }
+
+    @Benchmark
+    public List<NewsItem> jsonObjectGzip() throws IOException {
+        return NewsItemsParser.extractNewsItems(NewsItemsParser.readFromStream(
+                new GZIPInputStream(new ByteArrayInputStream(mGzippedBody))));
+    }
+}
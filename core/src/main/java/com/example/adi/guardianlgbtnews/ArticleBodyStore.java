@@ -0,0 +1,254 @@
+package com.example.adi.guardianlgbtnews;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps the bodies of articles for offline reading in one append-only file, indexed by their
+ * webUrl. The file is memory-mapped, so reading a body is a lookup and a copy out of the page
+ * cache, fast enough to do on the UI thread.
+ * <p>
+ * The file holds, in big-endian order:
+ * <pre>
+ * int magic, int version
+ * record*: int urlByteCount, byte[urlByteCount], int bodyByteCount, byte[bodyByteCount]  (UTF-8)
+ * </pre>
+ * A body saved again for the same url is appended, and the older record is only dropped when
+ * the file is compacted. A record cut short by a crash is cut off when the file is opened.
+ */
+public final class ArticleBodyStore implements Closeable {
+
+    private static final int MAGIC = 0x47414231; // "GAB1"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // States
+    private final File mFile;
+    private RandomAccessFile mRandomAccessFile;
+    private FileChannel mChannel;
+    // The mapping of the file, remapped when a read goes past its end
+    private MappedByteBuffer mMapped;
+    // Offset of the bodyByteCount of the latest record of every url, in the order they were saved
+    private final LinkedHashMap<String, Long> mBodyOffsets = new LinkedHashMap<>();
+    private long mSize;
+    // Bytes of the header and of the latest records, the rest being replaced records
+    private long mLiveSize;
+
+    private ArticleBodyStore(File file) {
+        mFile = file;
+    }
+
+    /**
+     * Open the store in the given file, creating it if needed.
+     */
+    public static ArticleBodyStore open(File file) throws IOException {
+        ArticleBodyStore store = new ArticleBodyStore(file);
+        store.openFile();
+        return store;
+    }
+
+    /**
+     * Return whether a body is saved for the given url.
+     */
+    public synchronized boolean contains(String url) {
+        return mBodyOffsets.containsKey(url);
+    }
+
+    /**
+     * Return the body saved for the given url, or null if there is none.
+     */
+    public synchronized String get(String url) throws IOException {
+        Long offset = mBodyOffsets.get(url);
+        if (offset == null) {
+            return null;
+        }
+        int position = (int) (long) offset;
+        int length = mapped(position + 4).getInt(position);
+        ByteBuffer buffer = mapped(position + 4 + length).duplicate();
+        buffer.position(position + 4);
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    /**
+     * Save the body of the given url at the end of the file.
+     */
+    public synchronized void append(String url, String body) throws IOException {
+        byte[] urlBytes = url.getBytes(UTF_8);
+        byte[] bodyBytes = body.getBytes(UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(recordSize(urlBytes.length, bodyBytes.length));
+        record.putInt(urlBytes.length).put(urlBytes).putInt(bodyBytes.length).put(bodyBytes);
+        record.flip();
+        long offset = mSize;
+        while (record.hasRemaining()) {
+            mChannel.write(record, offset + record.position());
+        }
+        mSize += record.limit();
+        index(url, urlBytes.length, offset + 4 + urlBytes.length, bodyBytes.length);
+    }
+
+    /**
+     * Return the size the file would be after {@link #append(String, String)} saved the given
+     * body, e.g. to check it against a budget first.
+     */
+    public synchronized long getSizeAfterAppend(String url, String body) {
+        return mSize + recordSize(url.getBytes(UTF_8).length, body.getBytes(UTF_8).length);
+    }
+
+    /**
+     * Return the average size of the records of the latest bodies, or the given default if
+     * there are none.
+     */
+    public synchronized long getAverageRecordSize(long defaultSize) {
+        return mBodyOffsets.isEmpty() ? defaultSize
+                : (mLiveSize - HEADER_SIZE) / mBodyOffsets.size();
+    }
+
+    private static int recordSize(int urlByteCount, int bodyByteCount) {
+        return 4 + urlByteCount + 4 + bodyByteCount;
+    }
+
+    /**
+     * Rewrite the file with only the latest bodies of the given urls, dropping the others and
+     * the records replaced by a newer one.
+     */
+    public synchronized void retainOnly(Collection<String> urls) throws IOException {
+        if (mLiveSize == mSize && urls.containsAll(mBodyOffsets.keySet())) {
+            // Nothing to drop
+            return;
+        }
+        Map<String, String> kept = new LinkedHashMap<>();
+        for (String url : mBodyOffsets.keySet()) {
+            if (urls.contains(url)) {
+                kept.put(url, get(url));
+            }
+        }
+
+        // Write the kept records to a new file, then swap it in
+        File tempFile = new File(mFile.getPath() + ".tmp");
+        tempFile.delete();
+        ArticleBodyStore compacted = open(tempFile);
+        try {
+            for (Map.Entry<String, String> entry : kept.entrySet()) {
+                compacted.append(entry.getKey(), entry.getValue());
+            }
+        } finally {
+            compacted.close();
+        }
+        close();
+        if (!tempFile.renameTo(mFile)) {
+            tempFile.delete();
+            openFile();
+            throw new IOException("Couldn't replace " + mFile);
+        }
+        openFile();
+    }
+
+    /**
+     * Return the size of the file in bytes, including the replaced records.
+     */
+    public synchronized long getSize() {
+        return mSize;
+    }
+
+    public synchronized int getCount() {
+        return mBodyOffsets.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        mMapped = null;
+        mBodyOffsets.clear();
+        if (mRandomAccessFile != null) {
+            mRandomAccessFile.close();
+            mRandomAccessFile = null;
+            mChannel = null;
+        }
+    }
+
+    // Open the file and index its records, writing the header of a new file
+    private void openFile() throws IOException {
+        mRandomAccessFile = new RandomAccessFile(mFile, "rw");
+        mChannel = mRandomAccessFile.getChannel();
+        mSize = mChannel.size();
+        if (mSize < HEADER_SIZE || !hasHeader()) {
+            // A new file, or a foreign one: start over
+            mChannel.truncate(0);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).flip();
+            mChannel.write(header, 0);
+            mSize = HEADER_SIZE;
+        }
+        mMapped = null;
+        mLiveSize = HEADER_SIZE;
+        readIndex();
+    }
+
+    private boolean hasHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        mChannel.read(header, 0);
+        header.flip();
+        return header.getInt() == MAGIC && header.getInt() == VERSION;
+    }
+
+    // Index every complete record, and cut off a last one that isn't
+    private void readIndex() throws IOException {
+        mBodyOffsets.clear();
+        ByteBuffer buffer = mapped(mSize);
+        long offset = HEADER_SIZE;
+        while (offset + 4 <= mSize) {
+            int urlLength = buffer.getInt((int) offset);
+            if (urlLength < 0 || offset + 4 + urlLength + 4 > mSize) {
+                break;
+            }
+            byte[] urlBytes = new byte[urlLength];
+            ByteBuffer urlBuffer = buffer.duplicate();
+            urlBuffer.position((int) offset + 4);
+            urlBuffer.get(urlBytes);
+            long bodyOffset = offset + 4 + urlLength;
+            int bodyLength = buffer.getInt((int) bodyOffset);
+            if (bodyLength < 0 || bodyOffset + 4 + bodyLength > mSize) {
+                break;
+            }
+            index(new String(urlBytes, UTF_8), urlLength, bodyOffset, bodyLength);
+            offset = bodyOffset + 4 + bodyLength;
+        }
+        if (offset != mSize) {
+            mChannel.truncate(offset);
+            mSize = offset;
+            mMapped = null;
+        }
+    }
+
+    // Make the record at the given offset the latest one of its url, which moves to the end of
+    // the order
+    private void index(String url, int urlLength, long bodyOffset, int bodyLength) throws IOException {
+        Long replaced = mBodyOffsets.remove(url);
+        if (replaced != null) {
+            int position = (int) (long) replaced;
+            mLiveSize -= 8 + urlLength + mapped(position + 4).getInt(position);
+        }
+        mBodyOffsets.put(url, bodyOffset);
+        mLiveSize += 8 + urlLength + bodyLength;
+    }
+
+    // Return a mapping of the file covering at least the given number of bytes
+    private MappedByteBuffer mapped(long size) throws IOException {
+        if (mMapped == null || mMapped.capacity() < size) {
+            mMapped = mChannel.map(FileChannel.MapMode.READ_ONLY, 0, mSize);
+        }
+        return mMapped;
+    }
+}
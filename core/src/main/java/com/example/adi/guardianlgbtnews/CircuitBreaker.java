@@ -0,0 +1,96 @@
+package com.example.adi.guardianlgbtnews;
+
+/**
+ * A circuit breaker for the requests to one API. After FAILURE_THRESHOLD failures in a row it
+ * opens, and requests fail right away (so cached data can be shown instead of a spinner) until
+ * OPEN_MILLIS have passed. Then a single trial request is let through: its success closes the
+ * breaker, its failure opens it again.
+ */
+public final class CircuitBreaker {
+
+    // Default limits
+    public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    public static final long DEFAULT_OPEN_MILLIS = 30000;
+
+    // The states of the breaker
+    public static final int CLOSED = 0;
+    public static final int OPEN = 1;
+    public static final int HALF_OPEN = 2;
+
+    // States
+    private final int mFailureThreshold;
+    private final long mOpenMillis;
+    private int mState = CLOSED;
+    private int mConsecutiveFailures;
+    private long mOpenedAt;
+    private boolean mTrialInFlight;
+
+    // Constructor
+    public CircuitBreaker() {
+        this(DEFAULT_FAILURE_THRESHOLD, DEFAULT_OPEN_MILLIS);
+    }
+
+    public CircuitBreaker(int failureThreshold, long openMillis) {
+        mFailureThreshold = failureThreshold;
+        mOpenMillis = openMillis;
+    }
+
+    /**
+     * Check whether a request may be made now. Throws a {@link CircuitOpenException} if not.
+     */
+    public synchronized void acquire() throws CircuitOpenException {
+        if (mState == OPEN) {
+            long openFor = now() - mOpenedAt;
+            if (openFor < mOpenMillis) {
+                throw new CircuitOpenException(mOpenMillis - openFor);
+            }
+            mState = HALF_OPEN;
+        }
+        if (mState == HALF_OPEN) {
+            // Only one trial request at a time
+            if (mTrialInFlight) {
+                throw new CircuitOpenException(0);
+            }
+            mTrialInFlight = true;
+        }
+    }
+
+    /**
+     * Record that a request succeeded.
+     */
+    public synchronized void onSuccess() {
+        mState = CLOSED;
+        mConsecutiveFailures = 0;
+        mTrialInFlight = false;
+    }
+
+    /**
+     * Record that a request failed in a way that points to the API (not the request) being
+     * broken.
+     */
+    public synchronized void onFailure() {
+        mConsecutiveFailures++;
+        if (mState == HALF_OPEN || mConsecutiveFailures >= mFailureThreshold) {
+            mState = OPEN;
+            mOpenedAt = now();
+        }
+        mTrialInFlight = false;
+    }
+
+    /**
+     * Record that a request ended without telling anything about the API, e.g. it was
+     * rejected as a bad request.
+     */
+    public synchronized void onNeutral() {
+        mTrialInFlight = false;
+    }
+
+    public synchronized int getState() {
+        return mState;
+    }
+
+    // Elapsed time in milliseconds
+    private static long now() {
+        return System.nanoTime() / 1000000;
+    }
+}
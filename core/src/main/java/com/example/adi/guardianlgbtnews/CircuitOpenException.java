@@ -0,0 +1,15 @@
+package com.example.adi.guardianlgbtnews;
+
+import java.io.IOException;
+
+/**
+ * Thrown instead of making a request while the {@link CircuitBreaker} is open.
+ */
+public class CircuitOpenException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public CircuitOpenException(long retryInMillis) {
+        super("The API is failing; requests are paused for " + retryInMillis + "ms");
+    }
+}
@@ -0,0 +1,232 @@
+package com.example.adi.guardianlgbtnews;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The app's latency and byte metrics: a rolling {@link LatencyHistogram} for each stage of
+ * getting the news on screen, and a counter for each kind of byte or event. Everything can be
+ * written as a JSON snapshot, so runs of different releases can be compared.
+ */
+public final class FetchMetrics {
+
+    // Stages of a request, timed by NewsHttpClient and QueryUtils
+    /** Opening the connection: DNS, TCP and TLS, or nothing if a kept-alive one is reused */
+    public static final String STAGE_CONNECT = "connect";
+    /** From sending the request to receiving the status line and headers */
+    public static final String STAGE_FIRST_BYTE = "first_byte";
+    /** Waiting for the body to be received and decompressed */
+    public static final String STAGE_DOWNLOAD = "download";
+    /** Parsing the body into NewsItems, without the time spent waiting for it */
+    public static final String STAGE_PARSE = "parse";
+    /** The whole request of one url */
+    public static final String STAGE_FETCH = "fetch";
+
+    // Stages of the app, timed by MainActivity and NewsItemsAdapter
+    /** A run of the news loader, all the requests of a fan-out and their merging included */
+    public static final String STAGE_LOAD = "load";
+    /** From a loaded list being handed to the UI to it being displayed (diff included) */
+    public static final String STAGE_DISPLAY = "display";
+    /** Binding one NewsItem to a row */
+    public static final String STAGE_BIND = "bind";
+    /** Reading the snapshot of the last list at start up */
+    public static final String STAGE_SNAPSHOT_READ = "snapshot_read";
+    /** From the activity's creation to the first list shown, if it was the saved one */
+    public static final String STAGE_FIRST_CONTENT_CACHED = "first_content_cached";
+    /** From the activity's creation to the first list shown, if it came from the network */
+    public static final String STAGE_FIRST_CONTENT_NETWORK = "first_content_network";
+    /** From the activity's creation to the first rows shown while the response was downloading */
+    public static final String STAGE_FIRST_CONTENT_PROGRESSIVE = "first_content_progressive";
+    /** Getting a thumbnail that isn't in memory (from disk or the network) and decoding it */
+    public static final String STAGE_IMAGE_LOAD = "image_load";
+    /** Reading a saved article body and showing it in the reader */
+    public static final String STAGE_READER_OPEN = "reader_open";
+    /** From a loaded list being handed to the UI to the first frame drawn with it */
+    public static final String STAGE_LOAD_TO_DRAW = "load_to_draw";
+    /** The time between two frames of a scroll of the list, timed by a JankTracker */
+    public static final String STAGE_FRAME = "frame";
+
+    // Stages of the RequestScheduler
+    /** Waiting for a permit to make a request the user is waiting for */
+    public static final String STAGE_QUEUE_WAIT_FOREGROUND = "queue_wait_foreground";
+    /** Waiting for a permit to make a sync or prefetch request */
+    public static final String STAGE_QUEUE_WAIT_BACKGROUND = "queue_wait_background";
+
+    // Counters
+    public static final String COUNT_REQUESTS = "requests";
+    public static final String COUNT_NOT_MODIFIED = "not_modified";
+    public static final String COUNT_ERRORS = "errors";
+    /** Body bytes as received, i.e. compressed if the response was gzipped */
+    public static final String COUNT_BYTES_RECEIVED = "bytes_received";
+    /** Body bytes once decompressed */
+    public static final String COUNT_BYTES_DECODED = "bytes_decoded";
+    // Counters of the NewsResponseCache (its hits are the COUNT_NOT_MODIFIED responses)
+    /** Requests sent with the validators of a cached response */
+    public static final String COUNT_CACHE_REVALIDATIONS = "cache_revalidations";
+    /** Fresh responses stored in the cache */
+    public static final String COUNT_CACHE_MISSES = "cache_misses";
+    /** Body bytes not downloaded again thanks to a 304 */
+    public static final String COUNT_CACHE_BYTES_SAVED = "cache_bytes_saved";
+    // Counters of ResilientExecutor
+    public static final String COUNT_RETRIES = "retries";
+    public static final String COUNT_HEDGES = "hedges";
+    /** Hedged attempts that succeeded before the attempt they were hedging */
+    public static final String COUNT_HEDGE_WINS = "hedge_wins";
+    /** Requests not made because the circuit breaker was open */
+    public static final String COUNT_SHORT_CIRCUITED = "short_circuited";
+    /** Cached responses served because the request failed */
+    public static final String COUNT_STALE_SERVED = "stale_served";
+    /** Requests that had to wait for a permit of the RequestScheduler */
+    public static final String COUNT_QUEUED = "queued";
+    /** Responses "429 Too Many Requests" */
+    public static final String COUNT_RATE_LIMITED = "rate_limited";
+    // Counters of ImageLoader
+    public static final String COUNT_IMAGE_MEMORY_HITS = "image_memory_hits";
+    public static final String COUNT_IMAGE_DISK_HITS = "image_disk_hits";
+    public static final String COUNT_IMAGE_DOWNLOADS = "image_downloads";
+    /** Loads cancelled because their row was recycled before the image was shown */
+    public static final String COUNT_IMAGE_CANCELLED = "image_cancelled";
+    // Counters of the scrolls of the list
+    public static final String COUNT_SCROLLS = "scrolls";
+    public static final String COUNT_FRAMES = "frames";
+    /** Frames that missed their deadline */
+    public static final String COUNT_JANKY_FRAMES = "janky_frames";
+    /** Refresh intervals where the last frame was shown again, as a janky frame missed them */
+    public static final String COUNT_DROPPED_FRAMES = "dropped_frames";
+    // Counters of the TextLayoutCache: row text layouts found precomputed, or built on binding
+    public static final String COUNT_LAYOUT_HITS = "layout_hits";
+    public static final String COUNT_LAYOUT_MISSES = "layout_misses";
+    // Counters of the article body prefetch
+    public static final String COUNT_PREFETCHED_ARTICLES = "prefetched_articles";
+    /** Body bytes received by the prefetch, as counted against its budget */
+    public static final String COUNT_PREFETCHED_BYTES = "prefetched_bytes";
+
+    private static final ConcurrentHashMap<String, LatencyHistogram> sHistograms =
+            new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, AtomicLong> sCounters =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Create a private constructor because no one should ever create a {@link FetchMetrics}
+     * object. This class is only meant to hold static methods.
+     */
+    private FetchMetrics() {
+    }
+
+    /**
+     * Record how long one run of the given stage took, in nanoseconds.
+     */
+    public static void record(String stage, long nanos) {
+        getHistogram(stage).record(nanos);
+    }
+
+    /**
+     * Record the time since the given System.nanoTime() value as one run of the given stage.
+     */
+    public static void recordSince(String stage, long startNanos) {
+        record(stage, System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Add the given amount to the given counter.
+     */
+    public static void count(String counter, long delta) {
+        AtomicLong value = sCounters.get(counter);
+        if (value == null) {
+            AtomicLong created = new AtomicLong();
+            value = sCounters.putIfAbsent(counter, created);
+            if (value == null) {
+                value = created;
+            }
+        }
+        value.addAndGet(delta);
+    }
+
+    public static LatencyHistogram getHistogram(String stage) {
+        LatencyHistogram histogram = sHistograms.get(stage);
+        if (histogram == null) {
+            LatencyHistogram created = new LatencyHistogram();
+            histogram = sHistograms.putIfAbsent(stage, created);
+            if (histogram == null) {
+                histogram = created;
+            }
+        }
+        return histogram;
+    }
+
+    public static long getCount(String counter) {
+        AtomicLong value = sCounters.get(counter);
+        return value == null ? 0 : value.get();
+    }
+
+    /**
+     * Forget every sample and counter.
+     */
+    public static void reset() {
+        for (LatencyHistogram histogram : sHistograms.values()) {
+            histogram.reset();
+        }
+        sCounters.clear();
+    }
+
+    /**
+     * Return a JSON snapshot of every stage (count, mean, p50, p95, p99 and max in
+     * milliseconds) and counter, sorted by name.
+     *
+     * @param info extra values identifying the run, e.g. the app version and device (can be null)
+     */
+    public static String toJson(Map<String, String> info) {
+        StringWriter json = new StringWriter();
+        JsonWriter writer = new JsonWriter(json);
+        writer.setIndent("  ");
+        try {
+            writer.beginObject();
+            writer.name("timestamp").value(System.currentTimeMillis());
+            if (info != null) {
+                writer.name("info").beginObject();
+                for (Map.Entry<String, String> entry : new TreeMap<>(info).entrySet()) {
+                    writer.name(entry.getKey()).value(entry.getValue());
+                }
+                writer.endObject();
+            }
+
+            writer.name("stages").beginObject();
+            for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<>(sHistograms).entrySet()) {
+                LatencyHistogram.Snapshot snapshot = entry.getValue().snapshot();
+                writer.name(entry.getKey()).beginObject();
+                writer.name("count").value(snapshot.getCount());
+                writer.name("window").value(snapshot.getWindowSize());
+                writer.name("mean_ms").value(toMillis(snapshot.getMeanNanos()));
+                writer.name("p50_ms").value(toMillis(snapshot.getPercentile(50)));
+                writer.name("p95_ms").value(toMillis(snapshot.getPercentile(95)));
+                writer.name("p99_ms").value(toMillis(snapshot.getPercentile(99)));
+                writer.name("max_ms").value(toMillis(snapshot.getMaxNanos()));
+                writer.endObject();
+            }
+            writer.endObject();
+
+            writer.name("counters").beginObject();
+            for (Map.Entry<String, AtomicLong> entry : new TreeMap<>(sCounters).entrySet()) {
+                writer.name(entry.getKey()).value(entry.getValue().get());
+            }
+            writer.endObject();
+            writer.endObject();
+            writer.close();
+        } catch (IOException e) {
+            // A StringWriter doesn't throw
+            throw new AssertionError(e);
+        }
+        return json.toString();
+    }
+
+    // Nanoseconds to milliseconds, rounded to a hundredth
+    private static double toMillis(long nanos) {
+        return Math.round(nanos / 10000.0) / 100.0;
+    }
+}
@@ -0,0 +1,218 @@
+package com.example.adi.guardianlgbtnews;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides how much to ask for in one request from how fast the network is: the page size, the
+ * fields of the search results, how many article bodies to prefetch and the timeouts of an
+ * attempt. It keeps an exponentially weighted moving average of the throughput and of the
+ * latency (the wait for the headers) of the recent responses. Until there is one, it goes by
+ * the kind of link the system reports.
+ * <p>
+ * A slow network (e.g. 2G) gets small pages without thumbnails, so the first screen arrives
+ * soon, and patient timeouts, as a retry would only start over. A fast unmetered one (e.g.
+ * Wi-Fi) gets large pages, which cost fewer round trips, and short timeouts, so a stalled
+ * attempt is retried or hedged quickly. A metered network never gets the large pages.
+ */
+public final class FetchPolicy {
+
+    // The kinds of link, as told by the system before anything is measured
+    public static final int LINK_UNKNOWN = 0;
+    /** 2G and the like */
+    public static final int LINK_SLOW = 1;
+    /** 3G, 4G */
+    public static final int LINK_MEDIUM = 2;
+    /** Wi-Fi, Ethernet */
+    public static final int LINK_FAST = 3;
+
+    // The tiers of the policy, slowest first
+    public static final int TIER_SLOW = 0;
+    public static final int TIER_MEDIUM = 1;
+    public static final int TIER_FAST = 2;
+
+    // The fields of the search results: a slow network does without the thumbnails
+    public static final String FIELDS_FULL = "byline,thumbnail";
+    public static final String FIELDS_LEAN = "byline";
+
+    // The largest page asked for, whatever the network
+    private static final int MAX_PAGE_SIZE = 50;
+    // How much larger the pages of a fast network are
+    private static final int FAST_PAGE_SIZE_FACTOR = 3;
+
+    // The timeouts of an attempt, in milliseconds, for each tier
+    private static final int[] CONNECT_TIMEOUT_MILLIS = {10000, 5000, 3000};
+    private static final int[] READ_TIMEOUT_MILLIS = {15000, 7000, 4000};
+    // A read timeout is at least this many times the usual latency, and at most MAX_READ_TIMEOUT_MILLIS
+    private static final int LATENCY_TIMEOUT_FACTOR = 4;
+    private static final int MAX_READ_TIMEOUT_MILLIS = 30000;
+    // A request's deadline leaves room for this many complete attempts
+    private static final int ATTEMPTS_PER_DEADLINE = 2;
+
+    // The bounds between the tiers
+    private static final double SLOW_BYTES_PER_SECOND = 32 * 1024;
+    private static final double FAST_BYTES_PER_SECOND = 512 * 1024;
+    private static final double SLOW_LATENCY_MILLIS = 1500;
+    private static final double FAST_LATENCY_MILLIS = 400;
+
+    // A body smaller than this says more about the latency than about the throughput
+    private static final long MIN_THROUGHPUT_SAMPLE_BYTES = 8 * 1024;
+    // The weight of a new sample in the moving averages
+    private static final double SAMPLE_WEIGHT = 0.3;
+
+    // States
+    private int mLink = LINK_UNKNOWN;
+    private boolean mMetered;
+    // The moving averages, or -1 until there is a sample
+    private double mBytesPerSecond = -1;
+    private double mLatencyMillis = -1;
+
+    /**
+     * Set the network the requests are made on. The estimates of another network are dropped,
+     * as they say nothing about this one.
+     *
+     * @param link    one of the LINK_ constants
+     * @param metered whether the network is metered, e.g. a mobile data plan
+     */
+    public synchronized void setNetwork(int link, boolean metered) {
+        if (link != mLink || metered != mMetered) {
+            mLink = link;
+            mMetered = metered;
+            mBytesPerSecond = -1;
+            mLatencyMillis = -1;
+        }
+    }
+
+    /**
+     * Add the timing of a response to the estimates.
+     *
+     * @param headersNanos  the time from opening the connection to receiving the headers
+     * @param bodyBytes     the number of body bytes received (0 for a body-less response)
+     * @param bodyReadNanos the time spent waiting for the body
+     */
+    public synchronized void onResponse(long headersNanos, long bodyBytes, long bodyReadNanos) {
+        if (headersNanos > 0) {
+            mLatencyMillis = average(mLatencyMillis, headersNanos / 1e6);
+        }
+        if (bodyBytes >= MIN_THROUGHPUT_SAMPLE_BYTES && bodyReadNanos > 0) {
+            mBytesPerSecond = average(mBytesPerSecond,
+                    bodyBytes * (double) TimeUnit.SECONDS.toNanos(1) / bodyReadNanos);
+        }
+    }
+
+    private static double average(double average, double sample) {
+        return average < 0 ? sample : average + SAMPLE_WEIGHT * (sample - average);
+    }
+
+    /**
+     * Return the tier the requests are made for, one of the TIER_ constants: the one of the
+     * estimates if there are any (the slower of the throughput's and the latency's), or else
+     * the one of the link. A metered network is at most TIER_MEDIUM.
+     */
+    public synchronized int getTier() {
+        int tier;
+        if (mBytesPerSecond < 0 && mLatencyMillis < 0) {
+            tier = mLink == LINK_SLOW ? TIER_SLOW : mLink == LINK_FAST ? TIER_FAST : TIER_MEDIUM;
+        } else {
+            tier = TIER_FAST;
+            if (mBytesPerSecond >= 0) {
+                tier = Math.min(tier, mBytesPerSecond < SLOW_BYTES_PER_SECOND ? TIER_SLOW
+                        : mBytesPerSecond < FAST_BYTES_PER_SECOND ? TIER_MEDIUM : TIER_FAST);
+            }
+            if (mLatencyMillis >= 0) {
+                tier = Math.min(tier, mLatencyMillis > SLOW_LATENCY_MILLIS ? TIER_SLOW
+                        : mLatencyMillis > FAST_LATENCY_MILLIS ? TIER_MEDIUM : TIER_FAST);
+            }
+        }
+        return mMetered ? Math.min(tier, TIER_MEDIUM) : tier;
+    }
+
+    /**
+     * Return the size of the pages to request one after the other: half the usual size on a
+     * slow network, a few times it on a fast one.
+     *
+     * @param basePageSize the usual page size
+     */
+    public int getPageSize(int basePageSize) {
+        switch (getTier()) {
+            case TIER_SLOW:
+                return Math.max(1, basePageSize / 2);
+            case TIER_FAST:
+                return Math.min(MAX_PAGE_SIZE, basePageSize * FAST_PAGE_SIZE_FACTOR);
+            default:
+                return basePageSize;
+        }
+    }
+
+    /**
+     * Return the value of the show-fields parameter of the searches.
+     */
+    public String getShowFields() {
+        return getTier() == TIER_SLOW ? FIELDS_LEAN : FIELDS_FULL;
+    }
+
+    /**
+     * Return how many article bodies to prefetch: all the wanted ones on a fast network, half
+     * of them on a medium one, none on a slow one.
+     *
+     * @param wantedCount the number set in the settings
+     */
+    public int getPrefetchCount(int wantedCount) {
+        switch (getTier()) {
+            case TIER_SLOW:
+                return 0;
+            case TIER_MEDIUM:
+                return wantedCount / 2;
+            default:
+                return wantedCount;
+        }
+    }
+
+    public int getConnectTimeoutMillis() {
+        return CONNECT_TIMEOUT_MILLIS[getTier()];
+    }
+
+    /**
+     * Return the read timeout of an attempt: the one of the tier, but never so short that a
+     * usual response would time out.
+     */
+    public synchronized int getReadTimeoutMillis() {
+        int timeout = READ_TIMEOUT_MILLIS[getTier()];
+        if (mLatencyMillis > 0) {
+            timeout = Math.max(timeout, (int) Math.min(MAX_READ_TIMEOUT_MILLIS,
+                    LATENCY_TIMEOUT_FACTOR * mLatencyMillis));
+        }
+        return timeout;
+    }
+
+    /**
+     * Return how long a request may take, all its attempts included: enough for a couple of
+     * attempts that each use their whole timeouts, so the patient timeouts of a slow network
+     * aren't cut short by the deadline.
+     */
+    public synchronized long getDeadlineMillis() {
+        return ATTEMPTS_PER_DEADLINE * (long) (getConnectTimeoutMillis() + getReadTimeoutMillis());
+    }
+
+    // Get methods
+    public synchronized int getLink() {
+        return mLink;
+    }
+
+    public synchronized boolean isMetered() {
+        return mMetered;
+    }
+
+    /**
+     * Return the estimated throughput in bytes per second, or -1 if nothing was measured.
+     */
+    public synchronized double getBytesPerSecond() {
+        return mBytesPerSecond;
+    }
+
+    /**
+     * Return the estimated wait for the headers in milliseconds, or -1 if nothing was measured.
+     */
+    public synchronized double getLatencyMillis() {
+        return mLatencyMillis;
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.adi.guardianlgbtnews;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Objects of this class hold a Guardian API request: a base url and its query parameters.
+ * They are immutable; {@link #with(String, String)} returns a copy with one more parameter,
+ * e.g. the page of a paged request.
+ */
+public final class GuardianQuery {
+    // States
+    private final String mBaseUrl;
+    private final LinkedHashMap<String, String> mParameters;
+
+    // Constructor
+    public GuardianQuery(String baseUrl) {
+        this(baseUrl, new LinkedHashMap<String, String>());
+    }
+
+    private GuardianQuery(String baseUrl, LinkedHashMap<String, String> parameters) {
+        mBaseUrl = baseUrl;
+        mParameters = parameters;
+    }
+
+    /**
+     * Return a copy of this query with the given parameter set to the given value (replacing
+     * its previous value, if any).
+     */
+    public GuardianQuery with(String name, String value) {
+        LinkedHashMap<String, String> parameters = new LinkedHashMap<>(mParameters);
+        parameters.put(name, value);
+        return new GuardianQuery(mBaseUrl, parameters);
+    }
+
+    /**
+     * Return a copy of this query with the given parameter set to the given number.
+     */
+    public GuardianQuery with(String name, int value) {
+        return with(name, String.valueOf(value));
+    }
+
+    /**
+     * Return a copy of this query without the given parameter.
+     */
+    public GuardianQuery without(String name) {
+        LinkedHashMap<String, String> parameters = new LinkedHashMap<>(mParameters);
+        parameters.remove(name);
+        return new GuardianQuery(mBaseUrl, parameters);
+    }
+
+    // Get methods
+    public String getBaseUrl() {
+        return mBaseUrl;
+    }
+
+    public String getParameter(String name) {
+        return mParameters.get(name);
+    }
+
+    /**
+     * Return the url of the request, with the parameters in the order they were added.
+     */
+    public String toUrl() {
+        StringBuilder url = new StringBuilder(mBaseUrl);
+        char separator = mBaseUrl.indexOf('?') >= 0 ? '&' : '?';
+        for (Map.Entry<String, String> parameter : mParameters.entrySet()) {
+            url.append(separator)
+                    .append(encode(parameter.getKey()))
+                    .append('=')
+                    .append(encode(parameter.getValue()));
+            separator = '&';
+        }
+        return url.toString();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof GuardianQuery)) {
+            return false;
+        }
+        GuardianQuery other = (GuardianQuery) o;
+        return mBaseUrl.equals(other.mBaseUrl) && mParameters.equals(other.mParameters);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * mBaseUrl.hashCode() + mParameters.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return toUrl();
+    }
+
+    // Percent-encode a query component, with spaces as %20 rather than +
+    private static String encode(String value) {
+        try {
+            return URLEncoder.encode(value, "UTF-8").replace("+", "%20");
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
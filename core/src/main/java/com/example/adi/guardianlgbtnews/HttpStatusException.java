@@ -0,0 +1,53 @@
+package com.example.adi.guardianlgbtnews;
+
+import java.io.IOException;
+
+/**
+ * Thrown when the server answers a request with an unexpected status code.
+ */
+public class HttpStatusException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    // States
+    private final int mCode;
+    private final long mRetryAfterMillis;
+
+    public HttpStatusException(int code) {
+        this(code, -1);
+    }
+
+    /**
+     * @param code             - the status code of the response
+     * @param retryAfterMillis - the time its Retry-After header asks to wait, or -1 if none
+     */
+    public HttpStatusException(int code, long retryAfterMillis) {
+        super("Error response code: " + code);
+        mCode = code;
+        mRetryAfterMillis = retryAfterMillis;
+    }
+
+    public int getCode() {
+        return mCode;
+    }
+
+    public long getRetryAfterMillis() {
+        return mRetryAfterMillis;
+    }
+
+    /**
+     * Return whether the request was rejected because too many were made: "429 Too Many
+     * Requests".
+     */
+    public boolean isRateLimited() {
+        return mCode == 429;
+    }
+
+    /**
+     * Return whether the request may succeed if it is made again: server errors and
+     * "429 Too Many Requests" may, while other client errors won't.
+     */
+    public boolean isRetryable() {
+        return mCode >= 500 || mCode == 429;
+    }
+}
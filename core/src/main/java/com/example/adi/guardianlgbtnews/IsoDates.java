@@ -0,0 +1,127 @@
+package com.example.adi.guardianlgbtnews;
+
+/**
+ * Helper methods converting the Guardian's ISO 8601 UTC dates ("2018-06-01T10:00:00Z" or
+ * "2018-06-01") to and from epoch milliseconds, without a DateFormat or Calendar.
+ */
+public final class IsoDates {
+
+    /**
+     * The value of a missing or unreadable date. It is smaller than every real date, so it never
+     * wins a max(), and in a plain numeric order (e.g. an SQL ORDER BY) it comes first ascending
+     * and last descending. {@link #compare(long, long, boolean)} puts it last in both orders.
+     */
+    public static final long UNKNOWN = Long.MIN_VALUE;
+
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    /**
+     * Compare two dates for a sort, newest or oldest first, with the unknown dates last either
+     * way.
+     */
+    public static int compare(long a, long b, boolean newestFirst) {
+        if (a == UNKNOWN || b == UNKNOWN) {
+            // Unknown after known, and equal to each other
+            return Boolean.compare(a == UNKNOWN, b == UNKNOWN);
+        }
+        return newestFirst ? Long.compare(b, a) : Long.compare(a, b);
+    }
+
+    /**
+     * Create a private constructor because no one should ever create a {@link IsoDates} object.
+     * This class is only meant to hold static methods.
+     */
+    private IsoDates() {
+    }
+
+    /**
+     * Return the epoch milliseconds of the given date, or {@link #UNKNOWN} if it is null or
+     * not in the expected format. Fractions of a second and offsets other than Z are ignored.
+     */
+    public static long parse(String date) {
+        if (date == null || date.length() < 10 || date.charAt(4) != '-' || date.charAt(7) != '-') {
+            return UNKNOWN;
+        }
+        int year = digits(date, 0, 4);
+        int month = digits(date, 5, 7);
+        int day = digits(date, 8, 10);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > 31) {
+            return UNKNOWN;
+        }
+        long millis = daysFromCivil(year, month, day) * MILLIS_PER_DAY;
+
+        // The time of day, if there is one
+        if (date.length() >= 19 && date.charAt(10) == 'T'
+                && date.charAt(13) == ':' && date.charAt(16) == ':') {
+            int hours = digits(date, 11, 13);
+            int minutes = digits(date, 14, 16);
+            int seconds = digits(date, 17, 19);
+            if (hours >= 0 && minutes >= 0 && seconds >= 0) {
+                millis += ((hours * 60L + minutes) * 60L + seconds) * 1000L;
+            }
+        }
+        return millis;
+    }
+
+    /**
+     * Return the given epoch milliseconds as a "yyyy-MM-dd" UTC day, or "" for {@link #UNKNOWN}.
+     */
+    public static String formatDay(long millis) {
+        if (millis == UNKNOWN) {
+            return "";
+        }
+        long days = floorDiv(millis, MILLIS_PER_DAY);
+        // Convert the days since the epoch to a civil date (Howard Hinnant's algorithm)
+        long z = days + 719468;
+        long era = floorDiv(z, 146097);
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long shiftedMonth = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * shiftedMonth + 2) / 5 + 1);
+        int month = (int) (shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9);
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+        char[] chars = new char[10];
+        chars[0] = (char) ('0' + year / 1000 % 10);
+        chars[1] = (char) ('0' + year / 100 % 10);
+        chars[2] = (char) ('0' + year / 10 % 10);
+        chars[3] = (char) ('0' + year % 10);
+        chars[4] = '-';
+        chars[5] = (char) ('0' + month / 10);
+        chars[6] = (char) ('0' + month % 10);
+        chars[7] = '-';
+        chars[8] = (char) ('0' + day / 10);
+        chars[9] = (char) ('0' + day % 10);
+        return new String(chars);
+    }
+
+    // The number of days between 1970-01-01 and the given date
+    private static long daysFromCivil(int year, int month, int day) {
+        long y = month <= 2 ? year - 1 : year;
+        long era = floorDiv(y, 400);
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    // Math.floorDiv needs Java 8 (API 24)
+    private static long floorDiv(long x, long y) {
+        long q = x / y;
+        return (x % y != 0 && (x < 0) != (y < 0)) ? q - 1 : q;
+    }
+
+    // Return the number in the given range of the string, or -1 if it isn't all digits
+    private static int digits(String s, int start, int end) {
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+}
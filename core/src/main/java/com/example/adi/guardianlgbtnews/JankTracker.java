@@ -0,0 +1,103 @@
+package com.example.adi.guardianlgbtnews;
+
+/**
+ * Tells the smoothness of an animation, e.g. a scroll, from the start times of its frames (the
+ * vsync timestamps of the Choreographer). The time between two frames should be one refresh
+ * interval: a frame that takes longer misses its deadline and is janky, and every refresh
+ * interval it spans after the first is a dropped frame, where the screen showed the last one
+ * again.
+ * <p>
+ * Every frame duration is recorded in {@link FetchMetrics} as {@link FetchMetrics#STAGE_FRAME},
+ * and in this tracker's own histogram, which holds the frames of its session only.
+ */
+public final class JankTracker {
+
+    // A frame is janky if it takes longer than this many refresh intervals, which leaves
+    // room for the jitter of the vsync timestamps
+    private static final double JANK_INTERVALS = 1.5;
+
+    // States
+    private final long mFrameIntervalNanos;
+    private final LatencyHistogram mFrames = new LatencyHistogram();
+    // The start of the last frame, or 0 if the animation was stopped since
+    private long mLastFrameNanos;
+    private long mFrameCount;
+    private long mJankyFrames;
+    private long mDroppedFrames;
+
+    /**
+     * @param frameIntervalNanos the refresh interval of the display, e.g. 16.7ms at 60Hz
+     */
+    public JankTracker(long frameIntervalNanos) {
+        mFrameIntervalNanos = frameIntervalNanos;
+    }
+
+    /**
+     * Count a frame of the animation.
+     *
+     * @param frameTimeNanos the time the frame started, in the System.nanoTime() time base
+     */
+    public synchronized void onFrame(long frameTimeNanos) {
+        long lastFrameNanos = mLastFrameNanos;
+        mLastFrameNanos = frameTimeNanos;
+        // The first frame only gives the start of the next one
+        if (lastFrameNanos == 0 || frameTimeNanos <= lastFrameNanos) {
+            return;
+        }
+        long duration = frameTimeNanos - lastFrameNanos;
+        mFrames.record(duration);
+        FetchMetrics.record(FetchMetrics.STAGE_FRAME, duration);
+        mFrameCount++;
+        FetchMetrics.count(FetchMetrics.COUNT_FRAMES, 1);
+
+        if (duration > JANK_INTERVALS * mFrameIntervalNanos) {
+            long dropped = Math.max(1, Math.round((double) duration / mFrameIntervalNanos) - 1);
+            mJankyFrames++;
+            mDroppedFrames += dropped;
+            FetchMetrics.count(FetchMetrics.COUNT_JANKY_FRAMES, 1);
+            FetchMetrics.count(FetchMetrics.COUNT_DROPPED_FRAMES, dropped);
+        }
+    }
+
+    /**
+     * Mark the end of the animation, so the time until the next one starts isn't counted as a
+     * frame.
+     */
+    public synchronized void stop() {
+        mLastFrameNanos = 0;
+    }
+
+    /**
+     * Forget the frames of this session, e.g. to start a new one.
+     */
+    public synchronized void reset() {
+        mLastFrameNanos = 0;
+        mFrameCount = 0;
+        mJankyFrames = 0;
+        mDroppedFrames = 0;
+        mFrames.reset();
+    }
+
+    public long getFrameIntervalNanos() {
+        return mFrameIntervalNanos;
+    }
+
+    public synchronized long getFrameCount() {
+        return mFrameCount;
+    }
+
+    public synchronized long getJankyFrames() {
+        return mJankyFrames;
+    }
+
+    public synchronized long getDroppedFrames() {
+        return mDroppedFrames;
+    }
+
+    /**
+     * Return the distribution of the frame durations of this session.
+     */
+    public LatencyHistogram.Snapshot getFrames() {
+        return mFrames.snapshot();
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.adi.guardianlgbtnews;
+
+import java.util.Arrays;
+
+/**
+ * A rolling latency histogram: it keeps the most recent samples (in nanoseconds) in a ring
+ * buffer, so its percentiles follow the current behaviour of the app rather than its whole
+ * history. The total count and sum cover every sample ever recorded.
+ */
+public final class LatencyHistogram {
+
+    // Number of recent samples the percentiles are computed from
+    public static final int DEFAULT_WINDOW = 512;
+
+    // States
+    private final long[] mSamples;
+    private int mNext;
+    private int mSize;
+    private long mCount;
+    private long mSumNanos;
+    private long mMaxNanos;
+
+    // Constructor
+    public LatencyHistogram() {
+        this(DEFAULT_WINDOW);
+    }
+
+    public LatencyHistogram(int window) {
+        if (window <= 0) {
+            throw new IllegalArgumentException("window must be positive: " + window);
+        }
+        mSamples = new long[window];
+    }
+
+    /**
+     * Record one sample, in nanoseconds. Negative samples are recorded as 0.
+     */
+    public synchronized void record(long nanos) {
+        long sample = Math.max(0, nanos);
+        mSamples[mNext] = sample;
+        mNext = (mNext + 1) % mSamples.length;
+        if (mSize < mSamples.length) {
+            mSize++;
+        }
+        mCount++;
+        mSumNanos += sample;
+        mMaxNanos = Math.max(mMaxNanos, sample);
+    }
+
+    /**
+     * Return a consistent copy of the histogram's figures.
+     */
+    public synchronized Snapshot snapshot() {
+        long[] window = Arrays.copyOf(mSamples, mSize);
+        Arrays.sort(window);
+        return new Snapshot(window, mCount, mSumNanos, mMaxNanos);
+    }
+
+    public synchronized void reset() {
+        mNext = 0;
+        mSize = 0;
+        mCount = 0;
+        mSumNanos = 0;
+        mMaxNanos = 0;
+    }
+
+    /**
+     * The figures of a histogram at one point in time.
+     */
+    public static final class Snapshot {
+        private final long[] mSortedWindow;
+        private final long mCount;
+        private final long mSumNanos;
+        private final long mMaxNanos;
+
+        private Snapshot(long[] sortedWindow, long count, long sumNanos, long maxNanos) {
+            mSortedWindow = sortedWindow;
+            mCount = count;
+            mSumNanos = sumNanos;
+            mMaxNanos = maxNanos;
+        }
+
+        /**
+         * Return the given percentile (0 to 100) of the recent samples, in nanoseconds, using
+         * the nearest-rank method. Returns 0 if there are no samples.
+         */
+        public long getPercentile(double percentile) {
+            if (mSortedWindow.length == 0) {
+                return 0;
+            }
+            int rank = (int) Math.ceil(percentile / 100 * mSortedWindow.length);
+            return mSortedWindow[Math.min(Math.max(rank, 1), mSortedWindow.length) - 1];
+        }
+
+        // Get methods
+        public long getCount() {
+            return mCount;
+        }
+
+        public int getWindowSize() {
+            return mSortedWindow.length;
+        }
+
+        public long getMeanNanos() {
+            return mCount == 0 ? 0 : mSumNanos / mCount;
+        }
+
+        public long getMaxNanos() {
+            return mMaxNanos;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.adi.guardianlgbtnews;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An InputStream counting the bytes read through it and the time spent waiting for them, so
+ * the time a parser spends reading its input can be told apart from the time it spends
+ * parsing it.
+ */
+public final class MeteredInputStream extends FilterInputStream {
+
+    // States
+    private long mBytesRead;
+    private long mReadNanos;
+
+    public MeteredInputStream(InputStream in) {
+        super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+        long start = System.nanoTime();
+        int b = super.read();
+        mReadNanos += System.nanoTime() - start;
+        if (b != -1) {
+            mBytesRead++;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        long start = System.nanoTime();
+        int read = super.read(buffer, offset, length);
+        mReadNanos += System.nanoTime() - start;
+        if (read > 0) {
+            mBytesRead += read;
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long start = System.nanoTime();
+        long skipped = super.skip(n);
+        mReadNanos += System.nanoTime() - start;
+        mBytesRead += skipped;
+        return skipped;
+    }
+
+    // Marks would make the count ambiguous
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    // Get methods
+    public long getBytesRead() {
+        return mBytesRead;
+    }
+
+    public long getReadNanos() {
+        return mReadNanos;
+    }
+}
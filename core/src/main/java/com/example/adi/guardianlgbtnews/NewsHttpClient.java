@@ -0,0 +1,193 @@
+package com.example.adi.guardianlgbtnews;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * A reusable HTTP client for the Guardian requests. It asks for gzip compressed responses and
+ * decompresses them as a stream, and lets the underlying connections be kept alive and reused
+ * between requests: responses are read to the end and closed instead of being disconnected,
+ * so the next request to the same host can skip the TCP and TLS handshakes.
+ */
+public final class NewsHttpClient {
+
+    // Default timeouts, in milliseconds
+    public static final int DEFAULT_CONNECT_TIMEOUT = 15000;
+    public static final int DEFAULT_READ_TIMEOUT = 10000;
+
+    // Number of idle connections kept alive per host
+    private static final int MAX_IDLE_CONNECTIONS = 5;
+    // Number of bytes read from a response that wasn't consumed, to let its connection be reused
+    private static final int MAX_DRAIN_BYTES = 64 * 1024;
+
+    static {
+        // These are read when the platform's connection pool is created, so they must be set
+        // before the first connection is opened
+        System.setProperty("http.keepAlive", "true");
+        System.setProperty("http.maxConnections", String.valueOf(MAX_IDLE_CONNECTIONS));
+    }
+
+    // States
+    private volatile int mConnectTimeout = DEFAULT_CONNECT_TIMEOUT;
+    private volatile int mReadTimeout = DEFAULT_READ_TIMEOUT;
+
+    public int getConnectTimeout() {
+        return mConnectTimeout;
+    }
+
+    public void setConnectTimeout(int connectTimeout) {
+        mConnectTimeout = connectTimeout;
+    }
+
+    public int getReadTimeout() {
+        return mReadTimeout;
+    }
+
+    public void setReadTimeout(int readTimeout) {
+        mReadTimeout = readTimeout;
+    }
+
+    /**
+     * Make a GET request to the given URL with the given extra headers (may be null), and return
+     * the response once its status line and headers have been received.
+     */
+    public Response get(URL url, Map<String, String> requestHeaders) throws IOException {
+        HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
+        urlConnection.setConnectTimeout(mConnectTimeout);
+        urlConnection.setReadTimeout(mReadTimeout);
+        urlConnection.setRequestMethod("GET");
+        // Let our own cache decide, rather than the platform's
+        urlConnection.setUseCaches(false);
+        // Setting Accept-Encoding ourselves means we have to decompress the response ourselves
+        urlConnection.setRequestProperty("Accept-Encoding", "gzip");
+        urlConnection.setRequestProperty("Connection", "keep-alive");
+        if (requestHeaders != null) {
+            for (Map.Entry<String, String> header : requestHeaders.entrySet()) {
+                urlConnection.setRequestProperty(header.getKey(), header.getValue());
+            }
+        }
+        // Time the handshakes and the wait for the headers separately
+        long start = System.nanoTime();
+        urlConnection.connect();
+        long connected = System.nanoTime();
+        int responseCode = urlConnection.getResponseCode();
+        long headersReceived = System.nanoTime();
+        FetchMetrics.record(FetchMetrics.STAGE_CONNECT, connected - start);
+        FetchMetrics.record(FetchMetrics.STAGE_FIRST_BYTE, headersReceived - connected);
+        return new Response(urlConnection, responseCode, headersReceived - start);
+    }
+
+    /**
+     * An HTTP response. It must be closed once read, which returns its connection to the pool.
+     */
+    public static final class Response implements Closeable {
+        private final HttpURLConnection mConnection;
+        private final int mCode;
+        private final long mHeadersNanos;
+        private MeteredInputStream mRawBody;
+        private MeteredInputStream mBody;
+
+        private Response(HttpURLConnection connection, int code, long headersNanos) {
+            mConnection = connection;
+            mCode = code;
+            mHeadersNanos = headersNanos;
+        }
+
+        public int getCode() {
+            return mCode;
+        }
+
+        /**
+         * Return the time it took to receive the status line and headers, the handshakes of a
+         * new connection included.
+         */
+        public long getHeadersNanos() {
+            return mHeadersNanos;
+        }
+
+        public String getHeader(String name) {
+            return mConnection.getHeaderField(name);
+        }
+
+        /**
+         * Return the decompressed response body.
+         */
+        public InputStream getBody() throws IOException {
+            if (mBody == null) {
+                InputStream rawBody = openRawBody();
+                if (rawBody == null) {
+                    throw new IOException("Response " + mCode + " has no body");
+                }
+                mRawBody = new MeteredInputStream(rawBody);
+                mBody = "gzip".equalsIgnoreCase(getHeader("Content-Encoding"))
+                        ? new MeteredInputStream(new GZIPInputStream(mRawBody))
+                        : mRawBody;
+            }
+            return mBody;
+        }
+
+        /**
+         * Return the number of body bytes received so far (compressed, if the body is gzipped).
+         */
+        public long getBytesReceived() {
+            return mRawBody != null ? mRawBody.getBytesRead() : 0;
+        }
+
+        /**
+         * Return the number of body bytes read so far, once decompressed.
+         */
+        public long getBytesDecoded() {
+            return mBody != null ? mBody.getBytesRead() : 0;
+        }
+
+        /**
+         * Return the time spent so far waiting for the body to be received and decompressed.
+         */
+        public long getBodyReadNanos() {
+            return mBody != null ? mBody.getReadNanos() : 0;
+        }
+
+        /**
+         * Read the rest of the body (up to a limit) and close it, so the connection can be
+         * reused. Only if that isn't possible is the connection disconnected.
+         */
+        @Override
+        public void close() {
+            try {
+                InputStream rawBody = mRawBody != null ? mRawBody : openRawBody();
+                if (rawBody != null) {
+                    byte[] buffer = new byte[8192];
+                    int drained = 0;
+                    int read;
+                    while (drained < MAX_DRAIN_BYTES && (read = rawBody.read(buffer)) != -1) {
+                        drained += read;
+                    }
+                    if (drained >= MAX_DRAIN_BYTES) {
+                        mConnection.disconnect();
+                    }
+                    // Closing the decompressing stream also releases its inflater
+                    (mBody != null ? mBody : rawBody).close();
+                }
+            } catch (IOException e) {
+                // The connection is broken anyway
+                mConnection.disconnect();
+            }
+        }
+
+        private InputStream openRawBody() throws IOException {
+            if (mCode >= HttpURLConnection.HTTP_BAD_REQUEST) {
+                return mConnection.getErrorStream();
+            }
+            if (mCode == HttpURLConnection.HTTP_NOT_MODIFIED
+                    || mCode == HttpURLConnection.HTTP_NO_CONTENT) {
+                return null;
+            }
+            return mConnection.getInputStream();
+        }
+    }
+}
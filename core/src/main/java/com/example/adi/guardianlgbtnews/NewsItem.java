@@ -0,0 +1,95 @@
+package com.example.adi.guardianlgbtnews;
+
+/**
+ * Objects of this class holds a News Item.
+ * They are kept small, as lists of thousands of them are held in memory: the section and author
+ * are shared through the {@link StringPool}, the publication time is kept as epoch milliseconds,
+ * and the displayed title and date are only built when they are asked for.
+ */
+
+public class NewsItem {
+    //States
+    private final String mWebTitle;
+    private final String mSection;
+    private final String mAuthor;
+    private final long mPublishedAt;
+    private final String mUrl;
+    private final String mThumbnailUrl;
+    // A hash of the url, computed once as it is asked for on every bind and diff of the list
+    private final long mStableId;
+
+    // Constructors
+    /**
+     * @param webTitle     the title as received; an author's name after " | " isn't displayed
+     * @param publishedAt  the publication time in epoch milliseconds, or {@link IsoDates#UNKNOWN}
+     * @param thumbnailUrl the url of the article's thumbnail image, or "" if it has none
+     */
+    public NewsItem(String webTitle, String section, String url, String author, long publishedAt,
+                    String thumbnailUrl) {
+        mWebTitle = webTitle == null ? "" : webTitle;
+        mSection = StringPool.intern(section);
+        mUrl = url == null ? "" : url;
+        mAuthor = StringPool.intern(author);
+        mPublishedAt = publishedAt;
+        mThumbnailUrl = thumbnailUrl == null ? "" : thumbnailUrl;
+        mStableId = stableIdOf(mUrl);
+    }
+
+    public NewsItem(String webTitle, String section, String url, String author, long publishedAt) {
+        this(webTitle, section, url, author, publishedAt, "");
+    }
+
+    // Get methods
+    public String getTitle() {
+        return NewsItemsParser.stripAuthorFromTitle(mWebTitle);
+    }
+
+    /**
+     * Return the title as received, which is cheaper to compare than {@link #getTitle()}.
+     */
+    public String getWebTitle() {
+        return mWebTitle;
+    }
+
+    public String getSection() {
+        return mSection;
+    }
+
+    public String getUrl() {
+        return mUrl;
+    }
+
+    public String getAuthor() {return mAuthor;}
+
+    public long getPublishedAt() {
+        return mPublishedAt;
+    }
+
+    public String getThumbnailUrl() {
+        return mThumbnailUrl;
+    }
+
+    /**
+     * Return the publication day as "yyyy-MM-dd", or "" if it is unknown.
+     */
+    public String getDate() {
+        return IsoDates.formatDay(mPublishedAt);
+    }
+
+    /**
+     * Return an ID of the item's url, e.g. for the stable IDs of a list adapter.
+     */
+    public long getStableId() {
+        return mStableId;
+    }
+
+    // A 64-bit FNV-1a hash of the chars of the url, without encoding it into a new array
+    private static long stableIdOf(String url) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < url.length(); i++) {
+            hash ^= url.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
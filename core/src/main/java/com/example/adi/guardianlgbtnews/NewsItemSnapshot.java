@@ -0,0 +1,196 @@
+package com.example.adi.guardianlgbtnews;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Saves a list of NewsItems to a compact binary file, and reads it back through a memory
+ * mapping, which is much faster than parsing the JSON response again. It is used to show the
+ * last list right away when the app starts.
+ * <p>
+ * The file holds, in big-endian order:
+ * <pre>
+ * int magic, int version, long savedAt, string tag
+ * int stringCount, string[stringCount]      (the distinct sections and authors)
+ * int itemCount, item[itemCount]
+ * item: long publishedAt, int sectionIndex, int authorIndex, string webTitle, string url,
+ *       string thumbnailUrl
+ * string: int byteCount, byte[byteCount]     (UTF-8)
+ * </pre>
+ * The tag identifies what the list is the result of (e.g. the request URLs), so a list saved
+ * for other preferences isn't shown.
+ */
+public final class NewsItemSnapshot {
+
+    private static final int MAGIC = 0x474e5331; // "GNS1"
+    private static final int VERSION = 2;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // States
+    private final String mTag;
+    private final long mSavedAt;
+    private final List<NewsItem> mNewsItems;
+
+    private NewsItemSnapshot(String tag, long savedAt, List<NewsItem> newsItems) {
+        mTag = tag;
+        mSavedAt = savedAt;
+        mNewsItems = newsItems;
+    }
+
+    // Get methods
+    public String getTag() {
+        return mTag;
+    }
+
+    /**
+     * Return when the snapshot was saved, in epoch milliseconds.
+     */
+    public long getSavedAt() {
+        return mSavedAt;
+    }
+
+    public List<NewsItem> getNewsItems() {
+        return mNewsItems;
+    }
+
+    /**
+     * Save the given NewsItems to the given file, replacing it atomically.
+     */
+    public static void write(File file, String tag, List<NewsItem> newsItems) throws IOException {
+        // Number the distinct sections and authors
+        Map<String, Integer> strings = new LinkedHashMap<>();
+        for (NewsItem item : newsItems) {
+            indexOf(strings, item.getSection());
+            indexOf(strings, item.getAuthor());
+        }
+
+        File tempFile = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tempFile)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(System.currentTimeMillis());
+            writeString(out, tag);
+            out.writeInt(strings.size());
+            for (String string : strings.keySet()) {
+                writeString(out, string);
+            }
+            out.writeInt(newsItems.size());
+            for (NewsItem item : newsItems) {
+                out.writeLong(item.getPublishedAt());
+                out.writeInt(strings.get(item.getSection()));
+                out.writeInt(strings.get(item.getAuthor()));
+                writeString(out, item.getWebTitle());
+                writeString(out, item.getUrl());
+                writeString(out, item.getThumbnailUrl());
+            }
+        } finally {
+            out.close();
+        }
+        if (!tempFile.renameTo(file)) {
+            tempFile.delete();
+            throw new IOException("Couldn't replace snapshot " + file);
+        }
+    }
+
+    /**
+     * Read the snapshot in the given file. Returns null if there is none, or it was saved with
+     * another tag, or it can't be read.
+     */
+    public static NewsItemSnapshot read(File file, String expectedTag) throws IOException {
+        if (!file.isFile()) {
+            return null;
+        }
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return read(buffer, expectedTag);
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    // Decode a mapped snapshot. A truncated or foreign file reads as no snapshot.
+    private static NewsItemSnapshot read(ByteBuffer buffer, String expectedTag) {
+        try {
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                return null;
+            }
+            long savedAt = buffer.getLong();
+            String tag = readString(buffer);
+            if (expectedTag != null && !expectedTag.equals(tag)) {
+                return null;
+            }
+
+            // Every string takes at least 4 bytes, and every item at least 28
+            int stringCount = buffer.getInt();
+            if (stringCount < 0 || stringCount > buffer.remaining() / 4) {
+                return null;
+            }
+            String[] strings = new String[stringCount];
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = StringPool.intern(readString(buffer));
+            }
+
+            int itemCount = buffer.getInt();
+            if (itemCount < 0 || itemCount > buffer.remaining() / 28) {
+                return null;
+            }
+            List<NewsItem> newsItems = new ArrayList<>(itemCount);
+            for (int i = 0; i < itemCount; i++) {
+                long publishedAt = buffer.getLong();
+                String section = strings[buffer.getInt()];
+                String author = strings[buffer.getInt()];
+                String webTitle = readString(buffer);
+                String url = readString(buffer);
+                String thumbnailUrl = readString(buffer);
+                newsItems.add(new NewsItem(webTitle, section, url, author, publishedAt, thumbnailUrl));
+            }
+            return new NewsItemSnapshot(tag, savedAt, Collections.unmodifiableList(newsItems));
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
+    private static int indexOf(Map<String, Integer> strings, String string) {
+        Integer index = strings.get(string);
+        if (index == null) {
+            index = strings.size();
+            strings.put(string, index);
+        }
+        return index;
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = (string == null ? "" : string).getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+}
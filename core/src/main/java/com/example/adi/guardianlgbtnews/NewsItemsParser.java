@@ -0,0 +1,293 @@
+package com.example.adi.guardianlgbtnews;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Helper methods turning a Guardian search response into {@link NewsItem} objects, either with
+ * a streaming pull parser or through a String and a JSONObject tree.
+ */
+public final class NewsItemsParser {
+
+    private static final Logger LOGGER = Logger.getLogger(NewsItemsParser.class.getSimpleName());
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Create a private constructor because no one should ever create a {@link NewsItemsParser}
+     * object. This class is only meant to hold static methods.
+     */
+    private NewsItemsParser() {
+    }
+
+    /**
+     * Interface definition for a callback to be invoked with every {@link NewsItem} of a
+     * response as soon as it has been read, while the rest of the response is still arriving.
+     * It is called on the thread reading the response.
+     */
+    public interface OnNewsItemListener {
+        void onNewsItem(NewsItem item);
+    }
+
+    /**
+     * Return a list of {@link NewsItem} objects pulled token by token from the JSON response
+     * stream. Only the "response.results" array is walked; every other value is skipped.
+     *
+     * @param inputStream the body of the http response
+     */
+    public static List<NewsItem> readNewsItems(InputStream inputStream) throws IOException {
+        return readNewsItems(inputStream, null);
+    }
+
+    /**
+     * Same as {@link #readNewsItems(InputStream)}, also handing every NewsItem to the given
+     * listener, in the order of the response, as soon as its result object has been read.
+     *
+     * @param inputStream the body of the http response
+     * @param listener    the listener to hand the NewsItems to (can be null)
+     */
+    public static List<NewsItem> readNewsItems(InputStream inputStream, OnNewsItemListener listener)
+            throws IOException {
+        List<NewsItem> newsItems = new ArrayList<>();
+        JsonReader reader = new JsonReader(new InputStreamReader(inputStream, UTF_8));
+        // Walk down to "response"
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals("response")) {
+                // Walk down to "results"
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if (reader.nextName().equals("results") && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                        // Build a NewsItem from each result as soon as it has been read
+                        reader.beginArray();
+                        while (reader.hasNext()) {
+                            NewsItem item = readNewsItem(reader);
+                            newsItems.add(item);
+                            if (listener != null) {
+                                listener.onNewsItem(item);
+                            }
+                        }
+                        reader.endArray();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return newsItems;
+    }
+
+    /**
+     * Read the response of a single-item request (e.g. /world/2018/jun/01/...) made with
+     * show-fields=bodyText, and return the text of the article, or null if it has none.
+     */
+    public static String readArticleBody(InputStream inputStream) throws IOException {
+        String body = null;
+        JsonReader reader = new JsonReader(new InputStreamReader(inputStream, UTF_8));
+        // Walk down to "response", "content" and "fields"
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals("response") && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if (reader.nextName().equals("content") && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                        reader.beginObject();
+                        while (reader.hasNext()) {
+                            if (reader.nextName().equals("fields") && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                                reader.beginObject();
+                                while (reader.hasNext()) {
+                                    if (reader.nextName().equals("bodyText")
+                                            && reader.peek() == JsonToken.STRING) {
+                                        body = reader.nextString();
+                                    } else {
+                                        reader.skipValue();
+                                    }
+                                }
+                                reader.endObject();
+                            } else {
+                                reader.skipValue();
+                            }
+                        }
+                        reader.endObject();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return body;
+    }
+
+    /**
+     * Read a single result object and return it as a {@link NewsItem}. Missing fields are
+     * set to "" (or {@link IsoDates#UNKNOWN} for the date).
+     */
+    private static NewsItem readNewsItem(JsonReader reader) throws IOException {
+        String title = "";
+        String section = "";
+        String url = "";
+        String author = "";
+        long publishedAt = IsoDates.UNKNOWN;
+        String thumbnailUrl = "";
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.skipValue();
+                continue;
+            }
+            switch (name) {
+                case "webTitle":
+                    // The author's name is only stripped when the title is displayed
+                    title = reader.nextString();
+                    break;
+                case "sectionName":
+                    section = reader.nextString();
+                    break;
+                case "webUrl":
+                    url = reader.nextString();
+                    break;
+                case "webPublicationDate":
+                    publishedAt = IsoDates.parse(reader.nextString());
+                    break;
+                case "fields":
+                    // Only the byline and the thumbnail are needed from the "fields" object
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        String field = reader.nextName();
+                        if (reader.peek() != JsonToken.STRING) {
+                            reader.skipValue();
+                        } else if (field.equals("byline")) {
+                            author = reader.nextString();
+                        } else if (field.equals("thumbnail")) {
+                            thumbnailUrl = reader.nextString();
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new NewsItem(title, section, url, author, publishedAt, thumbnailUrl);
+    }
+
+    /**
+     * Return a list of {@link NewsItem} objects that has been built up from parsing a JSON response.
+     *
+     * @param jsonString the JSON string received from the http request
+     */
+    public static List<NewsItem> extractNewsItems(String jsonString) {
+        // If the jsonString is empty return null
+        if (jsonString == null || jsonString.isEmpty()) {
+            return null;
+        }
+
+        // Create an empty ArrayList that we can start adding NewsItems to
+        List<NewsItem> newsItems = new ArrayList<>();
+
+        // Try to parse the jsonString. If there's a problem with the way the JSON
+        // is formatted, a JSONException exception object will be thrown.
+        // Catch the exception so the app doesn't crash, and print the error message to the logs.
+        try {
+            // Convert the jsonString into a JSONObject
+            JSONObject root = new JSONObject(jsonString);
+            // Replace the root JSONObject with the "response" JSONObject within it
+            root = root.getJSONObject("response");
+            // Extract “results” JSONArray
+            JSONArray resultsArray = root.optJSONArray("results");
+            // If there are items in the results array
+            if (resultsArray.length() > 0) {
+                // Loop through each result in the array
+                for (int i = 0; i < resultsArray.length(); i++) {
+                    // Get news item JSONObject at position i
+                    JSONObject currentItem = resultsArray.getJSONObject(i);
+                    // Get “webTitle” for the item's title (the author's name is omitted when it
+                    // is displayed)
+                    String currentTitle = currentItem.getString("webTitle");
+                    // Get “sectionName” for the item's section
+                    String currentSection = currentItem.getString("sectionName");
+                    // Get “webUrl” for the item's section
+                    String currentUrl = currentItem.getString("webUrl");
+                    // Get “byline” for the item's author name (from the "fields" JSONObject).
+                    // If missing set to "".
+                    JSONObject currentFields = currentItem.getJSONObject("fields");
+                    String currentAuthor = currentFields.getString("byline");
+                    if (currentAuthor == null){
+                        currentAuthor = "";
+                    }
+                    // Get “thumbnail” for the item's image url (also from "fields"). If missing set to "".
+                    String currentThumbnail = currentFields.optString("thumbnail", "");
+                    // Get “webPublicationDate” for the item's publishing time in epoch milliseconds.
+                    long currentDate = IsoDates.parse(currentItem.getString("webPublicationDate"));
+                    // Create a NewsItem java object from the data and add it to the list
+                    newsItems.add(i, new NewsItem(currentTitle, currentSection, currentUrl, currentAuthor, currentDate,
+                            currentThumbnail));
+                }
+            }
+        } catch (JSONException e) {
+            // If an error is thrown when executing any of the above statements in the "try" block,
+            // catch the exception here, so the app doesn't crash. Print a log message
+            // with the message from the exception.
+            LOGGER.log(Level.WARNING, "Problem parsing the NewsItems JSON results", e);
+        }
+
+        // Return the list of NewsItems
+        return newsItems;
+    }
+
+    /**
+     * Convert the {@link InputStream} into a String which contains the
+     * whole JSON response from the server.
+     */
+    public static String readFromStream(InputStream inputStream) throws IOException {
+        StringBuilder output = new StringBuilder();
+        if (inputStream != null) {
+            InputStreamReader inputStreamReader = new InputStreamReader(inputStream, UTF_8);
+            BufferedReader reader = new BufferedReader(inputStreamReader);
+            String line = reader.readLine();
+            while (line != null) {
+                output.append(line);
+                line = reader.readLine();
+            }
+        }
+        return output.toString();
+    }
+
+    /**
+     * If the title contains the author's name after a " | " - omit it.
+     */
+    public static String stripAuthorFromTitle(String title) {
+        int separator = title.indexOf(" | ");
+        if (separator >= 0) {
+            return title.substring(0, separator);
+        }
+        return title;
+    }
+}
@@ -0,0 +1,201 @@
+package com.example.adi.guardianlgbtnews;
+
+import java.io.InterruptedIOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spaces out the requests made with one API key so they stay within its rate limit. Every
+ * request takes a permit from a token bucket, which holds at most a burst of permits and is
+ * refilled at a steady rate. Requests waiting for a permit are queued by priority: a
+ * foreground request (one the user is waiting for) always goes ahead of background ones, and
+ * requests of the same priority go in the order they came.
+ * <p>
+ * When the API answers "429 Too Many Requests", {@link #pause(long)} stops handing out permits
+ * for the time given by its Retry-After header.
+ */
+public final class RequestScheduler {
+
+    // The priorities, highest first
+    public static final int PRIORITY_FOREGROUND = 0;
+    public static final int PRIORITY_BACKGROUND = 1;
+    private static final int PRIORITY_COUNT = 2;
+
+    // Default limits, a little under the 12 calls per second of a Guardian developer key
+    public static final double DEFAULT_PERMITS_PER_SECOND = 10;
+    public static final int DEFAULT_BURST = 10;
+
+    // How long to pause after a 429 without a usable Retry-After header
+    public static final long DEFAULT_PAUSE_MILLIS = 1000;
+
+    // States
+    private final double mPermitsPerNano;
+    private final int mBurst;
+    private double mPermits;
+    private long mRefilledAt;
+    // No permit is handed out before this System.nanoTime() value
+    private long mPausedUntil;
+    // The waiting requests of each priority, in the order they came
+    private final ArrayDeque<Object>[] mQueues;
+
+    // Constructor
+    public RequestScheduler() {
+        this(DEFAULT_PERMITS_PER_SECOND, DEFAULT_BURST);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public RequestScheduler(double permitsPerSecond, int burst) {
+        mPermitsPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+        mBurst = Math.max(1, burst);
+        mPermits = mBurst;
+        mRefilledAt = System.nanoTime();
+        mQueues = new ArrayDeque[PRIORITY_COUNT];
+        for (int i = 0; i < PRIORITY_COUNT; i++) {
+            mQueues[i] = new ArrayDeque<>();
+        }
+    }
+
+    /**
+     * Wait for a permit to make a request of the given priority, for at most the given time.
+     * Returns false, without taking a permit, if none can be had in time. The time waited is
+     * recorded in {@link FetchMetrics}.
+     */
+    public boolean acquire(int priority, long timeoutMillis) throws InterruptedIOException {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        Object ticket = new Object();
+        ArrayDeque<Object> queue = mQueues[priority];
+        boolean acquired = false;
+        synchronized (this) {
+            queue.addLast(ticket);
+            try {
+                while (true) {
+                    long now = System.nanoTime();
+                    if (isNext(ticket, priority)) {
+                        long wait = nanosUntilPermit(now);
+                        if (wait == 0) {
+                            mPermits -= 1;
+                            acquired = true;
+                            break;
+                        }
+                        if (now + wait > deadline) {
+                            // The permit would come too late
+                            break;
+                        }
+                        TimeUnit.NANOSECONDS.timedWait(this, wait);
+                    } else {
+                        // Wait for the requests ahead to leave the queue
+                        if (now >= deadline) {
+                            break;
+                        }
+                        TimeUnit.NANOSECONDS.timedWait(this, deadline - now);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for a request permit");
+            } finally {
+                queue.remove(ticket);
+                // The next in line may go now
+                notifyAll();
+            }
+        }
+
+        long waited = System.nanoTime() - start;
+        FetchMetrics.record(priority == PRIORITY_FOREGROUND
+                ? FetchMetrics.STAGE_QUEUE_WAIT_FOREGROUND : FetchMetrics.STAGE_QUEUE_WAIT_BACKGROUND, waited);
+        if (waited >= TimeUnit.MILLISECONDS.toNanos(1)) {
+            FetchMetrics.count(FetchMetrics.COUNT_QUEUED, 1);
+        }
+        return acquired;
+    }
+
+    /**
+     * Take a permit for a request of the given priority if one is available right away and no
+     * other request is waiting, e.g. for a hedged attempt that is only worth making if it's free.
+     */
+    public synchronized boolean tryAcquire(int priority) {
+        for (int i = 0; i <= priority; i++) {
+            if (!mQueues[i].isEmpty()) {
+                return false;
+            }
+        }
+        if (nanosUntilPermit(System.nanoTime()) > 0) {
+            return false;
+        }
+        mPermits -= 1;
+        return true;
+    }
+
+    /**
+     * Stop handing out permits for the given time, e.g. the Retry-After of a 429. The bucket is
+     * emptied too, so the requests don't all go at once when the pause is over.
+     */
+    public synchronized void pause(long millis) {
+        long now = System.nanoTime();
+        mPausedUntil = Math.max(mPausedUntil, now + TimeUnit.MILLISECONDS.toNanos(millis));
+        mPermits = 0;
+        mRefilledAt = mPausedUntil;
+        notifyAll();
+    }
+
+    /**
+     * Return the number of requests of the given priority waiting for a permit.
+     */
+    public synchronized int getQueueDepth(int priority) {
+        return mQueues[priority].size();
+    }
+
+    // Whether the given request is the first of the highest priority that has any waiting
+    private boolean isNext(Object ticket, int priority) {
+        for (int i = 0; i < priority; i++) {
+            if (!mQueues[i].isEmpty()) {
+                return false;
+            }
+        }
+        return mQueues[priority].peekFirst() == ticket;
+    }
+
+    // Refill the bucket, and return how long until it holds a whole permit (0 if it does)
+    private long nanosUntilPermit(long now) {
+        if (now < mPausedUntil) {
+            return mPausedUntil - now;
+        }
+        if (now > mRefilledAt) {
+            mPermits = Math.min(mBurst, mPermits + (now - mRefilledAt) * mPermitsPerNano);
+            mRefilledAt = now;
+        }
+        if (mPermits >= 1) {
+            return 0;
+        }
+        return Math.max(1, (long) Math.ceil((1 - mPermits) / mPermitsPerNano));
+    }
+
+    /**
+     * Return the time to wait given by a Retry-After header, which is either a number of seconds
+     * or an HTTP date, or -1 if it is missing or malformed.
+     *
+     * @param value     the value of the header (can be null)
+     * @param nowMillis the current time, System.currentTimeMillis()
+     */
+    public static long parseRetryAfter(String value, long nowMillis) {
+        if (value == null || value.trim().isEmpty()) {
+            return -1;
+        }
+        value = value.trim();
+        try {
+            return Math.max(0, TimeUnit.SECONDS.toMillis(Long.parseLong(value)));
+        } catch (NumberFormatException e) {
+            // Not a number of seconds, so maybe a date
+        }
+        SimpleDateFormat dateFormat = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        try {
+            return Math.max(0, dateFormat.parse(value).getTime() - nowMillis);
+        } catch (ParseException e) {
+            return -1;
+        }
+    }
+}
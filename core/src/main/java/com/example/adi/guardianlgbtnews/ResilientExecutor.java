@@ -0,0 +1,320 @@
+package com.example.adi.guardianlgbtnews;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the attempts of a request so that one slow or failed attempt doesn't hold the caller for
+ * long:
+ * <ul>
+ * <li>failed attempts are retried after an exponential backoff with full jitter, as long as
+ * the request's deadline allows it;</li>
+ * <li>if hedging is on and an attempt takes longer than the given percentile of the recent
+ * successful ones, a second identical attempt is started and the first one to succeed wins;</li>
+ * <li>while the {@link CircuitBreaker} is open no attempt is made at all, and the caller gets
+ * a {@link CircuitOpenException} right away;</li>
+ * <li>if a {@link RequestScheduler} is set, every attempt waits for one of its permits, and a
+ * "429 Too Many Requests" pauses it for the time asked by the server rather than counting as
+ * a failure of the API. A hedged attempt is only made if a permit is free right away.</li>
+ * </ul>
+ * Attempts must be idempotent, and must release their own resources even if their result is
+ * never used.
+ */
+public final class ResilientExecutor {
+
+    // Default policy
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+    public static final long DEFAULT_BASE_BACKOFF_MILLIS = 250;
+    public static final long DEFAULT_MAX_BACKOFF_MILLIS = 2000;
+    public static final long DEFAULT_DEADLINE_MILLIS = 12000;
+    public static final double DEFAULT_HEDGE_PERCENTILE = 95;
+
+    // Hedging needs this many samples to know what a slow attempt is
+    private static final int MIN_HEDGE_SAMPLES = 20;
+    // Never hedge sooner than this, so fast networks don't double their requests
+    private static final long MIN_HEDGE_DELAY_MILLIS = 150;
+
+    // States
+    private final CircuitBreaker mCircuitBreaker;
+    private final ExecutorService mAttemptExecutor;
+    private final LatencyHistogram mAttemptLatency = new LatencyHistogram(256);
+    private volatile int mMaxAttempts = DEFAULT_MAX_ATTEMPTS;
+    private volatile long mBaseBackoffMillis = DEFAULT_BASE_BACKOFF_MILLIS;
+    private volatile long mMaxBackoffMillis = DEFAULT_MAX_BACKOFF_MILLIS;
+    private volatile long mDeadlineMillis = DEFAULT_DEADLINE_MILLIS;
+    private volatile double mHedgePercentile = DEFAULT_HEDGE_PERCENTILE;
+    private volatile RequestScheduler mScheduler;
+
+    // Constructor
+    public ResilientExecutor(CircuitBreaker circuitBreaker) {
+        mCircuitBreaker = circuitBreaker;
+        // Attempts run on their own threads, so the caller can stop waiting for a stalled one
+        mAttemptExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger mCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "RequestAttempt-" + mCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public void setMaxAttempts(int maxAttempts) {
+        mMaxAttempts = Math.max(1, maxAttempts);
+    }
+
+    /**
+     * Set the backoff before the first retry, and the most a backoff can grow to.
+     */
+    public void setBackoff(long baseMillis, long maxMillis) {
+        mBaseBackoffMillis = baseMillis;
+        mMaxBackoffMillis = maxMillis;
+    }
+
+    /**
+     * Set how long a request may take, all attempts and backoffs included.
+     */
+    public void setDeadline(long deadlineMillis) {
+        mDeadlineMillis = deadlineMillis;
+    }
+
+    /**
+     * Set the percentile of the recent attempt latencies after which a hedged attempt is
+     * started, or 0 to turn hedging off.
+     */
+    public void setHedgePercentile(double hedgePercentile) {
+        mHedgePercentile = hedgePercentile;
+    }
+
+    /**
+     * Set the scheduler the attempts take their permits from, or null to make them right away.
+     */
+    public void setScheduler(RequestScheduler scheduler) {
+        mScheduler = scheduler;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return mCircuitBreaker;
+    }
+
+    /**
+     * Run the given attempt with the foreground priority; see {@link #execute(Callable, int)}.
+     */
+    public <T> T execute(Callable<T> attempt) throws IOException {
+        return execute(attempt, RequestScheduler.PRIORITY_FOREGROUND);
+    }
+
+    /**
+     * Run the given attempt until it succeeds, it fails in a way that won't be fixed by retrying,
+     * or the attempts or the deadline run out. Throws the last failure in the last two cases.
+     *
+     * @param priority the priority of the attempts' permits, one of the
+     *                 RequestScheduler.PRIORITY_ constants
+     */
+    public <T> T execute(Callable<T> attempt, int priority) throws IOException {
+        RequestScheduler scheduler = mScheduler;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(mDeadlineMillis);
+        IOException lastFailure = null;
+        for (int attemptNumber = 0; attemptNumber < mMaxAttempts; attemptNumber++) {
+            if (attemptNumber > 0) {
+                // Wait before retrying, unless the deadline would pass in the meantime
+                long backoff = backoffMillis(attemptNumber);
+                if (System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backoff) >= deadline) {
+                    break;
+                }
+                sleep(backoff);
+                FetchMetrics.count(FetchMetrics.COUNT_RETRIES, 1);
+            }
+
+            try {
+                mCircuitBreaker.acquire();
+            } catch (CircuitOpenException e) {
+                FetchMetrics.count(FetchMetrics.COUNT_SHORT_CIRCUITED, 1);
+                throw e;
+            }
+            boolean permitted;
+            try {
+                permitted = scheduler == null || scheduler.acquire(priority,
+                        TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+            } catch (InterruptedIOException e) {
+                // The caller gave up while waiting; a half-open breaker's trial must be released
+                mCircuitBreaker.onNeutral();
+                throw e;
+            }
+            if (!permitted) {
+                // No permit before the deadline: the API isn't to blame
+                mCircuitBreaker.onNeutral();
+                break;
+            }
+            try {
+                T result = runHedged(attempt, deadline, scheduler, priority);
+                mCircuitBreaker.onSuccess();
+                return result;
+            } catch (HttpStatusException e) {
+                if (e.isRateLimited()) {
+                    // The API works, but wants fewer requests: hold them all back for a while
+                    FetchMetrics.count(FetchMetrics.COUNT_RATE_LIMITED, 1);
+                    if (scheduler != null) {
+                        long retryAfter = e.getRetryAfterMillis();
+                        scheduler.pause(retryAfter >= 0 ? retryAfter : RequestScheduler.DEFAULT_PAUSE_MILLIS);
+                    }
+                    mCircuitBreaker.onNeutral();
+                    lastFailure = e;
+                    continue;
+                }
+                if (!e.isRetryable()) {
+                    // The API answered; it's the request that is wrong
+                    mCircuitBreaker.onNeutral();
+                    throw e;
+                }
+                mCircuitBreaker.onFailure();
+                lastFailure = e;
+            } catch (InterruptedIOException e) {
+                // Timeouts are failures; being interrupted means the caller gave up
+                if (!(e instanceof SocketTimeoutException) || Thread.currentThread().isInterrupted()) {
+                    mCircuitBreaker.onNeutral();
+                    throw e;
+                }
+                mCircuitBreaker.onFailure();
+                lastFailure = e;
+            } catch (IOException e) {
+                mCircuitBreaker.onFailure();
+                lastFailure = e;
+            } catch (RuntimeException | Error e) {
+                // e.g. a response that can't be parsed: not worth retrying, but the breaker must
+                // hear of it, or a half-open one would wait for its trial forever
+                mCircuitBreaker.onFailure();
+                throw e;
+            }
+        }
+        throw lastFailure != null ? lastFailure : new SocketTimeoutException("Request deadline passed");
+    }
+
+    // Run one attempt, and a hedged copy of it if the first one is slow. Returns the result of
+    // the first one to succeed, or throws the failure of the last one to fail.
+    private <T> T runHedged(Callable<T> attempt, long deadline, RequestScheduler scheduler,
+            int priority) throws IOException {
+        CompletionService<T> completion = new ExecutorCompletionService<>(mAttemptExecutor);
+        List<Future<T>> started = new ArrayList<>(2);
+        long start = System.nanoTime();
+        started.add(completion.submit(timed(attempt)));
+        long hedgeDelay = hedgeDelayNanos();
+        Future<T> hedge = null;
+        IOException failure = null;
+        try {
+            while (!started.isEmpty()) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    throw new SocketTimeoutException("Request deadline passed");
+                }
+                // Wait for an attempt to end, or for the time to start the hedged one
+                boolean mayHedge = hedge == null && hedgeDelay > 0;
+                long wait = mayHedge ? Math.min(remaining, start + hedgeDelay - System.nanoTime()) : remaining;
+                Future<T> done = completion.poll(Math.max(0, wait), TimeUnit.NANOSECONDS);
+                if (done == null) {
+                    if (mayHedge && System.nanoTime() - start >= hedgeDelay) {
+                        if (scheduler != null && !scheduler.tryAcquire(priority)) {
+                            // Spending the quota on a hedge would delay other requests
+                            hedgeDelay = 0;
+                            continue;
+                        }
+                        FetchMetrics.count(FetchMetrics.COUNT_HEDGES, 1);
+                        hedge = completion.submit(timed(attempt));
+                        started.add(hedge);
+                    }
+                    continue;
+                }
+                started.remove(done);
+                try {
+                    T result = done.get();
+                    if (done == hedge) {
+                        FetchMetrics.count(FetchMetrics.COUNT_HEDGE_WINS, 1);
+                    }
+                    return result;
+                } catch (ExecutionException e) {
+                    failure = toIOException(e.getCause());
+                }
+            }
+            throw failure;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the request");
+        } finally {
+            // Attempts still running clean up after themselves
+            for (Future<T> future : started) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    // Wrap an attempt so the latency of its successes is recorded for the hedge delay
+    private <T> Callable<T> timed(final Callable<T> attempt) {
+        return new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                long start = System.nanoTime();
+                T result = attempt.call();
+                mAttemptLatency.record(System.nanoTime() - start);
+                return result;
+            }
+        };
+    }
+
+    // The time after which a hedged attempt is started, or 0 for no hedging
+    private long hedgeDelayNanos() {
+        double percentile = mHedgePercentile;
+        if (percentile <= 0) {
+            return 0;
+        }
+        LatencyHistogram.Snapshot snapshot = mAttemptLatency.snapshot();
+        if (snapshot.getWindowSize() < MIN_HEDGE_SAMPLES) {
+            return 0;
+        }
+        return Math.max(TimeUnit.MILLISECONDS.toNanos(MIN_HEDGE_DELAY_MILLIS),
+                snapshot.getPercentile(percentile));
+    }
+
+    // Exponential backoff with full jitter: a random time up to base * 2^(retry - 1), capped
+    private long backoffMillis(int retry) {
+        long ceiling = Math.min(mMaxBackoffMillis, mBaseBackoffMillis << Math.min(retry - 1, 20));
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    private static void sleep(long millis) throws InterruptedIOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted during backoff");
+        }
+    }
+
+    private static IOException toIOException(Throwable cause) {
+        if (cause instanceof IOException) {
+            return (IOException) cause;
+        }
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new IOException(cause);
+    }
+}
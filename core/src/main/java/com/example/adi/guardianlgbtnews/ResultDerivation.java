@@ -0,0 +1,108 @@
+package com.example.adi.guardianlgbtnews;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Helper methods deciding whether the results of changed requests can be derived from the
+ * results of the old ones, already in memory, instead of being requested again.
+ * <p>
+ * Only the "order-by" and "page-size" parameters may differ. A smaller page is the start of
+ * the loaded one. A larger page, or the other one of "newest" and "oldest", is only known if
+ * the loaded page was short, i.e. held every result of its query. A change from or to
+ * "relevance" always needs a request, as the ranking is the server's.
+ */
+public final class ResultDerivation {
+
+    private static final String ORDER_BY = "order-by";
+    private static final String PAGE_SIZE = "page-size";
+    // The page size of the Guardian API when none is given
+    private static final int DEFAULT_PAGE_SIZE = 10;
+
+    /**
+     * Create a private constructor because no one should ever create a {@link ResultDerivation}
+     * object. This class is only meant to hold static methods.
+     */
+    private ResultDerivation() {
+    }
+
+    /**
+     * Return the results of the new queries, one list per query in the same order, derived
+     * from the results of the old ones, or null if any of them needs a request.
+     *
+     * @param oldQueries the queries the results were loaded for
+     * @param oldResults the NewsItems of each old query, in its order (null for a failed one)
+     * @param newQueries the queries to derive the results of
+     */
+    public static List<List<NewsItem>> derive(List<GuardianQuery> oldQueries,
+            List<List<NewsItem>> oldResults, List<GuardianQuery> newQueries) {
+        if (oldQueries.size() != newQueries.size() || oldResults.size() != oldQueries.size()) {
+            return null;
+        }
+        List<List<NewsItem>> newResults = new ArrayList<>(newQueries.size());
+        for (int i = 0; i < newQueries.size(); i++) {
+            List<NewsItem> newResult = derive(oldQueries.get(i), oldResults.get(i), newQueries.get(i));
+            if (newResult == null) {
+                return null;
+            }
+            newResults.add(newResult);
+        }
+        return newResults;
+    }
+
+    // Derive the results of one query, or return null
+    private static List<NewsItem> derive(GuardianQuery oldQuery, List<NewsItem> oldResult,
+            GuardianQuery newQuery) {
+        // Anything else than the order and the page size is another search
+        if (oldResult == null || !oldQuery.without(ORDER_BY).without(PAGE_SIZE)
+                .equals(newQuery.without(ORDER_BY).without(PAGE_SIZE))) {
+            return null;
+        }
+        int oldPageSize = pageSizeOf(oldQuery);
+        int newPageSize = pageSizeOf(newQuery);
+        // A short page holds every result there is
+        boolean complete = oldResult.size() < oldPageSize;
+        if (newPageSize > oldPageSize && !complete) {
+            return null;
+        }
+
+        String oldOrderBy = oldQuery.getParameter(ORDER_BY);
+        String newOrderBy = newQuery.getParameter(ORDER_BY);
+        List<NewsItem> newResult = new ArrayList<>(oldResult);
+        if (oldOrderBy == null ? newOrderBy != null : !oldOrderBy.equals(newOrderBy)) {
+            if (!complete || !isByDate(oldOrderBy) || !isByDate(newOrderBy)) {
+                return null;
+            }
+            final boolean newestFirst = "newest".equals(newOrderBy);
+            // The sort is stable, so items of the same date keep their order
+            Collections.sort(newResult, new Comparator<NewsItem>() {
+                @Override
+                public int compare(NewsItem a, NewsItem b) {
+                    return IsoDates.compare(a.getPublishedAt(), b.getPublishedAt(), newestFirst);
+                }
+            });
+        }
+        if (newResult.size() > newPageSize) {
+            newResult = new ArrayList<>(newResult.subList(0, newPageSize));
+        }
+        return newResult;
+    }
+
+    private static boolean isByDate(String orderBy) {
+        return "newest".equals(orderBy) || "oldest".equals(orderBy);
+    }
+
+    private static int pageSizeOf(GuardianQuery query) {
+        String pageSize = query.getParameter(PAGE_SIZE);
+        if (pageSize == null) {
+            return DEFAULT_PAGE_SIZE;
+        }
+        try {
+            return Integer.parseInt(pageSize);
+        } catch (NumberFormatException e) {
+            return DEFAULT_PAGE_SIZE;
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package com.example.adi.guardianlgbtnews;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Groups the NewsItems that are versions of the same story, e.g. a live blog and its updates,
+ * by the similarity of their titles. Items are added one at a time, e.g. as pages arrive, and
+ * each one only costs a constant amount of work, however many were added before: no two items
+ * are ever compared unless they are likely near-duplicates.
+ * <p>
+ * Each title is reduced once to a MinHash sketch of its character shingles: NUM_HASHES minimums,
+ * two sketches agreeing in about the share of their components that their titles share
+ * shingles (the Jaccard similarity). The sketches are split into BANDS bands, and a new item is
+ * only compared to the items that have an identical band (locality-sensitive hashing), which
+ * finds the pairs above about 50% similarity. A candidate joins the item's cluster if their
+ * sketches agree on at least SIMILARITY_THRESHOLD of their components.
+ * <p>
+ * The first item of a cluster represents it. This class isn't thread-safe.
+ */
+public final class StoryClusterer {
+
+    // The length of the shingles, in characters of the normalized title
+    private static final int SHINGLE_LENGTH = 5;
+
+    // The sketch: BANDS bands of ROWS components
+    private static final int BANDS = 16;
+    private static final int ROWS = 4;
+    private static final int NUM_HASHES = BANDS * ROWS;
+
+    // The share of equal sketch components of near-duplicates
+    private static final double SIMILARITY_THRESHOLD = 0.5;
+
+    // The most items kept per band value, so a very common one doesn't make the work quadratic
+    private static final int MAX_BUCKET_SIZE = 32;
+
+    // The seeds of the hash functions, the same in every run
+    private static final long[] SEEDS = new long[NUM_HASHES];
+
+    static {
+        long state = 0x5DEECE66DL;
+        for (int i = 0; i < NUM_HASHES; i++) {
+            state += 0x9E3779B97F4A7C15L;
+            SEEDS[i] = mix(state);
+        }
+    }
+
+    // States
+    private final List<NewsItem> mItems = new ArrayList<>();
+    // The sketch of each item, or null if its title has no words
+    private final List<int[]> mSketches = new ArrayList<>();
+    // The union-find forest of the clusters: the parent of each item, the root being the first item
+    private int[] mParents = new int[16];
+    private final HashMap<String, Integer> mIndexByUrl = new HashMap<>();
+    // The items of each band value, by the hash of the band and its values
+    private final HashMap<Long, List<Integer>> mBuckets = new HashMap<>();
+
+    /**
+     * Add an item to the clusters. Returns true if it is the first of its cluster, false if it
+     * is a near-duplicate of an item added before (or has the same url as one).
+     */
+    public boolean add(NewsItem item) {
+        if (mIndexByUrl.containsKey(item.getUrl())) {
+            return false;
+        }
+        int index = mItems.size();
+        int[] sketch = sketch(item.getTitle());
+        mItems.add(item);
+        mSketches.add(sketch);
+        mIndexByUrl.put(item.getUrl(), index);
+        if (index == mParents.length) {
+            mParents = Arrays.copyOf(mParents, index * 2);
+        }
+        mParents[index] = index;
+        if (sketch == null) {
+            return true;
+        }
+
+        for (int band = 0; band < BANDS; band++) {
+            Long key = bandKey(sketch, band);
+            List<Integer> bucket = mBuckets.get(key);
+            if (bucket == null) {
+                bucket = new ArrayList<>(2);
+                mBuckets.put(key, bucket);
+            }
+            for (int candidate : bucket) {
+                // A candidate already in the same cluster needs no comparison
+                if (find(candidate) != find(index)
+                        && similarity(sketch, mSketches.get(candidate)) >= SIMILARITY_THRESHOLD) {
+                    union(candidate, index);
+                }
+            }
+            if (bucket.size() < MAX_BUCKET_SIZE) {
+                bucket.add(index);
+            }
+        }
+        return find(index) == index;
+    }
+
+    /**
+     * Add all the given items, in their order.
+     */
+    public void addAll(List<NewsItem> items) {
+        for (NewsItem item : items) {
+            add(item);
+        }
+    }
+
+    /**
+     * Return the number of items added (the ones with the url of an earlier one aside).
+     */
+    public int size() {
+        return mItems.size();
+    }
+
+    /**
+     * Forget all the items, e.g. to start over from the first page.
+     */
+    public void clear() {
+        mItems.clear();
+        mSketches.clear();
+        mIndexByUrl.clear();
+        mBuckets.clear();
+    }
+
+    /**
+     * Return the first item of every cluster, in the order they were added.
+     */
+    public List<NewsItem> getRepresentatives() {
+        List<NewsItem> representatives = new ArrayList<>();
+        for (int i = 0; i < mItems.size(); i++) {
+            if (find(i) == i) {
+                representatives.add(mItems.get(i));
+            }
+        }
+        return representatives;
+    }
+
+    /**
+     * Return the clusters, in the order of their first item, each one in the order its items
+     * were added.
+     */
+    public List<List<NewsItem>> getClusters() {
+        HashMap<Integer, List<NewsItem>> clustersByRoot = new HashMap<>();
+        List<List<NewsItem>> clusters = new ArrayList<>();
+        for (int i = 0; i < mItems.size(); i++) {
+            int root = find(i);
+            List<NewsItem> cluster = clustersByRoot.get(root);
+            if (cluster == null) {
+                cluster = new ArrayList<>();
+                clustersByRoot.put(root, cluster);
+                clusters.add(cluster);
+            }
+            cluster.add(mItems.get(i));
+        }
+        return clusters;
+    }
+
+    /**
+     * Return the given list with only the first item of every story, in the same order.
+     */
+    public static List<NewsItem> collapse(List<NewsItem> items) {
+        StoryClusterer clusterer = new StoryClusterer();
+        clusterer.addAll(items);
+        return clusterer.getRepresentatives();
+    }
+
+    // The root of the cluster of the given item, halving the path to it on the way
+    private int find(int index) {
+        while (mParents[index] != index) {
+            mParents[index] = mParents[mParents[index]];
+            index = mParents[index];
+        }
+        return index;
+    }
+
+    // Merge the clusters of the given items under the root added first, so it stays the representative
+    private void union(int a, int b) {
+        int rootA = find(a);
+        int rootB = find(b);
+        if (rootA < rootB) {
+            mParents[rootB] = rootA;
+        } else if (rootB < rootA) {
+            mParents[rootA] = rootB;
+        }
+    }
+
+    /**
+     * Return the MinHash sketch of the given title, or null if it has no letters or digits.
+     */
+    static int[] sketch(String title) {
+        String normalized = normalize(title);
+        if (normalized.isEmpty()) {
+            return null;
+        }
+        int[] sketch = new int[NUM_HASHES];
+        Arrays.fill(sketch, Integer.MAX_VALUE);
+        int shingles = Math.max(1, normalized.length() - SHINGLE_LENGTH + 1);
+        for (int start = 0; start < shingles; start++) {
+            long shingle = hash(normalized, start, Math.min(normalized.length(), start + SHINGLE_LENGTH));
+            for (int i = 0; i < NUM_HASHES; i++) {
+                int value = (int) mix(shingle ^ SEEDS[i]);
+                if (value < sketch[i]) {
+                    sketch[i] = value;
+                }
+            }
+        }
+        return sketch;
+    }
+
+    /**
+     * Return the share of equal components of two sketches, an estimate of the Jaccard
+     * similarity of the shingles of their titles.
+     */
+    static double similarity(int[] a, int[] b) {
+        int equal = 0;
+        for (int i = 0; i < NUM_HASHES; i++) {
+            if (a[i] == b[i]) {
+                equal++;
+            }
+        }
+        return (double) equal / NUM_HASHES;
+    }
+
+    // The title in lower case, with only single spaces between its words
+    private static String normalize(String title) {
+        if (title == null) {
+            return "";
+        }
+        StringBuilder normalized = new StringBuilder(title.length());
+        String lowerCase = title.toLowerCase(Locale.ROOT);
+        boolean space = false;
+        for (int i = 0; i < lowerCase.length(); i++) {
+            char c = lowerCase.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                if (space && normalized.length() > 0) {
+                    normalized.append(' ');
+                }
+                normalized.append(c);
+                space = false;
+            } else {
+                space = true;
+            }
+        }
+        return normalized.toString();
+    }
+
+    // A 64-bit FNV-1a hash of the given characters
+    private static long hash(String s, int start, int end) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = start; i < end; i++) {
+            hash ^= s.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    // The finalizer of SplitMix64, spreading every input bit over the whole output
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    // The key of the given band of a sketch in mBuckets
+    private static Long bandKey(int[] sketch, int band) {
+        long key = band;
+        for (int i = band * ROWS; i < (band + 1) * ROWS; i++) {
+            key = mix(key * 31 + sketch[i]);
+        }
+        return key;
+    }
+}
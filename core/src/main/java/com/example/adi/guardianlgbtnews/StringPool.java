@@ -0,0 +1,40 @@
+package com.example.adi.guardianlgbtnews;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A pool of the strings that repeat across NewsItems, like section names and bylines, so every
+ * item refers to one shared instance instead of its own copy.
+ */
+public final class StringPool {
+
+    // Past this many strings the pool is emptied, so it can't grow without bound
+    private static final int MAX_POOLED_STRINGS = 4096;
+
+    private static final ConcurrentHashMap<String, String> sPool = new ConcurrentHashMap<>();
+
+    /**
+     * Create a private constructor because no one should ever create a {@link StringPool}
+     * object. This class is only meant to hold static methods.
+     */
+    private StringPool() {
+    }
+
+    /**
+     * Return the pooled instance equal to the given string, pooling it if there is none.
+     */
+    public static String intern(String value) {
+        if (value == null || value.isEmpty()) {
+            return "";
+        }
+        String pooled = sPool.get(value);
+        if (pooled != null) {
+            return pooled;
+        }
+        if (sPool.size() >= MAX_POOLED_STRINGS) {
+            sPool.clear();
+        }
+        pooled = sPool.putIfAbsent(value, value);
+        return pooled != null ? pooled : value;
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.adi.guardianlgbtnews;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Checks that bodies survive reopening, replacement, compaction and a torn last record.
+ */
+public class ArticleBodyStoreTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void readsBackAfterReopening() throws IOException {
+        File file = new File(mFolder.getRoot(), "bodies");
+        ArticleBodyStore store = ArticleBodyStore.open(file);
+        store.append("https://example.com/a", "First body");
+        store.append("https://example.com/b", "Ünïcode body");
+        store.append("https://example.com/a", "Second body");
+        assertEquals("Second body", store.get("https://example.com/a"));
+        store.close();
+
+        store = ArticleBodyStore.open(file);
+        assertEquals(2, store.getCount());
+        assertEquals("Second body", store.get("https://example.com/a"));
+        assertEquals("Ünïcode body", store.get("https://example.com/b"));
+        assertNull(store.get("https://example.com/c"));
+        store.close();
+    }
+
+    @Test
+    public void predictsTheSizeOfAnAppend() throws IOException {
+        ArticleBodyStore store = ArticleBodyStore.open(new File(mFolder.getRoot(), "bodies"));
+        assertEquals(1000, store.getAverageRecordSize(1000));
+
+        long predicted = store.getSizeAfterAppend("https://example.com/a", "Ünïcode body");
+        store.append("https://example.com/a", "Ünïcode body");
+        assertEquals(predicted, store.getSize());
+        // The record counts the url and the lengths, not only the body
+        assertEquals(8 + "https://example.com/a".length() + "Ünïcode body".getBytes("UTF-8").length,
+                store.getAverageRecordSize(1000));
+        store.close();
+    }
+
+    @Test
+    public void retainOnlyDropsTheOtherAndReplacedRecords() throws IOException {
+        File file = new File(mFolder.getRoot(), "bodies");
+        ArticleBodyStore store = ArticleBodyStore.open(file);
+        store.append("https://example.com/a", "Old body");
+        store.append("https://example.com/a", "New body");
+        store.append("https://example.com/b", "Other body");
+        long size = store.getSize();
+
+        store.retainOnly(Collections.singleton("https://example.com/a"));
+        assertEquals(1, store.getCount());
+        assertFalse(store.contains("https://example.com/b"));
+        assertEquals("New body", store.get("https://example.com/a"));
+        assertEquals(true, store.getSize() < size);
+        store.close();
+    }
+
+    @Test
+    public void cutsOffATornRecord() throws IOException {
+        File file = new File(mFolder.getRoot(), "bodies");
+        ArticleBodyStore store = ArticleBodyStore.open(file);
+        store.append("https://example.com/a", "Complete body");
+        store.append("https://example.com/b", "Torn body");
+        long size = store.getSize();
+        store.close();
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        randomAccessFile.setLength(size - 3);
+        randomAccessFile.close();
+
+        store = ArticleBodyStore.open(file);
+        assertEquals(1, store.getCount());
+        assertEquals("Complete body", store.get("https://example.com/a"));
+        // The next body is appended where the torn one started
+        store.append("https://example.com/c", "Next body");
+        assertEquals("Next body", store.get("https://example.com/c"));
+        store.close();
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.adi.guardianlgbtnews;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that {@link FetchPolicy} sizes the requests for the link until it has measured the
+ * network, and for the measurements then.
+ */
+public class FetchPolicyTest {
+
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void goesByTheLinkUntilAResponseIsMeasured() {
+        FetchPolicy policy = new FetchPolicy();
+        policy.setNetwork(FetchPolicy.LINK_SLOW, true);
+        assertEquals(5, policy.getPageSize(10));
+        assertEquals(FetchPolicy.FIELDS_LEAN, policy.getShowFields());
+
+        policy.setNetwork(FetchPolicy.LINK_FAST, false);
+        assertEquals(30, policy.getPageSize(10));
+        assertEquals(FetchPolicy.FIELDS_FULL, policy.getShowFields());
+        assertEquals(20, policy.getPrefetchCount(20));
+    }
+
+    @Test
+    public void aSlowResponseOutweighsAFastLink() {
+        FetchPolicy policy = new FetchPolicy();
+        policy.setNetwork(FetchPolicy.LINK_FAST, false);
+        // 20 KB in a second, after two seconds of waiting for the headers
+        policy.onResponse(2000 * MILLIS, 20 * 1024, 1000 * MILLIS);
+
+        assertEquals(FetchPolicy.TIER_SLOW, policy.getTier());
+        assertEquals(0, policy.getPrefetchCount(20));
+        // The attempts wait long enough for a usual response
+        assertTrue(policy.getReadTimeoutMillis() >= 8000);
+
+        // The estimates of the old network are dropped
+        policy.setNetwork(FetchPolicy.LINK_MEDIUM, true);
+        assertEquals(FetchPolicy.TIER_MEDIUM, policy.getTier());
+        assertEquals(-1, policy.getLatencyMillis(), 0);
+    }
+
+    @Test
+    public void aSlowNetworkIsNotCutOffByTheDefaultDeadline() {
+        FetchPolicy policy = new FetchPolicy();
+        policy.setNetwork(FetchPolicy.LINK_SLOW, false);
+        // Seven seconds of waiting for the headers stretch the read timeout
+        policy.onResponse(7000 * MILLIS, 0, 0);
+
+        long attemptMillis = policy.getConnectTimeoutMillis() + policy.getReadTimeoutMillis();
+        assertTrue(attemptMillis > ResilientExecutor.DEFAULT_DEADLINE_MILLIS);
+        // A whole attempt, and a retry, fit in the deadline
+        assertTrue(policy.getDeadlineMillis() >= 2 * attemptMillis);
+
+        // A fast network still gives up on a stalled request soon
+        policy.setNetwork(FetchPolicy.LINK_FAST, false);
+        assertTrue(policy.getDeadlineMillis() <= 2 * ResilientExecutor.DEFAULT_DEADLINE_MILLIS);
+    }
+
+    @Test
+    public void aMeteredNetworkNeverGetsTheLargePages() {
+        FetchPolicy policy = new FetchPolicy();
+        policy.setNetwork(FetchPolicy.LINK_MEDIUM, true);
+        // 1 MB in half a second, with 50ms of latency
+        policy.onResponse(50 * MILLIS, 1024 * 1024, 500 * MILLIS);
+
+        assertEquals(FetchPolicy.TIER_MEDIUM, policy.getTier());
+        assertEquals(10, policy.getPageSize(10));
+    }
+}
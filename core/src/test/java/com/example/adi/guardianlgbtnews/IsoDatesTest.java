@@ -0,0 +1,48 @@
+package com.example.adi.guardianlgbtnews;
+
+import org.junit.Test;
+
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks {@link IsoDates} against SimpleDateFormat.
+ */
+public class IsoDatesTest {
+
+    @Test
+    public void parsesTimestampsAndDays() throws Exception {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+        assertEquals(format.parse("2018-06-01T10:42:07Z").getTime(),
+                IsoDates.parse("2018-06-01T10:42:07Z"));
+        assertEquals(format.parse("2016-02-29T00:00:00Z").getTime(), IsoDates.parse("2016-02-29"));
+        assertEquals(IsoDates.UNKNOWN, IsoDates.parse(""));
+        assertEquals(IsoDates.UNKNOWN, IsoDates.parse("yesterday"));
+    }
+
+    @Test
+    public void formatsDaysBackToTheSameDay() {
+        String[] days = {"1970-01-01", "1999-12-31", "2000-02-29", "2018-06-01", "2100-03-01"};
+        for (String day : days) {
+            assertEquals(day, IsoDates.formatDay(IsoDates.parse(day + "T23:59:59Z")));
+        }
+        assertEquals("", IsoDates.formatDay(IsoDates.UNKNOWN));
+    }
+
+    @Test
+    public void sortsUnknownDatesLastEitherWay() {
+        long day = IsoDates.parse("2018-06-01");
+        long nextDay = IsoDates.parse("2018-06-02");
+        assertTrue(IsoDates.compare(nextDay, day, true) < 0);
+        assertTrue(IsoDates.compare(day, nextDay, false) < 0);
+        assertTrue(IsoDates.compare(day, IsoDates.UNKNOWN, true) < 0);
+        assertTrue(IsoDates.compare(day, IsoDates.UNKNOWN, false) < 0);
+        assertEquals(0, IsoDates.compare(IsoDates.UNKNOWN, IsoDates.UNKNOWN, true));
+    }
+}
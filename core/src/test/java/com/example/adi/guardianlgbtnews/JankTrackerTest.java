@@ -0,0 +1,47 @@
+package com.example.adi.guardianlgbtnews;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks how {@link JankTracker} counts janky and dropped frames.
+ */
+public class JankTrackerTest {
+
+    private static final long INTERVAL = TimeUnit.MILLISECONDS.toNanos(16);
+
+    @Test
+    public void countsTheIntervalsALongFrameMissed() {
+        JankTracker tracker = new JankTracker(INTERVAL);
+        long frameTime = 1000;
+        tracker.onFrame(frameTime);
+        // Two smooth frames, one a little late, then one spanning four intervals
+        tracker.onFrame(frameTime += INTERVAL);
+        tracker.onFrame(frameTime += INTERVAL + INTERVAL / 4);
+        tracker.onFrame(frameTime += 4 * INTERVAL);
+
+        assertEquals(3, tracker.getFrameCount());
+        assertEquals(1, tracker.getJankyFrames());
+        assertEquals(3, tracker.getDroppedFrames());
+        assertEquals(4 * INTERVAL, tracker.getFrames().getMaxNanos());
+    }
+
+    @Test
+    public void doesNotCountTheTimeBetweenAnimations() {
+        JankTracker tracker = new JankTracker(INTERVAL);
+        tracker.onFrame(1000);
+        tracker.onFrame(1000 + INTERVAL);
+        tracker.stop();
+        // A second later the next scroll starts
+        long frameTime = 1000 + TimeUnit.SECONDS.toNanos(1);
+        tracker.onFrame(frameTime);
+        tracker.onFrame(frameTime + INTERVAL);
+
+        assertEquals(2, tracker.getFrameCount());
+        assertEquals(0, tracker.getJankyFrames());
+        assertEquals(0, tracker.getDroppedFrames());
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.adi.guardianlgbtnews;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the percentiles and the rolling window of {@link LatencyHistogram}.
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void percentilesUseNearestRank() {
+        LatencyHistogram histogram = new LatencyHistogram(100);
+        for (int i = 100; i >= 1; i--) {
+            histogram.record(i);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+        assertEquals(50, snapshot.getPercentile(50));
+        assertEquals(95, snapshot.getPercentile(95));
+        assertEquals(99, snapshot.getPercentile(99));
+        assertEquals(100, snapshot.getMaxNanos());
+        assertEquals(100, snapshot.getCount());
+    }
+
+    @Test
+    public void onlyRecentSamplesAreKept() {
+        LatencyHistogram histogram = new LatencyHistogram(4);
+        for (int i = 1; i <= 10; i++) {
+            histogram.record(i * 10);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+        // The window holds 70, 80, 90 and 100; the count and max cover every sample
+        assertEquals(4, snapshot.getWindowSize());
+        assertEquals(70, snapshot.getPercentile(0));
+        assertEquals(80, snapshot.getPercentile(50));
+        assertEquals(10, snapshot.getCount());
+        assertEquals(55, snapshot.getMeanNanos());
+    }
+}
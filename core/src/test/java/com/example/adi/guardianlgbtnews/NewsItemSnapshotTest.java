@@ -0,0 +1,61 @@
+package com.example.adi.guardianlgbtnews;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Checks that {@link NewsItemSnapshot} reads back what it wrote, and nothing else.
+ */
+public class NewsItemSnapshotTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void readsBackTheSavedItems() throws IOException {
+        File file = new File(mFolder.getRoot(), "snapshot");
+        List<NewsItem> saved = Arrays.asList(
+                new NewsItem("Pride in the city | Jane Doe", "World news", "https://example.com/a",
+                        "Jane Doe", IsoDates.parse("2018-06-01T10:00:00Z"), "https://i.example.com/a.jpg"),
+                new NewsItem("Ünïcode tïtle", "World news", "https://example.com/b", "",
+                        IsoDates.UNKNOWN));
+        NewsItemSnapshot.write(file, "tag", saved);
+
+        List<NewsItem> read = NewsItemSnapshot.read(file, "tag").getNewsItems();
+        assertEquals(saved.size(), read.size());
+        for (int i = 0; i < saved.size(); i++) {
+            assertEquals(saved.get(i).getWebTitle(), read.get(i).getWebTitle());
+            assertEquals(saved.get(i).getSection(), read.get(i).getSection());
+            assertEquals(saved.get(i).getUrl(), read.get(i).getUrl());
+            assertEquals(saved.get(i).getAuthor(), read.get(i).getAuthor());
+            assertEquals(saved.get(i).getPublishedAt(), read.get(i).getPublishedAt());
+            assertEquals(saved.get(i).getThumbnailUrl(), read.get(i).getThumbnailUrl());
+        }
+    }
+
+    @Test
+    public void ignoresOtherTagsAndBrokenFiles() throws IOException {
+        File file = new File(mFolder.getRoot(), "snapshot");
+        NewsItemSnapshot.write(file, "tag", Arrays.asList(
+                new NewsItem("Title", "Section", "https://example.com/a", "Author", 0)));
+        assertNull(NewsItemSnapshot.read(file, "other tag"));
+
+        // Cut the file in the middle of its item
+        FileOutputStream out = new FileOutputStream(file, true);
+        out.getChannel().truncate(file.length() - 8);
+        out.close();
+        assertNull(NewsItemSnapshot.read(file, "tag"));
+
+        assertNull(NewsItemSnapshot.read(new File(mFolder.getRoot(), "missing"), "tag"));
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.adi.guardianlgbtnews;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that the streaming and the JSONObject parsers build the same NewsItems.
+ */
+public class NewsItemsParserTest {
+
+    private static final String RESPONSE = "{\"response\":{\"status\":\"ok\",\"total\":2,"
+            + "\"results\":["
+            + "{\"id\":\"a\",\"sectionName\":\"World news\",\"webPublicationDate\":\"2018-06-01T10:00:00Z\","
+            + "\"webTitle\":\"Pride in the city | Jane Doe\",\"webUrl\":\"https://www.theguardian.com/a\","
+            + "\"fields\":{\"byline\":\"Jane Doe\",\"thumbnail\":\"https://i.example.com/a.jpg\"},\"tags\":[]},"
+            + "{\"id\":\"b\",\"sectionName\":\"Opinion\",\"webPublicationDate\":\"2018-05-31T08:30:00Z\","
+            + "\"webTitle\":\"A second story\",\"webUrl\":\"https://www.theguardian.com/b\","
+            + "\"fields\":{\"byline\":\"John Roe\"}}"
+            + "]}}";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Test
+    public void streamingAndTreeParsersAgree() throws IOException {
+        List<NewsItem> streamed = NewsItemsParser.readNewsItems(toStream(RESPONSE));
+        List<NewsItem> tree = NewsItemsParser.extractNewsItems(RESPONSE);
+
+        assertEquals(2, streamed.size());
+        assertEquals(tree.size(), streamed.size());
+        for (int i = 0; i < streamed.size(); i++) {
+            assertEquals(tree.get(i).getTitle(), streamed.get(i).getTitle());
+            assertEquals(tree.get(i).getSection(), streamed.get(i).getSection());
+            assertEquals(tree.get(i).getUrl(), streamed.get(i).getUrl());
+            assertEquals(tree.get(i).getAuthor(), streamed.get(i).getAuthor());
+            assertEquals(tree.get(i).getDate(), streamed.get(i).getDate());
+            assertEquals(tree.get(i).getThumbnailUrl(), streamed.get(i).getThumbnailUrl());
+        }
+        assertEquals("Pride in the city", streamed.get(0).getTitle());
+        assertEquals("2018-06-01", streamed.get(0).getDate());
+        assertEquals("https://i.example.com/a.jpg", streamed.get(0).getThumbnailUrl());
+        assertEquals("", streamed.get(1).getThumbnailUrl());
+        assertEquals(IsoDates.parse("2018-06-01T10:00:00Z"), streamed.get(0).getPublishedAt());
+        // Repeated values share one instance
+        assertSame(streamed.get(0).getAuthor(), tree.get(0).getAuthor());
+    }
+
+    @Test
+    public void streamingParserDefaultsMissingFields() throws IOException {
+        List<NewsItem> newsItems = NewsItemsParser.readNewsItems(toStream(
+                "{\"response\":{\"results\":[{\"webTitle\":\"Untitled\",\"fields\":null}]}}"));
+
+        assertEquals(1, newsItems.size());
+        assertEquals("Untitled", newsItems.get(0).getTitle());
+        assertEquals("", newsItems.get(0).getAuthor());
+        assertEquals("", newsItems.get(0).getDate());
+        assertEquals(IsoDates.UNKNOWN, newsItems.get(0).getPublishedAt());
+    }
+
+    @Test
+    public void readsTheBodyOfAnArticle() throws IOException {
+        String body = NewsItemsParser.readArticleBody(toStream("{\"response\":{\"status\":\"ok\","
+                + "\"content\":{\"id\":\"a\",\"webTitle\":\"Pride\","
+                + "\"fields\":{\"bodyText\":\"First paragraph. Second one.\"}}}}"));
+
+        assertEquals("First paragraph. Second one.", body);
+        assertNull(NewsItemsParser.readArticleBody(toStream("{\"response\":{\"status\":\"error\"}}")));
+    }
+
+    @Test
+    public void handsOverEachItemBeforeTheResponseEnds() {
+        // The connection stalls right after the first result
+        final byte[] head = RESPONSE.substring(0, RESPONSE.indexOf("{\"id\":\"b\"")).getBytes(UTF_8);
+        InputStream stalling = new InputStream() {
+            private int mPosition;
+
+            @Override
+            public int read() throws IOException {
+                if (mPosition == head.length) {
+                    throw new IOException("stalled");
+                }
+                return head[mPosition++] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                if (mPosition == head.length) {
+                    throw new IOException("stalled");
+                }
+                int count = Math.min(length, head.length - mPosition);
+                System.arraycopy(head, mPosition, buffer, offset, count);
+                mPosition += count;
+                return count;
+            }
+        };
+        final List<NewsItem> received = new ArrayList<>();
+        try {
+            NewsItemsParser.readNewsItems(stalling, new NewsItemsParser.OnNewsItemListener() {
+                @Override
+                public void onNewsItem(NewsItem item) {
+                    received.add(item);
+                }
+            });
+            fail("The stalled read should fail");
+        } catch (IOException expected) {
+            // The first result was handed over anyway
+        }
+
+        assertEquals(1, received.size());
+        assertEquals("https://www.theguardian.com/a", received.get(0).getUrl());
+    }
+
+    private static ByteArrayInputStream toStream(String json) {
+        return new ByteArrayInputStream(json.getBytes(UTF_8));
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.adi.guardianlgbtnews;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the rate limiting, the priorities and the pauses of {@link RequestScheduler}.
+ */
+public class RequestSchedulerTest {
+
+    @Test
+    public void spacesOutTheRequestsPastTheBurst() throws IOException {
+        RequestScheduler scheduler = new RequestScheduler(20, 2);
+        long start = System.nanoTime();
+        assertTrue(scheduler.acquire(RequestScheduler.PRIORITY_FOREGROUND, 1000));
+        assertTrue(scheduler.acquire(RequestScheduler.PRIORITY_FOREGROUND, 1000));
+        // The burst is spent; the next permit comes 1/20s later
+        assertFalse(scheduler.tryAcquire(RequestScheduler.PRIORITY_FOREGROUND));
+        assertTrue(scheduler.acquire(RequestScheduler.PRIORITY_FOREGROUND, 1000));
+
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(40));
+    }
+
+    @Test
+    public void foregroundRequestsGoFirst() throws Exception {
+        final RequestScheduler scheduler = new RequestScheduler(20, 1);
+        scheduler.pause(300);
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+
+        Thread background = startAcquiring(scheduler, RequestScheduler.PRIORITY_BACKGROUND,
+                "background", order);
+        while (scheduler.getQueueDepth(RequestScheduler.PRIORITY_BACKGROUND) == 0) {
+            Thread.sleep(5);
+        }
+        // Queued after the background request, served before it
+        Thread foreground = startAcquiring(scheduler, RequestScheduler.PRIORITY_FOREGROUND,
+                "foreground", order);
+        background.join(5000);
+        foreground.join(5000);
+
+        assertEquals(Arrays.asList("foreground", "background"), order);
+    }
+
+    @Test
+    public void givesUpWhenThePauseOutlastsTheTimeout() throws IOException {
+        RequestScheduler scheduler = new RequestScheduler(20, 5);
+        scheduler.pause(10000);
+
+        assertFalse(scheduler.acquire(RequestScheduler.PRIORITY_FOREGROUND, 100));
+    }
+
+    @Test
+    public void parsesRetryAfter() {
+        assertEquals(120000, RequestScheduler.parseRetryAfter("120", 0));
+        // Sun, 03 Jun 2018 10:00:30 GMT is 30s after 1528020000000
+        assertEquals(30000, RequestScheduler.parseRetryAfter("Sun, 03 Jun 2018 10:00:30 GMT",
+                1528020000000L));
+        assertEquals(-1, RequestScheduler.parseRetryAfter("soon", 0));
+        assertEquals(-1, RequestScheduler.parseRetryAfter(null, 0));
+    }
+
+    private static Thread startAcquiring(final RequestScheduler scheduler, final int priority,
+            final String name, final List<String> order) {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (scheduler.acquire(priority, 5000)) {
+                        order.add(name);
+                    }
+                } catch (IOException e) {
+                    throw new AssertionError(e);
+                }
+            }
+        });
+        thread.start();
+        return thread;
+    }
+}
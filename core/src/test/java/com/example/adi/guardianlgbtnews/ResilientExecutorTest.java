@@ -0,0 +1,239 @@
+package com.example.adi.guardianlgbtnews;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks the retries, hedging and circuit breaking of {@link ResilientExecutor}.
+ */
+public class ResilientExecutorTest {
+
+    @Test
+    public void retriesUntilAnAttemptSucceeds() throws IOException {
+        ResilientExecutor executor = newExecutor(new CircuitBreaker());
+        final AtomicInteger attempts = new AtomicInteger();
+
+        String result = executor.execute(new Callable<String>() {
+            @Override
+            public String call() throws IOException {
+                if (attempts.incrementAndGet() < 3) {
+                    throw new HttpStatusException(503);
+                }
+                return "ok";
+            }
+        });
+
+        assertEquals("ok", result);
+        assertEquals(3, attempts.get());
+    }
+
+    @Test
+    public void clientErrorsAreNotRetried() {
+        ResilientExecutor executor = newExecutor(new CircuitBreaker());
+        final AtomicInteger attempts = new AtomicInteger();
+        try {
+            executor.execute(new Callable<String>() {
+                @Override
+                public String call() throws IOException {
+                    attempts.incrementAndGet();
+                    throw new HttpStatusException(404);
+                }
+            });
+            fail();
+        } catch (IOException e) {
+            assertEquals(1, attempts.get());
+        }
+    }
+
+    @Test
+    public void openCircuitFailsWithoutAttempting() {
+        ResilientExecutor executor = newExecutor(new CircuitBreaker(2, 60000));
+        final AtomicInteger attempts = new AtomicInteger();
+        Callable<String> failing = new Callable<String>() {
+            @Override
+            public String call() throws IOException {
+                attempts.incrementAndGet();
+                throw new IOException("down");
+            }
+        };
+        for (int i = 0; i < 2; i++) {
+            try {
+                executor.execute(failing);
+                fail();
+            } catch (CircuitOpenException e) {
+                // The breaker opened during the first call's retries
+                assertEquals(2, attempts.get());
+            } catch (IOException e) {
+                assertEquals(0, i);
+            }
+        }
+        assertEquals(CircuitBreaker.OPEN, executor.getCircuitBreaker().getState());
+    }
+
+    @Test
+    public void unexpectedExceptionOfATrialReopensTheCircuit() throws Exception {
+        ResilientExecutor executor = newExecutor(new CircuitBreaker(1, 50));
+        try {
+            executor.execute(new Callable<String>() {
+                @Override
+                public String call() throws IOException {
+                    throw new IOException("down");
+                }
+            });
+            fail();
+        } catch (IOException e) {
+            assertEquals(CircuitBreaker.OPEN, executor.getCircuitBreaker().getState());
+        }
+        Thread.sleep(100);
+
+        // The half-open trial gets a body it can't parse
+        try {
+            executor.execute(new Callable<String>() {
+                @Override
+                public String call() {
+                    throw new IllegalStateException("Expected BEGIN_OBJECT");
+                }
+            });
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals(CircuitBreaker.OPEN, executor.getCircuitBreaker().getState());
+        }
+        Thread.sleep(100);
+
+        // The next trial is let through
+        assertEquals("ok", executor.execute(new Callable<String>() {
+            @Override
+            public String call() {
+                return "ok";
+            }
+        }));
+        assertEquals(CircuitBreaker.CLOSED, executor.getCircuitBreaker().getState());
+    }
+
+    @Test
+    public void interruptedPermitWaitReleasesTheTrial() throws Exception {
+        final ResilientExecutor executor = newExecutor(new CircuitBreaker(1, 50));
+        try {
+            executor.execute(new Callable<String>() {
+                @Override
+                public String call() throws IOException {
+                    throw new IOException("down");
+                }
+            });
+            fail();
+        } catch (IOException e) {
+            assertEquals(CircuitBreaker.OPEN, executor.getCircuitBreaker().getState());
+        }
+        Thread.sleep(100);
+
+        // The half-open trial waits two seconds for a permit, and is interrupted meanwhile
+        RequestScheduler scheduler = new RequestScheduler(0.5, 1);
+        assertTrue(scheduler.tryAcquire(RequestScheduler.PRIORITY_FOREGROUND));
+        executor.setScheduler(scheduler);
+        final AtomicReference<Exception> failure = new AtomicReference<>();
+        Thread caller = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    executor.execute(new Callable<String>() {
+                        @Override
+                        public String call() {
+                            return "ok";
+                        }
+                    });
+                } catch (IOException e) {
+                    failure.set(e);
+                }
+            }
+        });
+        caller.start();
+        Thread.sleep(100);
+        caller.interrupt();
+        caller.join(5000);
+        assertTrue(failure.get() instanceof InterruptedIOException);
+
+        // The next trial is let through
+        executor.setScheduler(null);
+        assertEquals("ok", executor.execute(new Callable<String>() {
+            @Override
+            public String call() {
+                return "ok";
+            }
+        }));
+        assertEquals(CircuitBreaker.CLOSED, executor.getCircuitBreaker().getState());
+    }
+
+    @Test
+    public void slowAttemptIsHedged() throws IOException {
+        ResilientExecutor executor = newExecutor(new CircuitBreaker());
+        // Teach the executor that attempts are fast
+        for (int i = 0; i < 20; i++) {
+            executor.execute(new Callable<String>() {
+                @Override
+                public String call() {
+                    return "fast";
+                }
+            });
+        }
+
+        final AtomicInteger attempts = new AtomicInteger();
+        final CountDownLatch stalled = new CountDownLatch(1);
+        String result = executor.execute(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                if (attempts.incrementAndGet() == 1) {
+                    // The first attempt stalls until the test ends
+                    stalled.await(5, TimeUnit.SECONDS);
+                    return "stalled";
+                }
+                return "hedged";
+            }
+        });
+        stalled.countDown();
+
+        assertEquals("hedged", result);
+    }
+
+    @Test
+    public void tooManyRequestsPausesTheSchedulerWithoutTrippingTheBreaker() throws IOException {
+        ResilientExecutor executor = newExecutor(new CircuitBreaker(1, 60000));
+        executor.setScheduler(new RequestScheduler(1000, 10));
+        final AtomicInteger attempts = new AtomicInteger();
+        final long[] secondAttemptAt = new long[1];
+        long start = System.nanoTime();
+
+        String result = executor.execute(new Callable<String>() {
+            @Override
+            public String call() throws IOException {
+                if (attempts.incrementAndGet() == 1) {
+                    throw new HttpStatusException(429, 200);
+                }
+                secondAttemptAt[0] = System.nanoTime();
+                return "ok";
+            }
+        });
+
+        assertEquals("ok", result);
+        // The retry waited for the Retry-After
+        assertTrue(secondAttemptAt[0] - start >= TimeUnit.MILLISECONDS.toNanos(190));
+        assertEquals(CircuitBreaker.CLOSED, executor.getCircuitBreaker().getState());
+    }
+
+    private static ResilientExecutor newExecutor(CircuitBreaker circuitBreaker) {
+        ResilientExecutor executor = new ResilientExecutor(circuitBreaker);
+        executor.setBackoff(1, 5);
+        executor.setDeadline(3000);
+        return executor;
+    }
+}
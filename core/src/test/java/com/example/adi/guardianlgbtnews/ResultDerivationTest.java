@@ -0,0 +1,85 @@
+package com.example.adi.guardianlgbtnews;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Checks that {@link ResultDerivation} only derives results the server would have returned.
+ */
+public class ResultDerivationTest {
+
+    private static final GuardianQuery QUERY = new GuardianQuery("https://example.com/search")
+            .with("q", "Pride");
+
+    private static final List<NewsItem> NEWEST_THREE = Arrays.asList(item("c", 3), item("b", 2),
+            item("a", 1));
+
+    @Test
+    public void trimsToASmallerPage() {
+        List<List<NewsItem>> derived = ResultDerivation.derive(
+                Collections.singletonList(query("newest", 3)),
+                Collections.singletonList(NEWEST_THREE),
+                Collections.singletonList(query("newest", 2)));
+
+        assertEquals(Arrays.asList("c", "b"), urlsOf(derived.get(0)));
+    }
+
+    @Test
+    public void onlyResortsACompleteResult() {
+        // A short page holds every result, so the oldest ones are known
+        List<List<NewsItem>> derived = ResultDerivation.derive(
+                Collections.singletonList(query("newest", 10)),
+                Collections.singletonList(NEWEST_THREE),
+                Collections.singletonList(query("oldest", 10)));
+        assertEquals(Arrays.asList("a", "b", "c"), urlsOf(derived.get(0)));
+
+        // A full page is only the newest part of the results
+        assertNull(ResultDerivation.derive(
+                Collections.singletonList(query("newest", 3)),
+                Collections.singletonList(NEWEST_THREE),
+                Collections.singletonList(query("oldest", 3))));
+        // Relevance is ranked by the server
+        assertNull(ResultDerivation.derive(
+                Collections.singletonList(query("newest", 10)),
+                Collections.singletonList(NEWEST_THREE),
+                Collections.singletonList(query("relevance", 10))));
+    }
+
+    @Test
+    public void requestsOtherSearchesAndLargerPages() {
+        assertNull(ResultDerivation.derive(
+                Collections.singletonList(query("newest", 3)),
+                Collections.singletonList(NEWEST_THREE),
+                Collections.singletonList(query("newest", 4))));
+        assertNull(ResultDerivation.derive(
+                Collections.singletonList(query("newest", 3)),
+                Collections.singletonList(NEWEST_THREE),
+                Collections.singletonList(query("newest", 3).with("q", "Trans"))));
+        assertNull(ResultDerivation.derive(
+                Collections.singletonList(query("newest", 3)),
+                Collections.<List<NewsItem>>singletonList(null),
+                Collections.singletonList(query("newest", 2))));
+    }
+
+    private static GuardianQuery query(String orderBy, int pageSize) {
+        return QUERY.with("order-by", orderBy).with("page-size", pageSize);
+    }
+
+    private static NewsItem item(String url, long publishedAt) {
+        return new NewsItem("Title " + url, "Section", url, "Author", publishedAt);
+    }
+
+    private static List<String> urlsOf(List<NewsItem> newsItems) {
+        String[] urls = new String[newsItems.size()];
+        for (int i = 0; i < urls.length; i++) {
+            urls[i] = newsItems.get(i).getUrl();
+        }
+        return Arrays.asList(urls);
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.adi.guardianlgbtnews;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that {@link StoryClusterer} groups the versions of a story, keeps apart the different
+ * stories, and does so as the items arrive.
+ */
+public class StoryClustererTest {
+
+    private static NewsItem item(String title, String url) {
+        return new NewsItem(title, "World news", url, "", 0);
+    }
+
+    @Test
+    public void groupsTheVersionsOfAStory() {
+        NewsItem first = item("Pride march draws record crowds in Warsaw", "a");
+        List<NewsItem> items = Arrays.asList(
+                first,
+                item("Court rules on same-sex adoption in Italy", "b"),
+                item("Pride march draws record crowds in Warsaw - live updates", "c"),
+                item("PRIDE MARCH DRAWS RECORD CROWDS IN WARSAW!", "d"),
+                // The same url again, e.g. from another topic
+                item("Court rules on same-sex adoption in Italy", "b"));
+
+        StoryClusterer clusterer = new StoryClusterer();
+        clusterer.addAll(items);
+
+        List<List<NewsItem>> clusters = clusterer.getClusters();
+        assertEquals(2, clusters.size());
+        assertEquals(3, clusters.get(0).size());
+        assertSame(first, clusters.get(0).get(0));
+        assertEquals(Arrays.asList(first, items.get(1)), StoryClusterer.collapse(items));
+    }
+
+    @Test
+    public void clustersTheItemsOfLaterPages() {
+        StoryClusterer clusterer = new StoryClusterer();
+        assertTrue(clusterer.add(item("Trans rights bill passes its second reading", "a")));
+        assertTrue(clusterer.add(item("Olympic committee publishes new guidelines", "b")));
+
+        // The next page
+        assertFalse(clusterer.add(item("Trans rights bill passes second reading in parliament", "c")));
+        assertTrue(clusterer.add(item("Film festival opens with a documentary", "d")));
+        assertTrue(clusterer.add(item("", "e")));
+        assertFalse(clusterer.add(item("Film festival opens with a documentary", "d")));
+        assertEquals(4, clusterer.getRepresentatives().size());
+
+        clusterer.clear();
+        assertTrue(clusterer.add(item("Trans rights bill passes second reading in parliament", "c")));
+    }
+
+    @Test
+    public void keepsApartManyDifferentStories() {
+        Random random = new Random(42);
+        StoryClusterer clusterer = new StoryClusterer();
+        int count = 5000;
+        for (int i = 0; i < count; i++) {
+            // Eight random words of four to eight letters
+            StringBuilder title = new StringBuilder();
+            for (int j = 0; j < 8; j++) {
+                int length = 4 + random.nextInt(5);
+                for (int k = 0; k < length; k++) {
+                    title.append((char) ('a' + random.nextInt(26)));
+                }
+                title.append(' ');
+            }
+            clusterer.add(item(title.toString(), String.valueOf(i)));
+        }
+        assertEquals(count, clusterer.size());
+        assertEquals(count, clusterer.getRepresentatives().size());
+    }
+}
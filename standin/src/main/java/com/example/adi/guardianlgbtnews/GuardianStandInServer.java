@@ -0,0 +1,456 @@
+package com.example.adi.guardianlgbtnews;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A small HTTP/1.1 server answering "/search" and single-item requests like the Guardian
+ * content API, with the {@link StandInResponses}. What a real network does to the requests can be set while it runs:
+ * <ul>
+ * <li>a latency (plus a random jitter) before the response starts;</li>
+ * <li>a bandwidth the body is sent at;</li>
+ * <li>a rate of requests answered with an error status instead.</li>
+ * </ul>
+ * Connections are kept alive, bodies are gzipped if the client accepts it, and responses carry
+ * an ETag so conditional requests get a 304.
+ */
+public final class GuardianStandInServer implements Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(GuardianStandInServer.class.getName());
+
+    public static final String SEARCH_PATH = "/search";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+    // States
+    private final StandInResponses mResponses;
+    private final ExecutorService mConnectionExecutor;
+    // The open connections, closed when the server is
+    private final Set<Socket> mConnections =
+            Collections.newSetFromMap(new ConcurrentHashMap<Socket, Boolean>());
+    private final Random mRandom = new Random();
+    private ServerSocket mServerSocket;
+    private volatile long mLatencyMillis;
+    private volatile long mJitterMillis;
+    private volatile long mBytesPerSecond;
+    private volatile double mErrorRate;
+    private volatile int mErrorStatus = 503;
+    private volatile boolean mGzip = true;
+
+    // Counters
+    private final AtomicLong mRequestCount = new AtomicLong();
+    private final AtomicLong mErrorCount = new AtomicLong();
+    private final AtomicLong mNotModifiedCount = new AtomicLong();
+    private final AtomicLong mBytesSent = new AtomicLong();
+
+    // Constructor
+    public GuardianStandInServer(StandInResponses responses) {
+        mResponses = responses;
+        mConnectionExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger mCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "StandIn-" + mCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Set the time before every response starts: the given latency plus a random time up to
+     * the given jitter.
+     */
+    public void setLatency(long latencyMillis, long jitterMillis) {
+        mLatencyMillis = Math.max(0, latencyMillis);
+        mJitterMillis = Math.max(0, jitterMillis);
+    }
+
+    /**
+     * Set the rate bodies are sent at, or 0 to send them as fast as possible.
+     */
+    public void setBandwidth(long bytesPerSecond) {
+        mBytesPerSecond = Math.max(0, bytesPerSecond);
+    }
+
+    /**
+     * Set the fraction of searches (between 0 and 1) answered with the given error status.
+     */
+    public void setErrorRate(double errorRate, int errorStatus) {
+        mErrorRate = errorRate;
+        mErrorStatus = errorStatus;
+    }
+
+    public void setGzip(boolean gzip) {
+        mGzip = gzip;
+    }
+
+    /**
+     * Start accepting connections on the given address and port (0 for any free port).
+     */
+    public synchronized void start(InetAddress address, int port) throws IOException {
+        if (mServerSocket != null) {
+            throw new IllegalStateException("Already started");
+        }
+        final ServerSocket serverSocket = new ServerSocket(port, 50, address);
+        mServerSocket = serverSocket;
+        mConnectionExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                accept(serverSocket);
+            }
+        });
+    }
+
+    /**
+     * Start accepting connections from this device only, on any free port.
+     */
+    public void start() throws IOException {
+        start(InetAddress.getByName("127.0.0.1"), 0);
+    }
+
+    public synchronized int getPort() {
+        return mServerSocket.getLocalPort();
+    }
+
+    /**
+     * Return the url to use instead of the Guardian's search url.
+     */
+    public synchronized String getSearchUrl() {
+        InetAddress address = mServerSocket.getInetAddress();
+        String host = address.isAnyLocalAddress() ? "127.0.0.1" : address.getHostAddress();
+        return "http://" + host + ":" + mServerSocket.getLocalPort() + SEARCH_PATH;
+    }
+
+    public long getRequestCount() {
+        return mRequestCount.get();
+    }
+
+    public long getErrorCount() {
+        return mErrorCount.get();
+    }
+
+    public long getNotModifiedCount() {
+        return mNotModifiedCount.get();
+    }
+
+    public long getBytesSent() {
+        return mBytesSent.get();
+    }
+
+    /**
+     * Stop accepting connections and close the open ones.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (mServerSocket != null) {
+            mServerSocket.close();
+        }
+        for (Socket socket : mConnections) {
+            closeQuietly(socket);
+        }
+        mConnectionExecutor.shutdownNow();
+    }
+
+    // Accept connections until the server socket is closed, serving each on its own thread
+    private void accept(ServerSocket serverSocket) {
+        while (!serverSocket.isClosed()) {
+            try {
+                final Socket socket = serverSocket.accept();
+                mConnections.add(socket);
+                try {
+                    mConnectionExecutor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            serve(socket);
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    mConnections.remove(socket);
+                    closeQuietly(socket);
+                    throw e;
+                }
+            } catch (RejectedExecutionException e) {
+                // Closed meanwhile
+                return;
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    LOGGER.log(Level.WARNING, "Problem accepting a connection.", e);
+                }
+            }
+        }
+    }
+
+    // Serve the requests of one connection until the client closes it or asks to
+    private void serve(Socket socket) {
+        try {
+            socket.setTcpNoDelay(true);
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+            while (true) {
+                String requestLine = readLine(in);
+                if (requestLine == null) {
+                    return;
+                }
+                if (requestLine.isEmpty()) {
+                    continue;
+                }
+                // Header names are case-insensitive
+                Map<String, String> headers = new HashMap<>();
+                String line;
+                while ((line = readLine(in)) != null && !line.isEmpty()) {
+                    int colon = line.indexOf(':');
+                    if (colon > 0) {
+                        headers.put(line.substring(0, colon).trim().toLowerCase(Locale.US),
+                                line.substring(colon + 1).trim());
+                    }
+                }
+                respond(requestLine, headers, out);
+                out.flush();
+                if ("close".equalsIgnoreCase(headers.get("connection"))) {
+                    return;
+                }
+            }
+        } catch (SocketException e) {
+            // The client went away
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Problem serving a connection.", e);
+        } finally {
+            mConnections.remove(socket);
+            closeQuietly(socket);
+        }
+    }
+
+    private void respond(String requestLine, Map<String, String> headers, OutputStream out)
+            throws IOException {
+        mRequestCount.incrementAndGet();
+        String[] parts = requestLine.split(" ");
+        if (parts.length < 2 || !parts[0].equals("GET")) {
+            writeResponse(out, 405, null, errorBody("Method not allowed"));
+            return;
+        }
+        String target = parts[1];
+        int questionMark = target.indexOf('?');
+        String path = questionMark >= 0 ? target.substring(0, questionMark) : target;
+        Map<String, String> parameters =
+                parseQuery(questionMark >= 0 ? target.substring(questionMark + 1) : "");
+
+        // The time to the first byte
+        long latency = mLatencyMillis;
+        long jitter = mJitterMillis;
+        if (jitter > 0) {
+            synchronized (mRandom) {
+                latency += (long) (mRandom.nextDouble() * jitter);
+            }
+        }
+        sleep(TimeUnit.MILLISECONDS.toNanos(latency));
+
+        double errorRate = mErrorRate;
+        boolean fail;
+        synchronized (mRandom) {
+            fail = errorRate > 0 && mRandom.nextDouble() < errorRate;
+        }
+        if (fail) {
+            mErrorCount.incrementAndGet();
+            writeResponse(out, mErrorStatus, null, errorBody("Injected error"));
+            return;
+        }
+
+        String content = path.equals(SEARCH_PATH) ? mResponses.search(parameters)
+                : mResponses.content(path.substring(1), parameters);
+        if (content == null) {
+            writeResponse(out, 404, null, errorBody("Not found"));
+            return;
+        }
+        byte[] body = content.getBytes(UTF_8);
+        Map<String, String> responseHeaders = new HashMap<>();
+        String etag = "\"" + Integer.toHexString(Arrays.hashCode(body)) + "\"";
+        responseHeaders.put("ETag", etag);
+        if (etag.equals(headers.get("if-none-match"))) {
+            mNotModifiedCount.incrementAndGet();
+            writeResponse(out, 304, responseHeaders, null);
+            return;
+        }
+        String acceptEncoding = headers.get("accept-encoding");
+        if (mGzip && acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            body = gzip(body);
+            responseHeaders.put("Content-Encoding", "gzip");
+        }
+        writeResponse(out, 200, responseHeaders, body);
+    }
+
+    private void writeResponse(OutputStream out, int code, Map<String, String> headers, byte[] body)
+            throws IOException {
+        StringBuilder head = new StringBuilder();
+        head.append("HTTP/1.1 ").append(code).append(' ').append(reasonPhrase(code)).append("\r\n");
+        if (headers != null) {
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                head.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+            }
+        }
+        if (code == 503 || code == 429) {
+            head.append("Retry-After: 1\r\n");
+        }
+        if (body != null) {
+            head.append("Content-Type: application/json; charset=utf-8\r\n");
+        }
+        head.append("Content-Length: ").append(body == null ? 0 : body.length).append("\r\n");
+        head.append("Connection: keep-alive\r\n\r\n");
+        out.write(head.toString().getBytes(ISO_8859_1));
+        if (body != null) {
+            writeThrottled(out, body);
+            mBytesSent.addAndGet(body.length);
+        }
+    }
+
+    // Write the body at the set bandwidth, in chunks of about a twentieth of a second each
+    private void writeThrottled(OutputStream out, byte[] body) throws IOException {
+        long bytesPerSecond = mBytesPerSecond;
+        if (bytesPerSecond <= 0) {
+            out.write(body);
+            return;
+        }
+        int chunk = (int) Math.max(512, Math.min(16384, bytesPerSecond / 20));
+        long start = System.nanoTime();
+        for (int offset = 0; offset < body.length; offset += chunk) {
+            int count = Math.min(chunk, body.length - offset);
+            out.write(body, offset, count);
+            out.flush();
+            // Wait until the bytes sent so far are due at the set rate
+            long due = start + TimeUnit.SECONDS.toNanos(offset + count) / bytesPerSecond;
+            sleep(due - System.nanoTime());
+        }
+    }
+
+    // Read a line ending with CRLF (or LF) as ISO-8859-1, or return null at the end of the stream
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n') {
+                byte[] bytes = line.toByteArray();
+                int length = bytes.length > 0 && bytes[bytes.length - 1] == '\r'
+                        ? bytes.length - 1 : bytes.length;
+                return new String(bytes, 0, length, ISO_8859_1);
+            }
+            line.write(b);
+        }
+        return line.size() == 0 ? null : new String(line.toByteArray(), ISO_8859_1);
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> parameters = new HashMap<>();
+        for (String parameter : query.split("&")) {
+            if (parameter.isEmpty()) {
+                continue;
+            }
+            int equals = parameter.indexOf('=');
+            String name = equals >= 0 ? parameter.substring(0, equals) : parameter;
+            String value = equals >= 0 ? parameter.substring(equals + 1) : "";
+            parameters.put(decode(name), decode(value));
+        }
+        return parameters;
+    }
+
+    private static String decode(String value) {
+        try {
+            return URLDecoder.decode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        } catch (IllegalArgumentException e) {
+            // A malformed escape; take it literally
+            return value;
+        }
+    }
+
+    private static byte[] errorBody(String message) {
+        return ("{\"response\":{\"status\":\"error\",\"message\":\"" + message + "\"}}").getBytes(UTF_8);
+    }
+
+    private static byte[] gzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(bytes.length / 4);
+        GZIPOutputStream gzip = new GZIPOutputStream(output);
+        try {
+            gzip.write(bytes);
+        } finally {
+            gzip.close();
+        }
+        return output.toByteArray();
+    }
+
+    private static String reasonPhrase(int code) {
+        switch (code) {
+            case 200:
+                return "OK";
+            case 304:
+                return "Not Modified";
+            case 404:
+                return "Not Found";
+            case 405:
+                return "Method Not Allowed";
+            case 429:
+                return "Too Many Requests";
+            case 500:
+                return "Internal Server Error";
+            case 502:
+                return "Bad Gateway";
+            case 503:
+                return "Service Unavailable";
+            default:
+                return "Status";
+        }
+    }
+
+    private static void sleep(long nanos) throws InterruptedIOException {
+        if (nanos <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while delaying a response");
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+            // Nothing more to do
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.adi.guardianlgbtnews;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.Locale;
+
+/**
+ * Runs a {@link GuardianStandInServer} from the command line until it is killed, e.g. for an
+ * emulator to reach at http://10.0.2.2:8080/search:
+ * <pre>
+ * --host 0.0.0.0 --port 8080 --latency 120 --jitter 80 --bandwidth 50000 --error-rate 0.05
+ * </pre>
+ * Options: --host, --port, --latency and --jitter (ms), --bandwidth (bytes per second),
+ * --error-rate (0 to 1), --error-status, --total (results per query), --title-words,
+ * --body-paragraphs, --replay (directory of recorded responses), --no-gzip.
+ */
+public final class StandInMain {
+
+    /**
+     * Create a private constructor because no one should ever create a {@link StandInMain} object.
+     */
+    private StandInMain() {
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String host = "127.0.0.1";
+        int port = 8080;
+        long latency = 0;
+        long jitter = 0;
+        long bandwidth = 0;
+        double errorRate = 0;
+        int errorStatus = 503;
+        int total = StandInResponses.DEFAULT_TOTAL;
+        int titleWords = StandInResponses.DEFAULT_TITLE_WORDS;
+        int bodyParagraphs = StandInResponses.DEFAULT_BODY_PARAGRAPHS;
+        File replayDirectory = null;
+        boolean gzip = true;
+
+        for (int i = 0; i < args.length; i++) {
+            String option = args[i];
+            if (option.equals("--no-gzip")) {
+                gzip = false;
+                continue;
+            }
+            if (i + 1 >= args.length) {
+                usage("Missing value of " + option);
+            }
+            String value = args[++i];
+            switch (option) {
+                case "--host":
+                    host = value;
+                    break;
+                case "--port":
+                    port = Integer.parseInt(value);
+                    break;
+                case "--latency":
+                    latency = Long.parseLong(value);
+                    break;
+                case "--jitter":
+                    jitter = Long.parseLong(value);
+                    break;
+                case "--bandwidth":
+                    bandwidth = Long.parseLong(value);
+                    break;
+                case "--error-rate":
+                    errorRate = Double.parseDouble(value);
+                    break;
+                case "--error-status":
+                    errorStatus = Integer.parseInt(value);
+                    break;
+                case "--total":
+                    total = Integer.parseInt(value);
+                    break;
+                case "--title-words":
+                    titleWords = Integer.parseInt(value);
+                    break;
+                case "--body-paragraphs":
+                    bodyParagraphs = Integer.parseInt(value);
+                    break;
+                case "--replay":
+                    replayDirectory = new File(value);
+                    break;
+                default:
+                    usage("Unknown option " + option);
+            }
+        }
+
+        StandInResponses responses = new StandInResponses(replayDirectory);
+        responses.setTotal(total);
+        responses.setTitleWords(titleWords);
+        responses.setBodyParagraphs(bodyParagraphs);
+        final GuardianStandInServer server = new GuardianStandInServer(responses);
+        server.setLatency(latency, jitter);
+        server.setBandwidth(bandwidth);
+        server.setErrorRate(errorRate, errorStatus);
+        server.setGzip(gzip);
+        server.start(InetAddress.getByName(host), port);
+        System.out.println("Serving " + server.getSearchUrl());
+
+        // Print what was served when stopped
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                System.out.println(String.format(Locale.US,
+                        "requests=%d errors=%d not_modified=%d bytes_sent=%d",
+                        server.getRequestCount(), server.getErrorCount(),
+                        server.getNotModifiedCount(), server.getBytesSent()));
+            }
+        });
+        Thread.sleep(Long.MAX_VALUE);
+    }
+
+    private static void usage(String problem) {
+        System.err.println(problem);
+        System.err.println("Options: --host, --port, --latency, --jitter, --bandwidth, --error-rate, "
+                + "--error-status, --total, --title-words, --body-paragraphs, --replay, --no-gzip");
+        System.exit(2);
+    }
+}
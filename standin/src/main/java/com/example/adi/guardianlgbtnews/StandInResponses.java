@@ -0,0 +1,261 @@
+package com.example.adi.guardianlgbtnews;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The bodies served by {@link GuardianStandInServer}. A search is answered with a recorded
+ * response if the replay directory holds one for its query, and with a generated one otherwise.
+ * <p>
+ * Recorded responses are files named after the "q" parameter, lower-cased with every other
+ * character than a letter or a digit replaced by '_' (e.g. "trans_rights.json"), or
+ * "default.json" for any query. They are served as they are, whatever the page asked for.
+ * <p>
+ * Generated responses are shaped like the real ones and honour "q", "page", "page-size",
+ * "order-by" and "show-fields=byline". The same query always gets the same results, so the
+ * pages of a query don't overlap and responses can be revalidated. The generated articles can
+ * also be requested one by one, with "show-fields=bodyText" for their text.
+ */
+public final class StandInResponses {
+
+    public static final int DEFAULT_TOTAL = 500;
+    public static final int DEFAULT_TITLE_WORDS = 8;
+    public static final int DEFAULT_BODY_PARAGRAPHS = 12;
+
+    // The Guardian API's default and largest page sizes
+    private static final int DEFAULT_PAGE_SIZE = 10;
+    private static final int MAX_PAGE_SIZE = 200;
+
+    // The newest generated story, 2018-06-04T10:00:00Z, and the time between two stories
+    private static final long NEWEST_PUBLISHED_AT = 1528106400000L;
+    private static final long STORY_INTERVAL_MILLIS = 3 * 60 * 60 * 1000L;
+
+    private static final String[] SECTIONS = {"World news", "Opinion", "Society", "Sport",
+            "Culture", "US news", "Australia news", "Life and style"};
+
+    private static final String[] WORDS = {"pride", "rights", "march", "court", "equality",
+            "community", "trans", "marriage", "vote", "city", "health", "history", "law", "young"};
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // States
+    private final File mReplayDirectory;
+    // Recorded bodies by file name, read once
+    private final Map<String, String> mRecorded = new ConcurrentHashMap<>();
+    private volatile int mTotal = DEFAULT_TOTAL;
+    private volatile int mTitleWords = DEFAULT_TITLE_WORDS;
+    private volatile int mBodyParagraphs = DEFAULT_BODY_PARAGRAPHS;
+
+    /**
+     * @param replayDirectory - the directory holding the recorded responses, or null to only
+     *                        serve generated ones
+     */
+    public StandInResponses(File replayDirectory) {
+        mReplayDirectory = replayDirectory;
+    }
+
+    /**
+     * Set the number of results a generated query has in all, which bounds its pages.
+     */
+    public void setTotal(int total) {
+        mTotal = Math.max(0, total);
+    }
+
+    /**
+     * Set the number of words of the generated titles, the main knob of the payload size.
+     */
+    public void setTitleWords(int titleWords) {
+        mTitleWords = Math.max(1, titleWords);
+    }
+
+    /**
+     * Set the number of paragraphs of the generated article texts, of about 60 words each.
+     */
+    public void setBodyParagraphs(int bodyParagraphs) {
+        mBodyParagraphs = Math.max(1, bodyParagraphs);
+    }
+
+    /**
+     * Return the body of the search with the given (decoded) query parameters.
+     */
+    public String search(Map<String, String> parameters) throws IOException {
+        String recorded = readRecorded(parameters.get("q"));
+        return recorded != null ? recorded : generate(parameters);
+    }
+
+    /**
+     * Return the single-item response of the generated article with the given id (its url's
+     * path), or null if there is no such article.
+     */
+    public String content(String id, Map<String, String> parameters) {
+        String[] parts = id.split("/");
+        if (parts.length != 3 || !parts[0].equals("stand-in")) {
+            return null;
+        }
+        Random random = new Random(31L * parts[1].hashCode() + parseInt(parts[2], 0));
+        // Drawn in the order of generate(), so the article matches its search result
+        random.nextInt(SECTIONS.length);
+        String author = capitalize(WORDS[random.nextInt(WORDS.length)]) + " "
+                + capitalize(WORDS[random.nextInt(WORDS.length)]);
+        String title = capitalize(words(random, mTitleWords)) + " | " + author;
+
+        StringBuilder json = new StringBuilder(mBodyParagraphs * 450 + 300);
+        json.append("{\"response\":{\"status\":\"ok\",\"userTier\":\"developer\",\"total\":1,")
+                .append("\"content\":{\"id\":\"").append(id)
+                .append("\",\"type\":\"article\",\"webTitle\":\"").append(title)
+                .append("\",\"webUrl\":\"https://www.theguardian.com/").append(id).append('"');
+        String showFields = parameters.get("show-fields");
+        if (showFields != null && showFields.contains("bodyText")) {
+            json.append(",\"fields\":{\"bodyText\":\"");
+            for (int i = 0; i < mBodyParagraphs; i++) {
+                if (i > 0) {
+                    json.append(' ');
+                }
+                json.append(capitalize(words(random, 60))).append('.');
+            }
+            json.append("\"}");
+        }
+        json.append("}}}");
+        return json.toString();
+    }
+
+    // Return the recorded response of the given query, or null if there is none
+    private String readRecorded(String query) throws IOException {
+        if (mReplayDirectory == null) {
+            return null;
+        }
+        String[] names = {slug(query == null ? "" : query) + ".json", "default.json"};
+        for (String name : names) {
+            String body = mRecorded.get(name);
+            if (body != null) {
+                return body;
+            }
+            File file = new File(mReplayDirectory, name);
+            if (file.isFile()) {
+                body = readFile(file);
+                mRecorded.put(name, body);
+                return body;
+            }
+        }
+        return null;
+    }
+
+    // Build a page of results from the parameters
+    private String generate(Map<String, String> parameters) {
+        String query = parameters.containsKey("q") ? parameters.get("q") : "news";
+        int pageSize = Math.min(MAX_PAGE_SIZE,
+                Math.max(1, parseInt(parameters.get("page-size"), DEFAULT_PAGE_SIZE)));
+        int page = Math.max(1, parseInt(parameters.get("page"), 1));
+        boolean oldestFirst = "oldest".equals(parameters.get("order-by"));
+        String showFields = parameters.get("show-fields");
+        boolean byline = showFields != null && showFields.contains("byline");
+        int total = mTotal;
+        int pages = (total + pageSize - 1) / pageSize;
+        int first = (page - 1) * pageSize;
+        int count = Math.max(0, Math.min(pageSize, total - first));
+
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.US);
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        String slug = slug(query);
+
+        StringBuilder json = new StringBuilder(count * 700 + 300);
+        json.append("{\"response\":{\"status\":\"ok\",\"userTier\":\"developer\",\"total\":")
+                .append(total)
+                .append(",\"startIndex\":").append(first + 1)
+                .append(",\"pageSize\":").append(pageSize)
+                .append(",\"currentPage\":").append(page)
+                .append(",\"pages\":").append(pages)
+                .append(",\"orderBy\":\"").append(oldestFirst ? "oldest" : "newest")
+                .append("\",\"results\":[");
+        for (int i = 0; i < count; i++) {
+            // Stories are numbered from the newest; the oldest-first order counts backwards
+            int story = oldestFirst ? total - 1 - (first + i) : first + i;
+            Random random = new Random(31L * slug.hashCode() + story);
+            String section = SECTIONS[random.nextInt(SECTIONS.length)];
+            String author = capitalize(WORDS[random.nextInt(WORDS.length)]) + " "
+                    + capitalize(WORDS[random.nextInt(WORDS.length)]);
+            String path = "stand-in/" + slug + "/" + story;
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"id\":\"").append(path)
+                    .append("\",\"type\":\"article\",\"sectionId\":\"stand-in\",\"sectionName\":\"")
+                    .append(section)
+                    .append("\",\"webPublicationDate\":\"")
+                    .append(dateFormat.format(new Date(NEWEST_PUBLISHED_AT - story * STORY_INTERVAL_MILLIS)))
+                    .append("\",\"webTitle\":\"")
+                    .append(capitalize(words(random, mTitleWords))).append(" | ").append(author)
+                    .append("\",\"webUrl\":\"https://www.theguardian.com/").append(path)
+                    .append("\",\"apiUrl\":\"https://content.guardianapis.com/").append(path)
+                    .append('"');
+            if (byline) {
+                json.append(",\"fields\":{\"byline\":\"").append(author).append("\"}");
+            }
+            json.append(",\"isHosted\":false,\"pillarId\":\"pillar/news\",\"pillarName\":\"News\"}");
+        }
+        json.append("]}}");
+        return json.toString();
+    }
+
+    // Lower-case the query and keep only its letters and digits, so it can name a file or a url
+    private static String slug(String query) {
+        StringBuilder slug = new StringBuilder(query.length());
+        for (int i = 0; i < query.length(); i++) {
+            char c = Character.toLowerCase(query.charAt(i));
+            slug.append(Character.isLetterOrDigit(c) && c < 128 ? c : '_');
+        }
+        return slug.toString();
+    }
+
+    private static String words(Random random, int count) {
+        StringBuilder words = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                words.append(' ');
+            }
+            words.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return words.toString();
+    }
+
+    private static String capitalize(String word) {
+        return Character.toUpperCase(word.charAt(0)) + word.substring(1);
+    }
+
+    private static int parseInt(String value, int defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    private static String readFile(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream((int) file.length());
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return new String(out.toByteArray(), UTF_8);
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.adi.guardianlgbtnews;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+/**
+ * Checks that the stand-in answers the app's client like the Guardian API would.
+ */
+public class GuardianStandInServerTest {
+
+    private GuardianStandInServer mServer;
+    private NewsHttpClient mClient;
+
+    @Before
+    public void setUp() throws IOException {
+        StandInResponses responses = new StandInResponses(null);
+        responses.setTotal(30);
+        mServer = new GuardianStandInServer(responses);
+        mServer.start();
+        mClient = new NewsHttpClient();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mServer.close();
+    }
+
+    @Test
+    public void servesTheRequestedPages() throws IOException {
+        List<NewsItem> first = search("?q=pride&show-fields=byline&page-size=20&page=1");
+        List<NewsItem> last = search("?q=pride&show-fields=byline&page-size=20&page=2");
+
+        assertEquals(20, first.size());
+        // Only 30 results in all
+        assertEquals(10, last.size());
+        assertNotEquals(first.get(0).getUrl(), last.get(0).getUrl());
+        assertNotEquals("", first.get(0).getAuthor());
+        // Newest first
+        assertEquals(true, first.get(0).getPublishedAt() > first.get(1).getPublishedAt());
+    }
+
+    @Test
+    public void servesTheBodiesOfTheResults() throws IOException {
+        NewsItem item = search("?q=pride&page-size=1").get(0);
+        String id = item.getUrl().substring("https://www.theguardian.com/".length());
+        URL url = new URL(mServer.getSearchUrl().replace("/search", "/" + id) + "?show-fields=bodyText");
+        NewsHttpClient.Response response = mClient.get(url, null);
+        try {
+            assertEquals(200, response.getCode());
+            assertNotEquals(null, NewsItemsParser.readArticleBody(response.getBody()));
+        } finally {
+            response.close();
+        }
+    }
+
+    @Test
+    public void revalidatesWithTheEtag() throws IOException {
+        URL url = new URL(mServer.getSearchUrl() + "?q=pride");
+        NewsHttpClient.Response response = mClient.get(url, null);
+        String etag = response.getHeader("ETag");
+        response.close();
+
+        response = mClient.get(url, Collections.singletonMap("If-None-Match", etag));
+        assertEquals(304, response.getCode());
+        response.close();
+    }
+
+    @Test
+    public void injectsErrors() throws IOException {
+        mServer.setErrorRate(1, 503);
+        NewsHttpClient.Response response = mClient.get(new URL(mServer.getSearchUrl()), null);
+        assertEquals(503, response.getCode());
+        response.close();
+        assertEquals(1, mServer.getErrorCount());
+    }
+
+    private List<NewsItem> search(String query) throws IOException {
+        NewsHttpClient.Response response = mClient.get(new URL(mServer.getSearchUrl() + query), null);
+        try {
+            assertEquals(200, response.getCode());
+            return NewsItemsParser.readNewsItems(response.getBody());
+        } finally {
+            response.close();
+        }
+    }
+}